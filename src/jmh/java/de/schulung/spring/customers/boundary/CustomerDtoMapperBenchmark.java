@@ -0,0 +1,60 @@
+package de.schulung.spring.customers.boundary;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerDtoMapperBenchmark {
+
+  private final CustomerDtoMapper mapper = new CustomerDtoMapperImpl();
+  private Customer customer;
+  private CustomerDto customerDto;
+  private UUID uuid;
+  private String cursor;
+
+  @Setup
+  public void setup() {
+    uuid = UUID.randomUUID();
+    customer = Customer
+      .builder()
+      .uuid(uuid)
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(2000, 1, 1))
+      .state(CustomerState.LOCKED)
+      .version(0L)
+      .build();
+    customerDto = mapper.map(customer);
+    cursor = mapper.mapCursor(uuid);
+  }
+
+  @Benchmark
+  public CustomerDto mapToDto() {
+    return mapper.map(customer);
+  }
+
+  @Benchmark
+  public Customer mapFromDto() {
+    return mapper.map(customerDto);
+  }
+
+  @Benchmark
+  public String encodeCursor() {
+    return mapper.mapCursor(uuid);
+  }
+
+  @Benchmark
+  public UUID decodeCursor() {
+    return mapper.mapCursor(cursor);
+  }
+
+}
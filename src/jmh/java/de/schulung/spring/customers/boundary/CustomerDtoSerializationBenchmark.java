@@ -0,0 +1,111 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.Customer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/*
+ * Serializes a stream of customers like the controller does,
+ * into a discarding output stream, so that only Jackson is measured.
+ * The DTOs are compared to the direct writer (including the mapping).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerDtoSerializationBenchmark {
+
+  @Param({"1", "100", "10000"})
+  private int size;
+
+  // configured like Spring Boot's auto-configured ObjectMapper
+  private final ObjectMapper objectMapper = new ObjectMapper()
+    .registerModule(new Jdk8Module())
+    .registerModule(new JavaTimeModule())
+    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  private final NdjsonHttpMessageConverter ndjsonConverter = new NdjsonHttpMessageConverter(objectMapper);
+  private final CustomerDtoMapper mapper = new CustomerDtoMapperImpl();
+  private final CustomerStreamHttpMessageConverter directConverter = new CustomerStreamHttpMessageConverter(objectMapper, mapper::mapState);
+  private final HttpOutputMessage outputMessage = outputMessage();
+  private List<Customer> domainCustomers;
+  private List<CustomerDto> customers;
+
+  // the headers are kept, because the converters read the content type from them
+  private static HttpOutputMessage outputMessage() {
+    var headers = new HttpHeaders();
+    return new HttpOutputMessage() {
+      @Override
+      public OutputStream getBody() {
+        return OutputStream.nullOutputStream();
+      }
+
+      @Override
+      public HttpHeaders getHeaders() {
+        return headers;
+      }
+    };
+  }
+
+  @Setup
+  public void setup() {
+    var states = CustomerState.values();
+    domainCustomers = IntStream
+      .range(0, size)
+      .mapToObj(i -> Customer
+        .builder()
+        .uuid(UUID.randomUUID())
+        .name("Customer " + i)
+        .birthdate(LocalDate.of(1950, 1, 1).plusDays(i % 20000))
+        .state(states[i % states.length])
+        .build()
+      )
+      .toList();
+    customers = domainCustomers
+      .stream()
+      .map(mapper::map)
+      .toList();
+  }
+
+  @Benchmark
+  public void writeJsonArray() throws IOException {
+    objectMapper.writeValue(OutputStream.nullOutputStream(), customers.stream());
+  }
+
+  @Benchmark
+  public void writeNdjson() throws IOException {
+    ndjsonConverter.write(customers.stream(), null, outputMessage);
+  }
+
+  @Benchmark
+  public void mapAndWriteJsonArray() throws IOException {
+    objectMapper.writeValue(OutputStream.nullOutputStream(), domainCustomers.stream().map(mapper::map));
+  }
+
+  @Benchmark
+  public void writeJsonArrayDirect() throws IOException {
+    directConverter.write(new CustomerStream(domainCustomers.stream()), MediaType.APPLICATION_JSON, outputMessage);
+  }
+
+  @Benchmark
+  public void writeNdjsonDirect() throws IOException {
+    directConverter.write(new CustomerStream(domainCustomers.stream()), MediaType.APPLICATION_NDJSON, outputMessage);
+  }
+
+}
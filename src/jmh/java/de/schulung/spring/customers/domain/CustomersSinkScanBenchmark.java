@@ -0,0 +1,124 @@
+package de.schulung.spring.customers.domain;
+
+import de.schulung.spring.customers.persistence.inmemory.InMemoryCustomersSink;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Compares the scanning default methods of the CustomersSink
+ * with the native implementations of the in-memory sink.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomersSinkScanBenchmark {
+
+  @Param({"1000", "100000"})
+  private int size;
+
+  @Param({"native", "default"})
+  private String implementation;
+
+  private CustomersSink sink;
+  private UUID middle;
+
+  @Setup
+  public void setup() {
+    var inMemorySink = new InMemoryCustomersSink();
+    var states = CustomerState.values();
+    for (int i = 0; i < size; i++) {
+      inMemorySink.create(
+        Customer
+          .builder()
+          .name("Customer " + i)
+          .birthdate(LocalDate.of(1950, 1, 1).plusDays(i % 20000))
+          .state(states[i % states.length])
+          .build()
+      );
+    }
+    sink = switch (implementation) {
+      case "native" -> inMemorySink;
+      // only the abstract methods, so that the default methods are used
+      case "default" -> new CustomersSink() {
+        @Override
+        public Stream<Customer> findAll() {
+          return inMemorySink.findAll();
+        }
+
+        @Override
+        public void create(Customer customer) {
+          inMemorySink.create(customer);
+        }
+
+        @Override
+        public Optional<Customer> update(Customer customer, Long expectedVersion) {
+          return inMemorySink.update(customer, expectedVersion);
+        }
+
+        @Override
+        public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+          return inMemorySink.updateState(uuid, state, expectedVersion);
+        }
+
+        @Override
+        public Optional<Customer> delete(UUID uuid) {
+          return inMemorySink.delete(uuid);
+        }
+      };
+      default -> throw new IllegalArgumentException(implementation);
+    };
+    try (var customers = inMemorySink.findAll()) {
+      middle = customers
+        .map(Customer::getUuid)
+        .sorted()
+        .skip(size / 2)
+        .findFirst()
+        .orElseThrow();
+    }
+  }
+
+  @Benchmark
+  public void findAllByState(Blackhole blackhole) {
+    try (var customers = sink.findAllByState(CustomerState.LOCKED)) {
+      customers.forEach(blackhole::consume);
+    }
+  }
+
+  @Benchmark
+  public void findAllByNamePrefix(Blackhole blackhole) {
+    try (var customers = sink.findAllByNamePrefix("customer 1")) {
+      customers.forEach(blackhole::consume);
+    }
+  }
+
+  @Benchmark
+  public List<Customer> findPage() {
+    return sink.findPage(CustomerState.ACTIVE, middle, 100);
+  }
+
+  @Benchmark
+  public Object findById() {
+    return sink.findById(middle);
+  }
+
+  @Benchmark
+  public long count() {
+    return sink.count();
+  }
+
+  @Benchmark
+  public long countByState() {
+    return sink.countByState(CustomerState.DISABLED);
+  }
+
+}
@@ -0,0 +1,52 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerEntityMapperBenchmark {
+
+  private final CustomerEntityMapper mapper = new CustomerEntityMapperImpl();
+  private Customer customer;
+  private CustomerEntity entity;
+
+  @Setup
+  public void setup() {
+    customer = Customer
+      .builder()
+      .uuid(UUID.randomUUID())
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(2000, 1, 1))
+      .state(CustomerState.LOCKED)
+      .version(0L)
+      .build();
+    entity = mapper.map(customer);
+  }
+
+  @Benchmark
+  public CustomerEntity mapToEntity() {
+    return mapper.map(customer);
+  }
+
+  @Benchmark
+  public Customer mapFromEntity() {
+    return mapper.map(entity);
+  }
+
+  @Benchmark
+  public Customer copyFromEntity() {
+    mapper.copy(entity, customer);
+    return customer;
+  }
+
+}
@@ -0,0 +1,44 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.CustomerState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerStateConverterBenchmark {
+
+  private final CustomerStateConverter converter = new CustomerStateConverter();
+
+  @Param({"ACTIVE", "LOCKED", "DISABLED"})
+  private CustomerState state;
+  private String dbData;
+
+  @Setup
+  public void setup() {
+    // new String, so that the switch cannot compare by identity
+    dbData = new String(converter.convertToDatabaseColumn(state));
+  }
+
+  @Benchmark
+  public String convertToDatabaseColumn() {
+    return converter.convertToDatabaseColumn(state);
+  }
+
+  @Benchmark
+  public CustomerState convertToEntityAttribute() {
+    return converter.convertToEntityAttribute(dbData);
+  }
+
+  // used by the read-only queries instead of the converter
+  @Benchmark
+  public CustomerState decodeState() {
+    return CustomerRowMapper.decodeState(dbData);
+  }
+
+}
@@ -0,0 +1,109 @@
+package de.schulung.spring.customers.persistence.inmemory;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Readers and writers share one sink. The writers create and delete
+ * customers, so that the size of the sink stays stable.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryCustomersSinkBenchmark {
+
+  @Param({"10000"})
+  private int size;
+  @Param({"objects", "packed"})
+  private String layout;
+
+  private CustomersSink sink;
+  private UUID[] uuids;
+
+  @Setup
+  public void setup() {
+    sink = "packed".equals(layout) ? new PackedInMemoryCustomersSink() : new InMemoryCustomersSink();
+    var states = CustomerState.values();
+    var created = new ArrayList<UUID>(size);
+    for (int i = 0; i < size; i++) {
+      var customer = customer(states[i % states.length]);
+      sink.create(customer);
+      created.add(customer.getUuid());
+    }
+    uuids = created.toArray(UUID[]::new);
+  }
+
+  private static Customer customer(CustomerState state) {
+    return Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(2000, 1, 1))
+      .state(state)
+      .build();
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(3)
+  public Optional<Customer> findById() {
+    return sink.findById(uuids[ThreadLocalRandom.current().nextInt(uuids.length)]);
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public List<Customer> findPage() {
+    var after = uuids[ThreadLocalRandom.current().nextInt(uuids.length)];
+    return sink.findPage(CustomerState.ACTIVE, after, 100);
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public long countByState() {
+    return sink.countByState(CustomerState.LOCKED);
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public Optional<Customer> createAndDelete() {
+    var customer = customer(CustomerState.DISABLED);
+    sink.create(customer);
+    return sink.delete(customer.getUuid());
+  }
+
+  @Benchmark
+  @Group("scan")
+  @GroupThreads(4)
+  public void findAllByState(Blackhole blackhole) {
+    try (var customers = sink.findAllByState(CustomerState.ACTIVE)) {
+      customers.forEach(blackhole::consume);
+    }
+  }
+
+  // the objects layout aggregates in parallel, the packed layout by the default scan
+  @Benchmark
+  @Group("aggregate")
+  @GroupThreads(1)
+  public CustomersAggregation aggregateByBirthYear() {
+    return sink.aggregate(CustomersGroupBy.BIRTH_YEAR);
+  }
+
+}
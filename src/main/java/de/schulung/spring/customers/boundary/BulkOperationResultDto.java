@@ -0,0 +1,13 @@
+package de.schulung.spring.customers.boundary;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BulkOperationResultDto {
+
+  // count of affected customers
+  private final long count;
+
+}
@@ -0,0 +1,49 @@
+package de.schulung.spring.customers.boundary;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+/*
+ * Replaces server.compression, which would not record the sizes.
+ * Static resources are precompressed during the build (see pom.xml).
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(
+  name = "application.compression.enabled",
+  havingValue = "true"
+)
+public class CompressionConfiguration {
+
+  @Bean
+  FilterRegistrationBean<CompressionFilter> compressionFilter(
+    ObjectProvider<MeterRegistry> registry,
+    @Value("${application.compression.min-response-size}") DataSize minResponseSize,
+    @Value("${application.compression.level}") int level,
+    @Value("${application.compression.mime-types}") List<MediaType> mimeTypes
+  ) {
+    var registration = new FilterRegistrationBean<>(
+      new CompressionFilter(
+        // not available in test slices
+        registry.getIfAvailable(() -> Metrics.globalRegistry),
+        (int) minResponseSize.toBytes(),
+        level,
+        mimeTypes
+      )
+    );
+    registration.addUrlPatterns("/*");
+    return registration;
+  }
+
+}
@@ -0,0 +1,426 @@
+package de.schulung.spring.customers.boundary;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Nonnull;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Compresses responses with gzip, if the client accepts it, the content
+ * type is one of the configured ones and the body exceeds a minimum size.
+ * The first bytes are buffered until the body is known to exceed it, so
+ * that small responses are sent as they are (with their Content-Length).
+ * Flushes before are ignored, flushes afterward are passed to the client.
+ *
+ * Unlike the compression of the embedded server, it records per endpoint:
+ *  - http.server.response.size: the uncompressed bytes, tagged with the encoding
+ *  - http.server.response.compressed.size: the bytes sent after compression
+ *  - http.server.response.compression: the time of the compression, without writing to the client
+ *
+ * Responses that are encoded already (e.g. precompressed static resources)
+ * are passed through. Asynchronous requests are not supported, because
+ * this application does not use them.
+ */
+@RequiredArgsConstructor
+class CompressionFilter
+  extends OncePerRequestFilter {
+
+  private static final String GZIP = "gzip";
+  private static final String IDENTITY = "identity";
+
+  private final MeterRegistry registry;
+  private final int minResponseSize;
+  private final int level;
+  private final Collection<MediaType> mimeTypes;
+
+  // the q-values are ignored, except for q=0
+  static boolean acceptsGzip(HttpServletRequest request) {
+    var headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+    while (headers.hasMoreElements()) {
+      for (var coding : headers.nextElement().split(",")) {
+        var parts = coding.trim().split(";");
+        if (
+          (GZIP.equalsIgnoreCase(parts[0].trim()) || "*".equals(parts[0].trim()))
+            && !(parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?"))
+        ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  protected void doFilterInternal(
+    @Nonnull HttpServletRequest request,
+    @Nonnull HttpServletResponse response,
+    @Nonnull FilterChain filterChain
+  ) throws ServletException, IOException {
+    var wrapper = new CompressingResponse(
+      response,
+      acceptsGzip(request) && !"HEAD".equals(request.getMethod())
+    );
+    // an exception discards the buffered bytes, so that an error page can be sent
+    filterChain.doFilter(request, wrapper);
+    wrapper.finish();
+    record(request, wrapper);
+  }
+
+  private void record(HttpServletRequest request, CompressingResponse response) {
+    var stream = response.stream;
+    if (null == stream || 0 == stream.rawBytes) {
+      return;
+    }
+    var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    var uri = null == pattern ? "UNKNOWN" : pattern.toString();
+    var encoding = stream.compressing
+      ? GZIP
+      : null != response.getHeader(HttpHeaders.CONTENT_ENCODING) ? response.getHeader(HttpHeaders.CONTENT_ENCODING) : IDENTITY;
+    DistributionSummary
+      .builder("http.server.response.size")
+      .description("The size of the response bodies before compression")
+      .baseUnit("bytes")
+      .tags("uri", uri, "encoding", encoding)
+      .register(registry)
+      .record(stream.rawBytes);
+    if (stream.compressing) {
+      DistributionSummary
+        .builder("http.server.response.compressed.size")
+        .description("The size of the response bodies after compression")
+        .baseUnit("bytes")
+        .tags("uri", uri)
+        .register(registry)
+        .record(stream.target.count);
+      Timer
+        .builder("http.server.response.compression")
+        .description("The time of compressing the response bodies")
+        .tags("uri", uri)
+        .register(registry)
+        .record(stream.compressionNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private boolean isCompressible(String contentType) {
+    if (null == contentType) {
+      return false;
+    }
+    var mediaType = MediaType.parseMediaType(contentType);
+    return mimeTypes
+      .stream()
+      .anyMatch(mimeType -> mimeType.isCompatibleWith(mediaType));
+  }
+
+  private interface IOAction {
+
+    void run() throws IOException;
+
+  }
+
+  private static class CountingOutputStream
+    extends OutputStream {
+
+    private final OutputStream delegate;
+    private long count;
+    // the time of writing to the client, see CompressingOutputStream#compress
+    private long nanos;
+
+    CountingOutputStream(OutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      var start = System.nanoTime();
+      delegate.write(b);
+      nanos += System.nanoTime() - start;
+      count++;
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+      var start = System.nanoTime();
+      delegate.write(b, off, len);
+      nanos += System.nanoTime() - start;
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      var start = System.nanoTime();
+      delegate.flush();
+      nanos += System.nanoTime() - start;
+    }
+
+  }
+
+  private class CompressingResponse
+    extends HttpServletResponseWrapper {
+
+    private final boolean gzipAccepted;
+    private CompressingOutputStream stream;
+    private PrintWriter writer;
+    // applied only if the response is not compressed
+    private long contentLength = -1;
+
+    CompressingResponse(HttpServletResponse response, boolean gzipAccepted) {
+      super(response);
+      this.gzipAccepted = gzipAccepted;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (null != writer) {
+        throw new IllegalStateException("getWriter() was called before");
+      }
+      if (null == stream) {
+        stream = new CompressingOutputStream(this);
+      }
+      return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (null == writer) {
+        if (null != stream) {
+          throw new IllegalStateException("getOutputStream() was called before");
+        }
+        stream = new CompressingOutputStream(this);
+        writer = new PrintWriter(new OutputStreamWriter(stream, Charset.forName(getCharacterEncoding())));
+      }
+      return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+      setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+      contentLength = len;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+      if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+        contentLength = null == value ? -1 : Long.parseLong(value);
+      } else {
+        super.setHeader(name, value);
+      }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+        setHeader(name, value);
+      } else {
+        super.addHeader(name, value);
+      }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      if (null != writer) {
+        writer.flush();
+      }
+      if (null != stream) {
+        stream.flush();
+      } else {
+        super.flushBuffer();
+      }
+    }
+
+    // e.g. by exception handlers, before anything was written to the client
+    @Override
+    public void resetBuffer() {
+      super.resetBuffer();
+      if (null != stream) {
+        stream.reset();
+      }
+    }
+
+    @Override
+    public void reset() {
+      super.reset();
+      contentLength = -1;
+      if (null != stream) {
+        stream.reset();
+        stream = null;
+        writer = null;
+      }
+    }
+
+    void finish() throws IOException {
+      if (null != writer) {
+        writer.flush();
+      }
+      if (null != stream) {
+        stream.finish();
+      } else if (contentLength >= 0) {
+        super.setContentLengthLong(contentLength);
+      }
+    }
+
+    boolean shouldCompress() {
+      return gzipAccepted
+        && null == getHeader(HttpHeaders.CONTENT_ENCODING)
+        && isCompressible(getContentType());
+    }
+
+  }
+
+  private class CompressingOutputStream
+    extends ServletOutputStream {
+
+    private final CompressingResponse response;
+    private byte[] buffer = new byte[Math.min(minResponseSize, 8192)];
+    private int buffered;
+    private boolean decided;
+    private boolean compressing;
+    private CountingOutputStream target;
+    private OutputStream out;
+    private long rawBytes;
+    private long compressionNanos;
+
+    CompressingOutputStream(CompressingResponse response) {
+      this.response = response;
+    }
+
+    // called once the size exceeds the threshold or the response is finished
+    private void decide(boolean finished) throws IOException {
+      decided = true;
+      var underlying = (HttpServletResponse) response.getResponse();
+      compressing = !finished && response.shouldCompress();
+      if (compressing) {
+        underlying.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        underlying.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        target = new CountingOutputStream(underlying.getOutputStream());
+        out = new GZIPOutputStream(target, 8192, true) {
+          {
+            def.setLevel(level);
+          }
+        };
+      } else {
+        if (finished && response.contentLength < 0) {
+          underlying.setContentLength(buffered);
+        } else if (response.contentLength >= 0) {
+          underlying.setContentLengthLong(response.contentLength);
+        }
+        target = new CountingOutputStream(underlying.getOutputStream());
+        out = target;
+      }
+      if (buffered > 0) {
+        writeOut(buffer, 0, buffered);
+      }
+      buffer = null;
+    }
+
+    /*
+     * The elapsed time of the gzip stream without the time of writing the
+     * compressed bytes to the client. The CPU time (ThreadMXBean) is not
+     * available for virtual threads and would be a JMX call per write.
+     */
+    private void compress(IOAction action) throws IOException {
+      var start = System.nanoTime();
+      var writing = target.nanos;
+      action.run();
+      compressionNanos += System.nanoTime() - start - (target.nanos - writing);
+    }
+
+    private void writeOut(byte[] b, int off, int len) throws IOException {
+      if (compressing) {
+        compress(() -> out.write(b, off, len));
+      } else {
+        out.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+      rawBytes += len;
+      if (decided) {
+        writeOut(b, off, len);
+        return;
+      }
+      if (buffered + len < minResponseSize) {
+        if (buffered + len > buffer.length) {
+          buffer = Arrays.copyOf(buffer, Math.min(minResponseSize, Math.max(buffered + len, buffer.length * 2)));
+        }
+        System.arraycopy(b, off, buffer, buffered, len);
+        buffered += len;
+        return;
+      }
+      decide(false);
+      writeOut(b, off, len);
+    }
+
+    // ignored until the size is known, so that small responses stay uncompressed
+    @Override
+    public void flush() throws IOException {
+      if (decided) {
+        if (compressing) {
+          compress(out::flush);
+        } else {
+          out.flush();
+        }
+      }
+    }
+
+    void reset() {
+      if (decided) {
+        throw new IllegalStateException("The response was written already");
+      }
+      buffered = 0;
+      rawBytes = 0;
+    }
+
+    void finish() throws IOException {
+      if (!decided) {
+        decide(true);
+      }
+      if (compressing) {
+        compress(((GZIPOutputStream) out)::finish);
+      }
+      out.flush();
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new UnsupportedOperationException("Asynchronous writes are not supported");
+    }
+
+  }
+
+}
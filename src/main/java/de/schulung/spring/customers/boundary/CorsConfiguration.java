@@ -12,6 +12,7 @@ import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.ACCEPT_LANGUAGE;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.ETAG;
 import static org.springframework.http.HttpHeaders.IF_MATCH;
 import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
 import static org.springframework.http.HttpHeaders.LINK;
@@ -34,9 +35,9 @@ public class CorsConfiguration {
       public void addCorsMappings(@Nonnull CorsRegistry registry) {
         registry
           .addMapping("/**")
-          .exposedHeaders(LOCATION, LINK)
+          .exposedHeaders(LOCATION, LINK, ETAG)
           .allowedHeaders(ORIGIN, CONTENT_TYPE, ACCEPT, ACCEPT_LANGUAGE, IF_MATCH, IF_NONE_MATCH, AUTHORIZATION)
-          .allowedMethods("GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS")
+          .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "HEAD", "OPTIONS")
           .allowedOriginPatterns(allowedOrigins.split(","))
           .allowCredentials(false);
       }
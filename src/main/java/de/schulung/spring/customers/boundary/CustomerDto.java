@@ -1,8 +1,10 @@
 package de.schulung.spring.customers.boundary;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -18,10 +20,14 @@ public class CustomerDto {
   )
   private UUID uuid;
   @NotNull
+  @Size(max = 255)
   private String name;
   @NotNull
   private LocalDate birthdate;
   @Pattern(regexp = "active|locked|disabled")
   private String state = "active";
+  // only used for the ETag header
+  @JsonIgnore
+  private Long version;
 
 }
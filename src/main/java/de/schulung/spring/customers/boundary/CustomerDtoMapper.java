@@ -2,10 +2,19 @@ package de.schulung.spring.customers.boundary;
 
 import de.schulung.spring.customers.domain.Customer;
 import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersAgeStatistics;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersStatistics;
 import org.mapstruct.Mapper;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+
 @Mapper(componentModel = "spring")
 public interface CustomerDtoMapper {
 
@@ -13,6 +22,42 @@ public interface CustomerDtoMapper {
 
   CustomerDto map(Customer source);
 
+  CustomersStatisticsDto map(CustomersStatistics source);
+
+  CustomersAgeStatisticsDto map(CustomersAgeStatistics source);
+
+  CustomersAgeBucketDto map(CustomersAgeStatistics.Bucket source);
+
+  Map<String, Long> mapCountsByState(Map<CustomerState, Long> source);
+
+  CustomersAggregationDto map(CustomersAggregation source);
+
+  CustomersGroupDto map(CustomersAggregation.Group source);
+
+  // see CustomersGroupBy for the key types
+  default String mapGroupKey(Object key) {
+    return key instanceof CustomerState state
+      ? mapState(state)
+      : null == key ? null : key.toString();
+  }
+
+  default String mapGroupBy(CustomersGroupBy groupBy) {
+    return null == groupBy ? null : switch (groupBy) {
+      case STATE -> "state";
+      case BIRTH_YEAR -> "birth-year";
+      case NAME_INITIAL -> "name-initial";
+    };
+  }
+
+  default CustomersGroupBy mapGroupBy(String groupBy) {
+    return null == groupBy ? null : switch (groupBy) {
+      case "state" -> CustomersGroupBy.STATE;
+      case "birth-year" -> CustomersGroupBy.BIRTH_YEAR;
+      case "name-initial" -> CustomersGroupBy.NAME_INITIAL;
+      default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+    };
+  }
+
   default String mapState(CustomerState state) {
     return null == state ? null : switch (state) {
       case ACTIVE -> "active";
@@ -30,4 +75,33 @@ public interface CustomerDtoMapper {
     };
   }
 
+  // opaque cursor for keyset pagination
+  default String mapCursor(UUID uuid) {
+    return null == uuid ? null : Base64
+      .getUrlEncoder()
+      .withoutPadding()
+      .encodeToString(
+        ByteBuffer
+          .allocate(16)
+          .putLong(uuid.getMostSignificantBits())
+          .putLong(uuid.getLeastSignificantBits())
+          .array()
+      );
+  }
+
+  default UUID mapCursor(String cursor) {
+    if (null == cursor) {
+      return null;
+    }
+    try {
+      var buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+      if (buffer.remaining() != 16) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+      }
+      return new UUID(buffer.getLong(), buffer.getLong());
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+    }
+  }
+
 }
@@ -0,0 +1,21 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CustomerImportResultDto {
+
+  // position within the uploaded customers, starting with 0
+  private final long index;
+  private final int status;
+  private final UUID uuid;
+  private final List<String> errors;
+
+}
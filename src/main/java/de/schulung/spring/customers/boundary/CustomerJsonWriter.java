@@ -0,0 +1,105 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.function.Function;
+
+/*
+ * Writes a customer like Jackson writes its CustomerDto, but without
+ * creating the DTO and without reflection. Field names and states are
+ * encoded once, uuids and dates are formatted into reusable buffers.
+ * An instance is not thread-safe, it is meant to be used per response.
+ */
+final class CustomerJsonWriter {
+
+  private static final SerializableString UUID_FIELD = new SerializedString("uuid");
+  private static final SerializableString NAME_FIELD = new SerializedString("name");
+  private static final SerializableString BIRTHDATE_FIELD = new SerializedString("birthdate");
+  private static final SerializableString STATE_FIELD = new SerializedString("state");
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final SerializableString[] states;
+  private final char[] uuidBuffer = new char[36];
+  private final char[] dateBuffer = new char[10];
+
+  CustomerJsonWriter(Function<CustomerState, String> stateMapping) {
+    var values = CustomerState.values();
+    this.states = new SerializableString[values.length];
+    for (var state : values) {
+      states[state.ordinal()] = new SerializedString(stateMapping.apply(state));
+    }
+  }
+
+  void write(JsonGenerator generator, Customer customer) throws IOException {
+    generator.writeStartObject();
+    generator.writeFieldName(UUID_FIELD);
+    if (null == customer.getUuid()) {
+      generator.writeNull();
+    } else {
+      generator.writeString(uuidBuffer, 0, formatUuid(customer.getUuid()));
+    }
+    generator.writeFieldName(NAME_FIELD);
+    generator.writeString(customer.getName());
+    generator.writeFieldName(BIRTHDATE_FIELD);
+    writeDate(generator, customer.getBirthdate());
+    generator.writeFieldName(STATE_FIELD);
+    if (null == customer.getState()) {
+      generator.writeNull();
+    } else {
+      generator.writeString(states[customer.getState().ordinal()]);
+    }
+    generator.writeEndObject();
+  }
+
+  // like UUID.toString()
+  private int formatUuid(UUID uuid) {
+    formatHex(uuid.getMostSignificantBits() >>> 32, 8, 0);
+    uuidBuffer[8] = '-';
+    formatHex(uuid.getMostSignificantBits() >>> 16, 4, 9);
+    uuidBuffer[13] = '-';
+    formatHex(uuid.getMostSignificantBits(), 4, 14);
+    uuidBuffer[18] = '-';
+    formatHex(uuid.getLeastSignificantBits() >>> 48, 4, 19);
+    uuidBuffer[23] = '-';
+    formatHex(uuid.getLeastSignificantBits(), 12, 24);
+    return uuidBuffer.length;
+  }
+
+  private void formatHex(long value, int digits, int offset) {
+    for (var i = offset + digits - 1; i >= offset; i--) {
+      uuidBuffer[i] = HEX[(int) (value & 0xf)];
+      value >>>= 4;
+    }
+  }
+
+  // ISO-8601 like Jackson's LocalDateSerializer, years beyond 4 digits are rare
+  private void writeDate(JsonGenerator generator, LocalDate date) throws IOException {
+    if (null == date) {
+      generator.writeNull();
+    } else if (date.getYear() < 0 || date.getYear() > 9999) {
+      generator.writeString(date.toString());
+    } else {
+      formatDecimal(date.getYear(), 4, 0);
+      dateBuffer[4] = '-';
+      formatDecimal(date.getMonthValue(), 2, 5);
+      dateBuffer[7] = '-';
+      formatDecimal(date.getDayOfMonth(), 2, 8);
+      generator.writeString(dateBuffer, 0, dateBuffer.length);
+    }
+  }
+
+  private void formatDecimal(int value, int digits, int offset) {
+    for (var i = offset + digits - 1; i >= offset; i--) {
+      dateBuffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+}
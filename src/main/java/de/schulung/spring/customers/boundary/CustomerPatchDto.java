@@ -0,0 +1,17 @@
+package de.schulung.spring.customers.boundary;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import lombok.Getter;
+import lombok.Setter;
+
+// the attributes that can be patched (JSON Merge Patch)
+@Getter
+@Setter
+public class CustomerPatchDto {
+
+  @NotNull
+  @Pattern(regexp = "active|locked|disabled")
+  private String state;
+
+}
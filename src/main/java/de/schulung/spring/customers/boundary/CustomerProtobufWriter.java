@@ -0,0 +1,129 @@
+package de.schulung.spring.customers.boundary;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Writes customers as length-delimited Protobuf messages (see customers.proto),
+ * readable with Customer.parseDelimitedFrom(...). Encoded by hand, so we
+ * do not need the Protobuf runtime and code generation. Null values are
+ * omitted, like default values. An instance is not thread-safe, it is meant
+ * to be used per response and buffers the output.
+ */
+final class CustomerProtobufWriter {
+
+  // field number << 3 | wire type
+  private static final int UUID_MSB_TAG = 1 << 3 | 1;
+  private static final int UUID_LSB_TAG = 2 << 3 | 1;
+  private static final int NAME_TAG = 3 << 3 | 2;
+  private static final int BIRTHDATE_TAG = 4 << 3;
+  private static final int STATE_TAG = 5 << 3;
+  // more than the largest message without the name, including the length prefix
+  private static final int MAX_FIXED_SIZE = 64;
+
+  private final OutputStream out;
+  private byte[] buffer = new byte[8192];
+  private int position;
+
+  CustomerProtobufWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  // the numbers of customers.proto, 0 is reserved for an unspecified state
+  private static int stateNumber(CustomerState state) {
+    return switch (state) {
+      case ACTIVE -> 1;
+      case LOCKED -> 2;
+      case DISABLED -> 3;
+    };
+  }
+
+  void write(Customer customer) throws IOException {
+    var name = null == customer.getName() ? null : customer.getName().getBytes(StandardCharsets.UTF_8);
+    var maxSize = MAX_FIXED_SIZE + (null == name ? 0 : name.length);
+    if (maxSize > buffer.length - position) {
+      flush();
+      if (maxSize > buffer.length) {
+        buffer = new byte[maxSize];
+      }
+    }
+    writeVarint(messageSize(customer, name));
+    if (null != customer.getUuid()) {
+      writeVarint(UUID_MSB_TAG);
+      writeFixed64(customer.getUuid().getMostSignificantBits());
+      writeVarint(UUID_LSB_TAG);
+      writeFixed64(customer.getUuid().getLeastSignificantBits());
+    }
+    if (null != name) {
+      writeVarint(NAME_TAG);
+      writeVarint(name.length);
+      System.arraycopy(name, 0, buffer, position, name.length);
+      position += name.length;
+    }
+    if (null != customer.getBirthdate()) {
+      writeVarint(BIRTHDATE_TAG);
+      writeVarint(zigZag((int) customer.getBirthdate().toEpochDay()));
+    }
+    if (null != customer.getState()) {
+      writeVarint(STATE_TAG);
+      writeVarint(stateNumber(customer.getState()));
+    }
+  }
+
+  private static int messageSize(Customer customer, byte[] name) {
+    var size = 0;
+    if (null != customer.getUuid()) {
+      size += 2 * (1 + 8);
+    }
+    if (null != name) {
+      size += 1 + varintSize(name.length) + name.length;
+    }
+    if (null != customer.getBirthdate()) {
+      size += 1 + varintSize(zigZag((int) customer.getBirthdate().toEpochDay()));
+    }
+    if (null != customer.getState()) {
+      size += 2;
+    }
+    return size;
+  }
+
+  // sint32
+  private static int zigZag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static int varintSize(int value) {
+    var size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private void writeVarint(int value) {
+    while ((value & ~0x7f) != 0) {
+      buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte) value;
+  }
+
+  // little endian
+  private void writeFixed64(long value) {
+    for (var i = 0; i < 8; i++) {
+      buffer[position++] = (byte) value;
+      value >>>= 8;
+    }
+  }
+
+  void flush() throws IOException {
+    out.write(buffer, 0, position);
+    position = 0;
+  }
+
+}
@@ -0,0 +1,13 @@
+package de.schulung.spring.customers.boundary;
+
+import de.schulung.spring.customers.domain.Customer;
+
+import java.util.stream.Stream;
+
+/**
+ * A response body of customers, written without DTOs by the {@link CustomerStreamHttpMessageConverter}.
+ *
+ * @param customers the customers, closed after writing
+ */
+record CustomerStream(Stream<Customer> customers) {
+}
@@ -0,0 +1,124 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import de.schulung.spring.customers.domain.CustomerState;
+import jakarta.annotation.Nonnull;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/*
+ * Writes customers as a JSON array or as NDJSON, byte by byte like the
+ * Jackson converters write CustomerDto, but streaming straight into the
+ * response via CustomerJsonWriter. It must be registered before the
+ * Jackson converter, which would write the record itself.
+ *
+ * For machine clients, the same structure is available in the binary
+ * Jackson formats CBOR and Smile, and as length-delimited Protobuf
+ * messages (see customers.proto).
+ */
+class CustomerStreamHttpMessageConverter
+  extends AbstractHttpMessageConverter<CustomerStream> {
+
+  static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+  static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+  static final String APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
+  static final MediaType APPLICATION_PROTOBUF = MediaType.valueOf(APPLICATION_PROTOBUF_VALUE);
+
+  private final JsonFactory jsonFactory;
+  private final JsonFactory cborFactory = new CBORFactory();
+  private final JsonFactory smileFactory = new SmileFactory();
+  private final Function<CustomerState, String> stateMapping;
+
+  CustomerStreamHttpMessageConverter(ObjectMapper objectMapper, Function<CustomerState, String> stateMapping) {
+    super(
+      MediaType.APPLICATION_JSON,
+      MediaType.APPLICATION_NDJSON,
+      MediaType.APPLICATION_CBOR,
+      APPLICATION_SMILE,
+      APPLICATION_PROTOBUF
+    );
+    this.jsonFactory = objectMapper.getFactory();
+    this.stateMapping = stateMapping;
+  }
+
+  @Override
+  protected boolean supports(@Nonnull Class<?> clazz) {
+    return CustomerStream.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected boolean canRead(MediaType mediaType) {
+    return false;
+  }
+
+  @Nonnull
+  @Override
+  protected CustomerStream readInternal(
+    @Nonnull Class<? extends CustomerStream> clazz,
+    @Nonnull HttpInputMessage inputMessage
+  ) {
+    throw new HttpMessageNotReadableException("Customers are not supported as input", inputMessage);
+  }
+
+  @Override
+  protected void writeInternal(
+    @Nonnull CustomerStream body,
+    @Nonnull HttpOutputMessage outputMessage
+  ) throws IOException {
+    var contentType = outputMessage.getHeaders().getContentType();
+    if (null != contentType && APPLICATION_PROTOBUF.isCompatibleWith(contentType)) {
+      writeProtobuf(body, outputMessage);
+      return;
+    }
+    var ndjson = null != contentType && MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType);
+    var factory = null == contentType ? jsonFactory
+      : MediaType.APPLICATION_CBOR.isCompatibleWith(contentType) ? cborFactory
+      : APPLICATION_SMILE.isCompatibleWith(contentType) ? smileFactory
+      : jsonFactory;
+    var writer = new CustomerJsonWriter(stateMapping);
+    try (
+      var customers = body.customers();
+      var generator = factory.createGenerator(outputMessage.getBody(), JsonEncoding.UTF8)
+    ) {
+      var iterator = customers.iterator();
+      if (ndjson) {
+        generator.setRootValueSeparator(null);
+        while (iterator.hasNext()) {
+          writer.write(generator, iterator.next());
+          generator.writeRaw('\n');
+        }
+      } else {
+        generator.writeStartArray();
+        while (iterator.hasNext()) {
+          writer.write(generator, iterator.next());
+        }
+        generator.writeEndArray();
+      }
+    }
+  }
+
+  private void writeProtobuf(CustomerStream body, HttpOutputMessage outputMessage) throws IOException {
+    // like Spring's ProtobufHttpMessageConverter
+    outputMessage.getHeaders().set("X-Protobuf-Schema", "/customers.proto");
+    outputMessage.getHeaders().set("X-Protobuf-Message", "customers.Customer");
+    try (var customers = body.customers()) {
+      var writer = new CustomerProtobufWriter(outputMessage.getBody());
+      var iterator = customers.iterator();
+      while (iterator.hasNext()) {
+        writer.write(iterator.next());
+      }
+      writer.flush();
+    }
+  }
+
+}
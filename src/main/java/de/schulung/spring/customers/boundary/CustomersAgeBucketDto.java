@@ -0,0 +1,17 @@
+package de.schulung.spring.customers.boundary;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+
+@Getter
+@Setter
+public class CustomersAgeBucketDto {
+
+  private int minAge;
+  private int maxAge;
+  private long count;
+  private Map<String, Long> countsByState;
+
+}
@@ -0,0 +1,15 @@
+package de.schulung.spring.customers.boundary;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class CustomersAgeStatisticsDto {
+
+  private int bucketSize;
+  private List<CustomersAgeBucketDto> buckets;
+
+}
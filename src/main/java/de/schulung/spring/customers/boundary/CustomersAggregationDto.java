@@ -0,0 +1,15 @@
+package de.schulung.spring.customers.boundary;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class CustomersAggregationDto {
+
+  private String groupBy;
+  private List<CustomersGroupDto> groups;
+
+}
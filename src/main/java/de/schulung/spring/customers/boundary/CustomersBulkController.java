@@ -0,0 +1,129 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/customers/bulk")
+class CustomersBulkController {
+
+  private static final int MAX_DELETIONS = 100_000;
+
+  private final CustomersService customersService;
+  private final CustomerDtoMapper mapper;
+  private final ObjectMapper objectMapper;
+  private final Validator validator;
+  private final int batchSize;
+
+  CustomersBulkController(
+    CustomersService customersService,
+    CustomerDtoMapper mapper,
+    ObjectMapper objectMapper,
+    Validator validator,
+    @Value("${application.import.batch-size:500}")
+    int batchSize
+  ) {
+    this.customersService = customersService;
+    this.mapper = mapper;
+    this.objectMapper = objectMapper;
+    this.validator = validator;
+    this.batchSize = batchSize;
+  }
+
+  /*
+   * Accepts a JSON array or NDJSON and returns one result per customer,
+   * in the same order. The request body is read while writing the response.
+   */
+  @PostMapping(
+    consumes = {
+      MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_NDJSON_VALUE
+    },
+    produces = {
+      MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_NDJSON_VALUE
+    }
+  )
+  Stream<CustomerImportResultDto> importCustomers(
+    HttpServletRequest request
+  ) throws IOException {
+    var input = objectMapper
+      .readerFor(CustomerDto.class)
+      .<CustomerDto>readValues(request.getInputStream());
+    return new CustomersImport(
+      input,
+      customersService,
+      mapper,
+      validator,
+      batchSize
+    ).stream();
+  }
+
+  // DELETE with a body is not supported by all clients
+  @PostMapping(
+    path = "/delete",
+    consumes = MediaType.APPLICATION_JSON_VALUE,
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  BulkOperationResultDto deleteCustomers(
+    @RequestBody
+    @NotNull
+    @Size(max = MAX_DELETIONS)
+    List<@NotNull UUID> uuids
+  ) {
+    return new BulkOperationResultDto(
+      customersService.deleteAll(uuids)
+    );
+  }
+
+  /*
+   * A single set-based update per request (for the uuids: per chunk),
+   * customers that have the state already are not counted.
+   */
+  @PostMapping(
+    path = "/state",
+    consumes = MediaType.APPLICATION_JSON_VALUE,
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  BulkOperationResultDto changeCustomersState(
+    @Valid
+    @RequestBody
+    CustomersStateChangeDto change
+  ) {
+    var state = mapper.mapState(change.getState());
+    if (null != change.getUuids()) {
+      return new BulkOperationResultDto(
+        customersService.updateAllStates(change.getUuids(), state)
+      );
+    }
+    var filter = CustomersFilter
+      .builder()
+      .state(mapper.mapState(change.getCurrentState()))
+      .birthdateFrom(change.getBirthdateFrom())
+      .birthdateTo(change.getBirthdateTo())
+      .build();
+    return new BulkOperationResultDto(
+      customersService.updateAllStates(filter, state)
+    );
+  }
+
+}
@@ -1,20 +1,33 @@
 package de.schulung.spring.customers.boundary;
 
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersFilter;
 import de.schulung.spring.customers.domain.CustomersService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.time.LocalDate;
 import java.util.UUID;
-import java.util.stream.Stream;
 
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/customers")
 @RequiredArgsConstructor
 class CustomersController {
@@ -22,20 +35,196 @@ class CustomersController {
   private final CustomersService customersService;
   private final CustomerDtoMapper mapper;
 
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int MAX_BUCKET_SIZE = 150;
+
+  // the stream is serialized (and closed) while writing the response, without DTOs
   @GetMapping(
-    produces = MediaType.APPLICATION_JSON_VALUE
+    produces = {
+      MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_NDJSON_VALUE,
+      MediaType.APPLICATION_CBOR_VALUE,
+      CustomerStreamHttpMessageConverter.APPLICATION_SMILE_VALUE,
+      CustomerStreamHttpMessageConverter.APPLICATION_PROTOBUF_VALUE
+    }
   )
-  Stream<CustomerDto> getCustomers(
+  ResponseEntity<CustomerStream> getCustomers(
     @RequestParam(required = false)
     @Pattern(regexp = "active|locked|disabled")
-    String state
+    String state,
+    @RequestParam(required = false)
+    @Min(1)
+    @Max(MAX_PAGE_SIZE)
+    Integer limit,
+    @RequestParam(required = false)
+    String cursor,
+    @RequestParam(required = false)
+    @Size(min = 1, max = 255)
+    String name,
+    @RequestParam(required = false)
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    LocalDate birthdateFrom,
+    @RequestParam(required = false)
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    LocalDate birthdateTo,
+    WebRequest request
+  ) {
+    var customerState = mapper.mapState(state);
+    if (null != birthdateFrom || null != birthdateTo) {
+      // a cohort is streamed, it is neither paged nor ranked
+      if (
+        null != limit || null != cursor || null != name
+          || null != birthdateFrom && null != birthdateTo && birthdateFrom.isAfter(birthdateTo)
+      ) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+      }
+      return ResponseEntity.ok(
+        new CustomerStream(
+          customersService.findAll(
+            CustomersFilter
+              .builder()
+              .state(customerState)
+              .birthdateFrom(birthdateFrom)
+              .birthdateTo(birthdateTo)
+              .build()
+          )
+        )
+      );
+    }
+    if (null != name) {
+      return searchCustomers(name, customerState, limit, cursor, request);
+    }
+    // without paging parameters, we stream all customers
+    if (null == limit && null == cursor) {
+      var response = ResponseEntity.ok();
+      // the checksum would be a second scan, unless the sink maintains it or the request is conditional
+      if (customersService.isChecksumMaintained() || null != request.getHeader(HttpHeaders.IF_NONE_MATCH)) {
+        // calculated before reading, so the ETag is never newer than the body
+        var eTag = collectionETag(customersService.checksum(customerState));
+        if (request.checkNotModified(eTag)) {
+          return null;
+        }
+        response.eTag(eTag);
+      }
+      return response.body(
+        new CustomerStream(
+          null != customerState
+            ? customersService.findAllByState(customerState)
+            : customersService.findAll()
+        )
+      );
+    }
+    var pageSize = null != limit ? limit : DEFAULT_PAGE_SIZE;
+    var page = customersService.findPage(
+      customerState,
+      mapper.mapCursor(cursor),
+      pageSize
+    );
+    var checksum = page
+      .customers()
+      .stream()
+      .mapToLong(CustomersChecksum::of)
+      .sum();
+    var eTag = collectionETag(
+      page
+        .next()
+        .map(next -> checksum ^ next.getLeastSignificantBits())
+        .orElse(checksum)
+    );
+    if (request.checkNotModified(eTag)) {
+      return null;
+    }
+    var response = ResponseEntity
+      .ok()
+      .eTag(eTag);
+    page
+      .next()
+      .map(next -> ServletUriComponentsBuilder
+        .fromCurrentRequest()
+        .replaceQueryParam("cursor", mapper.mapCursor(next))
+        .replaceQueryParam("limit", pageSize)
+        .toUriString()
+      )
+      .ifPresent(next -> response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\""));
+    return response.body(
+      new CustomerStream(
+        page
+          .customers()
+          .stream()
+      )
+    );
+  }
+
+  // ranked matches instead of pages, so there is no cursor
+  private ResponseEntity<CustomerStream> searchCustomers(
+    String name,
+    CustomerState state,
+    Integer limit,
+    String cursor,
+    WebRequest request
+  ) {
+    if (null != cursor) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+    }
+    var customers = customersService.searchByName(
+      name,
+      state,
+      null != limit ? limit : DEFAULT_PAGE_SIZE
+    );
+    var eTag = collectionETag(
+      customers
+        .stream()
+        .mapToLong(CustomersChecksum::of)
+        .sum()
+    );
+    if (request.checkNotModified(eTag)) {
+      return null;
+    }
+    return ResponseEntity
+      .ok()
+      .eTag(eTag)
+      .body(new CustomerStream(customers.stream()));
+  }
+
+  // weak, because the representations (JSON, NDJSON, binary formats) differ
+  private static String collectionETag(long checksum) {
+    return "W/\"" + Long.toHexString(checksum) + "\"";
+  }
+
+  @GetMapping(
+    path = "/stats",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  CustomersStatisticsDto getStatistics() {
+    return mapper.map(customersService.getStatistics());
+  }
+
+  // counts per birthdate and state are aggregated by the sink, without reading the customers
+  @GetMapping(
+    path = "/stats/ages",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  CustomersAgeStatisticsDto getAgeStatistics(
+    @RequestParam(defaultValue = "10")
+    @Min(1)
+    @Max(MAX_BUCKET_SIZE)
+    int bucketSize
+  ) {
+    return mapper.map(customersService.getAgeStatistics(bucketSize));
+  }
+
+  // aggregated by the sink (see CustomersSink#aggregate), might be cached for a short time
+  @GetMapping(
+    path = "/stats/groups",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  CustomersAggregationDto getAggregation(
+    @RequestParam
+    @Pattern(regexp = "state|birth-year|name-initial")
+    String by
   ) {
-    return (
-      null != state
-        ? customersService.findAllByState(mapper.mapState(state))
-        : customersService.findAll()
-    )
-      .map(mapper::map);
+    return mapper.map(customersService.aggregate(mapper.mapGroupBy(by)));
   }
 
   @PostMapping(
@@ -58,15 +247,109 @@ class CustomersController {
       .body(mapper.map(customer));
   }
 
+  // answers 304 if the ETag matches the If-None-Match header
   @GetMapping("/{uuid}")
-  CustomerDto findCustomerById(
+  ResponseEntity<CustomerDto> findCustomerById(
     @PathVariable("uuid")
     UUID uuid
   ) {
-    return customersService
+    var customer = customersService
       .findById(uuid)
       .map(mapper::map)
       .orElseThrow(NotFoundException::new);
+    var response = ResponseEntity.ok();
+    if (null != customer.getVersion()) {
+      response.eTag(customer.getVersion().toString());
+    }
+    return response.body(customer);
+  }
+
+  /*
+   * If-Match: "<version>" (the ETag of GET) for optimistic locking,
+   * or * to only replace an existing customer. Without the header,
+   * the customer is replaced regardless of its version.
+   */
+  static Long expectedVersion(String ifMatch) {
+    if (null == ifMatch || "*".equals(ifMatch.strip())) {
+      return null;
+    }
+    var eTag = ifMatch.strip();
+    // weak ETags must not be used with If-Match, and we only have one version
+    if (eTag.length() < 3 || !eTag.startsWith("\"") || !eTag.endsWith("\"")) {
+      throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+    }
+    try {
+      return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+    } catch (NumberFormatException e) {
+      throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+    }
+  }
+
+  // the response has no body, the ETag is the new version
+  @PutMapping("/{uuid}")
+  ResponseEntity<Void> replaceCustomer(
+    @PathVariable("uuid")
+    UUID uuid,
+    @Valid
+    @RequestBody
+    CustomerDto customerDto,
+    @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+    String ifMatch
+  ) {
+    var customer = mapper.map(customerDto);
+    customer.setUuid(uuid);
+    if (!customersService.update(customer, expectedVersion(ifMatch))) {
+      throw new NotFoundException();
+    }
+    return ResponseEntity
+      .noContent()
+      .eTag(customer.getVersion().toString())
+      .build();
+  }
+
+  // only the state, updated by a single statement without reading the customer before
+  @PatchMapping(
+    path = "/{uuid}",
+    consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE}
+  )
+  ResponseEntity<Void> patchCustomer(
+    @PathVariable("uuid")
+    UUID uuid,
+    @Valid
+    @RequestBody
+    CustomerPatchDto patch,
+    @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+    String ifMatch
+  ) {
+    var version = customersService
+      .updateState(uuid, mapper.mapState(patch.getState()), expectedVersion(ifMatch))
+      .orElseThrow(NotFoundException::new);
+    return ResponseEntity
+      .noContent()
+      .eTag(version.toString())
+      .build();
+  }
+
+  // handled here, because TransientErrorHandler would answer with 503
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+  void handleOptimisticLockingFailure() {
+    // the client has to read the customer again
+  }
+
+  // a filter is required, we do not delete all customers at once
+  @DeleteMapping(
+    params = "state",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  BulkOperationResultDto deleteCustomersByState(
+    @RequestParam
+    @Pattern(regexp = "active|locked|disabled")
+    String state
+  ) {
+    return new BulkOperationResultDto(
+      customersService.deleteAllByState(mapper.mapState(state))
+    );
   }
 
   @DeleteMapping("/{uuid}")
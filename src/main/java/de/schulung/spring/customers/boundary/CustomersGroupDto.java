@@ -0,0 +1,17 @@
+package de.schulung.spring.customers.boundary;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+public class CustomersGroupDto {
+
+  private String key;
+  private long count;
+  private LocalDate minBirthdate;
+  private LocalDate maxBirthdate;
+
+}
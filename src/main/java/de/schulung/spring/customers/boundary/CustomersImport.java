@@ -0,0 +1,151 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomersService;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Reads, validates and creates customers chunk by chunk while the
+ * results are written, so neither the upload nor the results are
+ * held in memory completely.
+ */
+@RequiredArgsConstructor
+class CustomersImport
+  implements Iterator<CustomerImportResultDto> {
+
+  private final MappingIterator<CustomerDto> input;
+  private final CustomersService customersService;
+  private final CustomerDtoMapper mapper;
+  private final Validator validator;
+  private final int batchSize;
+
+  private final Queue<CustomerImportResultDto> results = new ArrayDeque<>();
+  private long index = 0;
+  private boolean finished = false;
+
+  Stream<CustomerImportResultDto> stream() {
+    return StreamSupport
+      .stream(
+        Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+        false
+      )
+      .onClose(() -> {
+        try {
+          input.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (results.isEmpty() && !finished) {
+      readBatch();
+    }
+    return !results.isEmpty();
+  }
+
+  @Override
+  public CustomerImportResultDto next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return results.remove();
+  }
+
+  private record Item(long index, Customer customer) {
+  }
+
+  private void readBatch() {
+    // results of invalid items are emitted in order, together with the batch
+    var batch = new ArrayList<Item>(batchSize);
+    var chunk = new ArrayList<CustomerImportResultDto>(batchSize);
+    while (batch.size() < batchSize && !finished) {
+      var current = index++;
+      try {
+        if (!input.hasNextValue()) {
+          finished = true;
+          break;
+        }
+        var dto = input.nextValue();
+        var violations = validator.validate(dto);
+        if (violations.isEmpty()) {
+          var customer = mapper.map(dto);
+          batch.add(new Item(current, customer));
+          chunk.add(null);
+        } else {
+          chunk.add(invalid(
+            current,
+            violations
+              .stream()
+              .map(v -> v.getPropertyPath() + " " + v.getMessage())
+              .sorted()
+              .toList()
+          ));
+        }
+      } catch (JsonMappingException e) {
+        // the iterator skips the rest of the invalid item
+        chunk.add(invalid(current, List.of(e.getOriginalMessage())));
+      } catch (JsonProcessingException e) {
+        // malformed input, we cannot continue reading
+        chunk.add(invalid(current, List.of(e.getOriginalMessage())));
+        finished = true;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    if (!batch.isEmpty()) {
+      customersService.createAll(
+        batch
+          .stream()
+          .map(Item::customer)
+          .toList()
+      );
+    }
+    var created = batch.iterator();
+    for (var result : chunk) {
+      if (null == result) {
+        var item = created.next();
+        results.add(
+          CustomerImportResultDto
+            .builder()
+            .index(item.index())
+            .status(HttpStatus.CREATED.value())
+            .uuid(item.customer().getUuid())
+            .build()
+        );
+      } else {
+        results.add(result);
+      }
+    }
+  }
+
+  private static CustomerImportResultDto invalid(long index, List<String> errors) {
+    return CustomerImportResultDto
+      .builder()
+      .index(index)
+      .status(HttpStatus.BAD_REQUEST.value())
+      .errors(errors)
+      .build();
+  }
+
+}
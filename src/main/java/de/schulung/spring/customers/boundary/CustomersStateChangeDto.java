@@ -0,0 +1,44 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+// the customers are selected either by their uuids or by a filter
+@Getter
+@Setter
+public class CustomersStateChangeDto {
+
+  static final int MAX_UUIDS = 100_000;
+
+  @NotNull
+  @Pattern(regexp = "active|locked|disabled")
+  private String state;
+  @Size(max = MAX_UUIDS)
+  private List<@NotNull UUID> uuids;
+  @Pattern(regexp = "active|locked|disabled")
+  private String currentState;
+  private LocalDate birthdateFrom;
+  private LocalDate birthdateTo;
+
+  @JsonIgnore
+  boolean hasFilter() {
+    return null != currentState || null != birthdateFrom || null != birthdateTo;
+  }
+
+  // we do not change all customers at once
+  @JsonIgnore
+  @AssertTrue(message = "either uuids or filter criteria are required")
+  public boolean isSelective() {
+    return (null != uuids) != hasFilter();
+  }
+
+}
@@ -0,0 +1,15 @@
+package de.schulung.spring.customers.boundary;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+
+@Getter
+@Setter
+public class CustomersStatisticsDto {
+
+  private long count;
+  private Map<String, Long> countsByState;
+
+}
@@ -0,0 +1,69 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.Nonnull;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+
+/*
+ * Writes a stream element by element, one JSON document per line,
+ * without collecting it before.
+ */
+class NdjsonHttpMessageConverter
+  extends AbstractHttpMessageConverter<Stream<?>> {
+
+  private final ObjectWriter writer;
+
+  NdjsonHttpMessageConverter(ObjectMapper objectMapper) {
+    super(MediaType.APPLICATION_NDJSON);
+    this.writer = objectMapper
+      .writer()
+      .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
+
+  @Override
+  protected boolean supports(@Nonnull Class<?> clazz) {
+    return Stream.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected boolean canRead(MediaType mediaType) {
+    return false;
+  }
+
+  @Nonnull
+  @Override
+  protected Stream<?> readInternal(
+    @Nonnull Class<? extends Stream<?>> clazz,
+    @Nonnull HttpInputMessage inputMessage
+  ) {
+    throw new HttpMessageNotReadableException("NDJSON is not supported as input", inputMessage);
+  }
+
+  @Override
+  protected void writeInternal(
+    @Nonnull Stream<?> stream,
+    @Nonnull HttpOutputMessage outputMessage
+  ) throws IOException {
+    try (
+      stream;
+      var generator = writer.createGenerator(outputMessage.getBody())
+    ) {
+      generator.setRootValueSeparator(null);
+      var iterator = stream.iterator();
+      while (iterator.hasNext()) {
+        writer.writeValue(generator, iterator.next());
+        generator.writeRaw('\n');
+      }
+    }
+  }
+
+}
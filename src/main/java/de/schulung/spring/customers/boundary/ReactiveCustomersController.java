@@ -0,0 +1,384 @@
+package de.schulung.spring.customers.boundary;
+
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.ReactiveCustomersService;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/*
+ * Same API as the CustomersController, for the reactive stack
+ * (spring.main.web-application-type=reactive). Fluxes are written
+ * with backpressure, so slow clients do not make us buffer customers.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/customers")
+@RequiredArgsConstructor
+class ReactiveCustomersController {
+
+  private final ReactiveCustomersService customersService;
+  private final CustomerDtoMapper mapper;
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int MAX_BUCKET_SIZE = 150;
+
+  @GetMapping(
+    produces = {
+      MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_NDJSON_VALUE
+    }
+  )
+  Mono<ResponseEntity<Flux<CustomerDto>>> getCustomers(
+    @RequestParam(required = false)
+    @Pattern(regexp = "active|locked|disabled")
+    String state,
+    @RequestParam(required = false)
+    @Min(1)
+    @Max(MAX_PAGE_SIZE)
+    Integer limit,
+    @RequestParam(required = false)
+    String cursor,
+    @RequestParam(required = false)
+    @Size(min = 1, max = 255)
+    String name,
+    @RequestParam(required = false)
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    LocalDate birthdateFrom,
+    @RequestParam(required = false)
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    LocalDate birthdateTo,
+    ServerWebExchange exchange
+  ) {
+    var customerState = mapper.mapState(state);
+    if (null != birthdateFrom || null != birthdateTo) {
+      // see CustomersController#getCustomers
+      if (
+        null != limit || null != cursor || null != name
+          || null != birthdateFrom && null != birthdateTo && birthdateFrom.isAfter(birthdateTo)
+      ) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST));
+      }
+      return Mono.just(
+        ResponseEntity.ok(
+          customersService
+            .findAll(
+              CustomersFilter
+                .builder()
+                .state(customerState)
+                .birthdateFrom(birthdateFrom)
+                .birthdateTo(birthdateTo)
+                .build()
+            )
+            .map(mapper::map)
+        )
+      );
+    }
+    if (null != name) {
+      return searchCustomers(name, customerState, limit, cursor, exchange);
+    }
+    if (null == limit && null == cursor) {
+      // like CustomersController, the checksum would be a second scan
+      if (!customersService.isChecksumMaintained() && !exchange.getRequest().getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH)) {
+        return Mono.just(
+          ResponseEntity.ok(
+            (
+              null != customerState
+                ? customersService.findAllByState(customerState)
+                : customersService.findAll()
+            )
+              .map(mapper::map)
+          )
+        );
+      }
+      return customersService
+        .checksum(customerState)
+        .map(ReactiveCustomersController::collectionETag)
+        .map(eTag -> exchange.checkNotModified(eTag)
+          ? ResponseEntity
+          .status(HttpStatus.NOT_MODIFIED)
+          .eTag(eTag)
+          .build()
+          : ResponseEntity
+          .ok()
+          .eTag(eTag)
+          .body(
+            (
+              null != customerState
+                ? customersService.findAllByState(customerState)
+                : customersService.findAll()
+            )
+              .map(mapper::map)
+          )
+        );
+    }
+    var pageSize = null != limit ? limit : DEFAULT_PAGE_SIZE;
+    var after = mapper.mapCursor(cursor);
+    return customersService
+      .findPage(customerState, after, pageSize)
+      .map(page -> {
+        var checksum = page
+          .customers()
+          .stream()
+          .mapToLong(CustomersChecksum::of)
+          .sum();
+        var eTag = collectionETag(
+          page
+            .next()
+            .map(next -> checksum ^ next.getLeastSignificantBits())
+            .orElse(checksum)
+        );
+        if (exchange.checkNotModified(eTag)) {
+          return ResponseEntity
+            .status(HttpStatus.NOT_MODIFIED)
+            .eTag(eTag)
+            .build();
+        }
+        var response = ResponseEntity
+          .ok()
+          .eTag(eTag);
+        page
+          .next()
+          .map(next -> UriComponentsBuilder
+            .fromUri(exchange.getRequest().getURI())
+            .replaceQueryParam("cursor", mapper.mapCursor(next))
+            .replaceQueryParam("limit", pageSize)
+            .toUriString()
+          )
+          .ifPresent(next -> response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\""));
+        return response.body(
+          Flux
+            .fromIterable(page.customers())
+            .map(mapper::map)
+        );
+      });
+  }
+
+  // see CustomersController#searchCustomers
+  private Mono<ResponseEntity<Flux<CustomerDto>>> searchCustomers(
+    String name,
+    CustomerState state,
+    Integer limit,
+    String cursor,
+    ServerWebExchange exchange
+  ) {
+    if (null != cursor) {
+      return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST));
+    }
+    return customersService
+      .searchByName(name, state, null != limit ? limit : DEFAULT_PAGE_SIZE)
+      .collectList()
+      .map(customers -> {
+        var eTag = collectionETag(
+          customers
+            .stream()
+            .mapToLong(CustomersChecksum::of)
+            .sum()
+        );
+        if (exchange.checkNotModified(eTag)) {
+          return ResponseEntity
+            .status(HttpStatus.NOT_MODIFIED)
+            .eTag(eTag)
+            .build();
+        }
+        return ResponseEntity
+          .ok()
+          .eTag(eTag)
+          .body(
+            Flux
+              .fromIterable(customers)
+              .map(mapper::map)
+          );
+      });
+  }
+
+  // weak, because JSON and NDJSON representations differ
+  private static String collectionETag(long checksum) {
+    return "W/\"" + Long.toHexString(checksum) + "\"";
+  }
+
+  @GetMapping(
+    path = "/stats",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  Mono<CustomersStatisticsDto> getStatistics() {
+    return customersService
+      .getStatistics()
+      .map(mapper::map);
+  }
+
+  @GetMapping(
+    path = "/stats/ages",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  Mono<CustomersAgeStatisticsDto> getAgeStatistics(
+    @RequestParam(defaultValue = "10")
+    @Min(1)
+    @Max(MAX_BUCKET_SIZE)
+    int bucketSize
+  ) {
+    return customersService
+      .getAgeStatistics(bucketSize)
+      .map(mapper::map);
+  }
+
+  @GetMapping(
+    path = "/stats/groups",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  Mono<CustomersAggregationDto> getAggregation(
+    @RequestParam
+    @Pattern(regexp = "state|birth-year|name-initial")
+    String by
+  ) {
+    var groupBy = mapper.mapGroupBy(by);
+    return customersService
+      .aggregate(groupBy)
+      .map(mapper::map);
+  }
+
+  @PostMapping(
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  Mono<ResponseEntity<CustomerDto>> createCustomer(
+    @Valid
+    @RequestBody
+    CustomerDto customerDto,
+    ServerWebExchange exchange
+  ) {
+    var customer = mapper.map(customerDto);
+    return customersService
+      .create(customer)
+      .then(Mono.fromSupplier(() -> {
+        var location = UriComponentsBuilder
+          .fromUri(exchange.getRequest().getURI())
+          .path("/{uuid}")
+          .buildAndExpand(customer.getUuid())
+          .toUri();
+        return ResponseEntity
+          .created(location)
+          .body(mapper.map(customer));
+      }));
+  }
+
+  @GetMapping("/{uuid}")
+  Mono<ResponseEntity<CustomerDto>> findCustomerById(
+    @PathVariable("uuid")
+    UUID uuid
+  ) {
+    return customersService
+      .findById(uuid)
+      .map(mapper::map)
+      .map(customer -> {
+        var response = ResponseEntity.ok();
+        if (null != customer.getVersion()) {
+          response.eTag(customer.getVersion().toString());
+        }
+        return response.body(customer);
+      })
+      .switchIfEmpty(Mono.error(NotFoundException::new));
+  }
+
+  // see CustomersController#replaceCustomer
+  @PutMapping("/{uuid}")
+  Mono<ResponseEntity<Void>> replaceCustomer(
+    @PathVariable("uuid")
+    UUID uuid,
+    @Valid
+    @RequestBody
+    CustomerDto customerDto,
+    @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+    String ifMatch
+  ) {
+    var expectedVersion = CustomersController.expectedVersion(ifMatch);
+    var customer = mapper.map(customerDto);
+    customer.setUuid(uuid);
+    return customersService
+      .update(customer, expectedVersion)
+      .flatMap(updated -> updated ? Mono.just(customer) : Mono.error(new NotFoundException()))
+      .map(updated -> ResponseEntity
+        .noContent()
+        .eTag(updated.getVersion().toString())
+        .<Void>build()
+      );
+  }
+
+  // see CustomersController#patchCustomer
+  @PatchMapping(
+    path = "/{uuid}",
+    consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE}
+  )
+  Mono<ResponseEntity<Void>> patchCustomer(
+    @PathVariable("uuid")
+    UUID uuid,
+    @Valid
+    @RequestBody
+    CustomerPatchDto patch,
+    @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+    String ifMatch
+  ) {
+    return customersService
+      .updateState(uuid, mapper.mapState(patch.getState()), CustomersController.expectedVersion(ifMatch))
+      .switchIfEmpty(Mono.error(NotFoundException::new))
+      .map(version -> ResponseEntity
+        .noContent()
+        .eTag(version.toString())
+        .<Void>build()
+      );
+  }
+
+  // see CustomersController#handleOptimisticLockingFailure
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+  void handleOptimisticLockingFailure() {
+    // the client has to read the customer again
+  }
+
+  @DeleteMapping(
+    params = "state",
+    produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  Mono<BulkOperationResultDto> deleteCustomersByState(
+    @RequestParam
+    @Pattern(regexp = "active|locked|disabled")
+    String state
+  ) {
+    return customersService
+      .deleteAllByState(mapper.mapState(state))
+      .map(BulkOperationResultDto::new);
+  }
+
+  @DeleteMapping("/{uuid}")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  Mono<Void> deleteCustomer(
+    @PathVariable("uuid")
+    UUID uuid
+  ) {
+    return customersService
+      .delete(uuid)
+      .flatMap(deleted -> deleted ? Mono.empty() : Mono.error(new NotFoundException()));
+  }
+
+}
@@ -0,0 +1,22 @@
+package de.schulung.spring.customers.boundary;
+
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// e.g. the database is overloaded, so the client should retry later
+@RestControllerAdvice
+class TransientErrorHandler {
+
+  @ExceptionHandler(TransientDataAccessException.class)
+  ResponseEntity<Void> handleTransientDataAccessException() {
+    return ResponseEntity
+      .status(HttpStatus.SERVICE_UNAVAILABLE)
+      .header(HttpHeaders.RETRY_AFTER, "1")
+      .build();
+  }
+
+}
@@ -1,12 +1,16 @@
 package de.schulung.spring.customers.boundary;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Nonnull;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 @Configuration
 public class WebConfig {
 
@@ -25,4 +29,22 @@ public class WebConfig {
     };
   }
 
+  @Bean
+  WebMvcConfigurer registerStreamingMessageConverters(
+    ObjectMapper objectMapper,
+    CustomerDtoMapper mapper
+  ) {
+    return new WebMvcConfigurer() {
+      @Override
+      public void extendMessageConverters(
+        @Nonnull
+        List<HttpMessageConverter<?>> converters
+      ) {
+        // before Jackson's converter
+        converters.addFirst(new CustomerStreamHttpMessageConverter(objectMapper, mapper::mapState));
+        converters.add(new NdjsonHttpMessageConverter(objectMapper));
+      }
+    };
+  }
+
 }
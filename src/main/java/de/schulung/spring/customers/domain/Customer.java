@@ -1,6 +1,7 @@
 package de.schulung.spring.customers.domain;
 
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,11 +16,14 @@ public class Customer {
 
   private UUID uuid;
   @NotNull
+  @Size(max = 255)
   private String name;
   @NotNull
   private LocalDate birthdate;
   @Builder.Default
   private CustomerState state = CustomerState.ACTIVE;
+  // incremented on each modification, assigned by the sink
+  private Long version;
 
 
 }
@@ -0,0 +1,89 @@
+package de.schulung.spring.customers.domain;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Ranks the customers found by a (case-insensitive) name search.
+ * The better matches have the lower ranks: the exact name, names
+ * starting with the term, names with a word starting with the term,
+ * and names only containing the term. Within a rank, the customers
+ * are ordered by their names.
+ */
+public final class CustomerNameSearch {
+
+  public static final int EXACT = 0;
+  public static final int PREFIX = 1;
+  public static final int WORD_PREFIX = 2;
+  public static final int CONTAINS = 3;
+  public static final int NONE = Integer.MAX_VALUE;
+
+  private CustomerNameSearch() {
+  }
+
+  public static String normalize(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  // the term must be normalized
+  public static int rank(String name, String term) {
+    if (null == name) {
+      return NONE;
+    }
+    var normalizedName = normalize(name);
+    if (normalizedName.startsWith(term)) {
+      return normalizedName.length() == term.length() ? EXACT : PREFIX;
+    }
+    var index = normalizedName.indexOf(term, 1);
+    if (index < 0) {
+      return NONE;
+    }
+    do {
+      if (!Character.isLetterOrDigit(normalizedName.charAt(index - 1))) {
+        return WORD_PREFIX;
+      }
+      index = normalizedName.indexOf(term, index + 1);
+    } while (index > 0);
+    return CONTAINS;
+  }
+
+  // the term must be normalized
+  public static Comparator<Customer> order(String term) {
+    return Comparator
+      .<Customer>comparingInt(c -> rank(c.getName(), term))
+      .thenComparing(c -> normalize(c.getName()))
+      .thenComparing(Customer::getUuid);
+  }
+
+  /**
+   * Selects the best matches without sorting all candidates.
+   *
+   * @param candidates the customers to rank, the non-matching ones are skipped
+   * @param term       the normalized search term
+   * @param limit      the maximum count of customers
+   * @return the best matches, ordered by their rank
+   */
+  public static List<Customer> top(Stream<Customer> candidates, String term, int limit) {
+    var order = order(term);
+    // the worst match on top, to be replaced by better ones
+    var best = new PriorityQueue<Customer>(order.reversed());
+    candidates
+      .filter(c -> rank(c.getName(), term) != NONE)
+      .forEach(c -> {
+        if (best.size() < limit) {
+          best.add(c);
+        } else if (order.compare(c, best.peek()) < 0) {
+          best.poll();
+          best.add(c);
+        }
+      });
+    return best
+      .stream()
+      .sorted(order)
+      .toList();
+  }
+
+}
@@ -0,0 +1,13 @@
+package de.schulung.spring.customers.domain;
+
+/**
+ * The result of a state update (see {@link CustomersSink#updateState}).
+ *
+ * @param previousState the state before the update, so that decorators (e.g. counts) do not need to read it before
+ * @param version       the version after the update
+ */
+public record CustomerStateUpdate(
+  CustomerState previousState,
+  long version
+) {
+}
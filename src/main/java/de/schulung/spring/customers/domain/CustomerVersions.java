@@ -0,0 +1,25 @@
+package de.schulung.spring.customers.domain;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/*
+ * Optimistic locking for the sinks' updates. Without an expected
+ * version, any version matches.
+ */
+public final class CustomerVersions {
+
+  private CustomerVersions() {
+  }
+
+  public static void check(UUID uuid, Long version, Long expectedVersion) {
+    if (null != expectedVersion && !Objects.equals(version, expectedVersion)) {
+      throw new OptimisticLockingFailureException(
+        "Customer " + uuid + " has version " + version + " instead of " + expectedVersion
+      );
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+package de.schulung.spring.customers.domain;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Counts of customers per age bucket and state.
+ * Customers without birthdate or state are not counted.
+ *
+ * @param bucketSize the count of years per bucket
+ * @param buckets    the buckets that contain customers, ordered by age
+ */
+public record CustomersAgeStatistics(
+  int bucketSize,
+  List<Bucket> buckets
+) {
+
+  /**
+   * @param minAge        the minimum age (inclusive)
+   * @param maxAge        the maximum age (inclusive)
+   * @param count         the total count
+   * @param countsByState the count per state
+   */
+  public record Bucket(
+    int minAge,
+    int maxAge,
+    long count,
+    Map<CustomerState, Long> countsByState
+  ) {
+  }
+
+  /**
+   * Counts the customers per birthdate and state (see CustomersSink#countByBirthdateAndState).
+   * Sinks that have materialized the customers anyway can use this collector.
+   */
+  public static Collector<Customer, ?, SortedMap<LocalDate, Map<CustomerState, Long>>> countingByBirthdateAndState() {
+    return Collectors.filtering(
+      customer -> null != customer.getBirthdate() && null != customer.getState(),
+      Collectors.groupingBy(
+        Customer::getBirthdate,
+        TreeMap::new,
+        Collectors.groupingBy(
+          Customer::getState,
+          () -> new EnumMap<>(CustomerState.class),
+          Collectors.counting()
+        )
+      )
+    );
+  }
+
+  /*
+   * Each birthdate maps to a single age, so the counts per birthdate
+   * (at most a few ten thousand) are summed up instead of the customers.
+   * Birthdates in the future count as age 0.
+   */
+  public static CustomersAgeStatistics of(
+    SortedMap<LocalDate, Map<CustomerState, Long>> countsByBirthdate,
+    LocalDate today,
+    int bucketSize
+  ) {
+    var countsByBucket = new TreeMap<Integer, Map<CustomerState, Long>>();
+    countsByBirthdate.forEach((birthdate, countsByState) -> {
+      var age = Math.max(0, Period.between(birthdate, today).getYears());
+      var counts = countsByBucket.computeIfAbsent(age / bucketSize, bucket -> new EnumMap<>(CustomerState.class));
+      countsByState.forEach((state, count) -> counts.merge(state, count, Long::sum));
+    });
+    var buckets = new ArrayList<Bucket>(countsByBucket.size());
+    countsByBucket.forEach((bucket, countsByState) -> buckets.add(
+      new Bucket(
+        bucket * bucketSize,
+        (bucket + 1) * bucketSize - 1,
+        countsByState.values().stream().mapToLong(Long::longValue).sum(),
+        countsByState
+      )
+    ));
+    return new CustomersAgeStatistics(bucketSize, buckets);
+  }
+
+}
@@ -0,0 +1,98 @@
+package de.schulung.spring.customers.domain;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collector;
+
+/**
+ * Counts and birthdate ranges of customers per group.
+ *
+ * @param groupBy the dimension of the groups
+ * @param groups  the groups that contain customers, ordered by their keys
+ */
+public record CustomersAggregation(
+  CustomersGroupBy groupBy,
+  List<Group> groups
+) {
+
+  /**
+   * @param key          the value of the dimension (see {@link CustomersGroupBy}),
+   *                     or <code>null</code> for the customers without value
+   * @param count        the count of customers
+   * @param minBirthdate the birthdate of the oldest customer, or <code>null</code> if there is no birthdate
+   * @param maxBirthdate the birthdate of the youngest customer, or <code>null</code> if there is no birthdate
+   */
+  public record Group(
+    Object key,
+    long count,
+    LocalDate minBirthdate,
+    LocalDate maxBirthdate
+  ) {
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+      return null == a || (null != b && b.isBefore(a)) ? b : a;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+      return null == a || (null != b && b.isAfter(a)) ? b : a;
+    }
+
+    private Group combine(Group other) {
+      return new Group(
+        key,
+        count + other.count,
+        min(minBirthdate, other.minBirthdate),
+        max(maxBirthdate, other.maxBirthdate)
+      );
+    }
+
+  }
+
+  // the keys of a dimension have the same type
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static final Comparator<Group> ORDER = Comparator.comparing(
+    group -> (Comparable) group.key(),
+    Comparator.nullsLast(Comparator.naturalOrder())
+  );
+
+  /**
+   * Aggregates the customers with primitive accumulators. Parallel streams
+   * aggregate their splits independently (fork-join) and combine the results.
+   */
+  public static Collector<Customer, ?, CustomersAggregation> aggregating(CustomersGroupBy groupBy) {
+    return Collector.of(
+      () -> new CustomersAggregator(groupBy),
+      CustomersAggregator::add,
+      CustomersAggregator::combine,
+      CustomersAggregator::toAggregation,
+      Collector.Characteristics.UNORDERED
+    );
+  }
+
+  // the groups of the sinks that aggregate by themselves (e.g. the database), unordered
+  public static CustomersAggregation of(CustomersGroupBy groupBy, Collection<Group> groups) {
+    return new CustomersAggregation(
+      groupBy,
+      groups
+        .stream()
+        .sorted(ORDER)
+        .toList()
+    );
+  }
+
+  // the aggregation of the customers of both aggregations (by the same dimension)
+  public CustomersAggregation combine(CustomersAggregation other) {
+    var groupsByKey = new HashMap<Object, Group>();
+    for (var group : groups) {
+      groupsByKey.put(group.key(), group);
+    }
+    for (var group : other.groups) {
+      groupsByKey.merge(group.key(), group, Group::combine);
+    }
+    return of(groupBy, groupsByKey.values());
+  }
+
+}
@@ -0,0 +1,146 @@
+package de.schulung.spring.customers.domain;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+/*
+ * The mutable container of CustomersAggregation#aggregating, not thread-safe.
+ * The groups are slots of primitive arrays (open addressing by an int key),
+ * so that adding a customer allocates nothing. Parallel streams fill one
+ * aggregator per split and combine them afterwards.
+ */
+final class CustomersAggregator {
+
+  // the customers without value
+  private static final int NO_KEY = Integer.MIN_VALUE;
+  // must be a power of 2
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final CustomersGroupBy groupBy;
+  private int[] keys;
+  // a free slot has no customers
+  private long[] counts;
+  // epoch days, Long.MAX_VALUE/MIN_VALUE without birthdates
+  private long[] minBirthdates;
+  private long[] maxBirthdates;
+  private int size;
+
+  CustomersAggregator(CustomersGroupBy groupBy) {
+    this.groupBy = groupBy;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    counts = new long[capacity];
+    minBirthdates = new long[capacity];
+    maxBirthdates = new long[capacity];
+  }
+
+  private int keyOf(Customer customer) {
+    return switch (groupBy) {
+      case STATE -> null == customer.getState()
+        ? NO_KEY
+        : customer.getState().ordinal();
+      case BIRTH_YEAR -> null == customer.getBirthdate()
+        ? NO_KEY
+        : customer.getBirthdate().getYear();
+      // the first character of the normalized name, without normalizing the whole name
+      case NAME_INITIAL -> null == customer.getName() || customer.getName().isEmpty()
+        ? NO_KEY
+        : Character.toLowerCase(customer.getName().charAt(0));
+    };
+  }
+
+  private Object decode(int key) {
+    if (NO_KEY == key) {
+      return null;
+    }
+    return switch (groupBy) {
+      case STATE -> CustomerState.values()[key];
+      case BIRTH_YEAR -> key;
+      case NAME_INITIAL -> String.valueOf((char) key);
+    };
+  }
+
+  void add(Customer customer) {
+    var birthdate = customer.getBirthdate();
+    add(
+      keyOf(customer),
+      1,
+      null == birthdate ? Long.MAX_VALUE : birthdate.toEpochDay(),
+      null == birthdate ? Long.MIN_VALUE : birthdate.toEpochDay()
+    );
+  }
+
+  private void add(int key, long count, long minBirthdate, long maxBirthdate) {
+    var slot = slotOf(key);
+    if (0 == counts[slot]) {
+      keys[slot] = key;
+      counts[slot] = count;
+      minBirthdates[slot] = minBirthdate;
+      maxBirthdates[slot] = maxBirthdate;
+      // at most half of the slots are used
+      if (++size * 2 > keys.length) {
+        resize();
+      }
+    } else {
+      counts[slot] += count;
+      minBirthdates[slot] = Math.min(minBirthdates[slot], minBirthdate);
+      maxBirthdates[slot] = Math.max(maxBirthdates[slot], maxBirthdate);
+    }
+  }
+
+  // the slot of the key, or the free slot for it (linear probing)
+  private int slotOf(int key) {
+    var mask = keys.length - 1;
+    var hash = key * 0x9E3779B9;
+    var slot = (hash ^ (hash >>> 16)) & mask;
+    while (0 != counts[slot] && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void resize() {
+    var oldKeys = keys;
+    var oldCounts = counts;
+    var oldMinBirthdates = minBirthdates;
+    var oldMaxBirthdates = maxBirthdates;
+    allocate(oldKeys.length * 2);
+    size = 0;
+    for (var slot = 0; slot < oldKeys.length; slot++) {
+      if (0 != oldCounts[slot]) {
+        add(oldKeys[slot], oldCounts[slot], oldMinBirthdates[slot], oldMaxBirthdates[slot]);
+      }
+    }
+  }
+
+  CustomersAggregator combine(CustomersAggregator other) {
+    for (var slot = 0; slot < other.keys.length; slot++) {
+      if (0 != other.counts[slot]) {
+        add(other.keys[slot], other.counts[slot], other.minBirthdates[slot], other.maxBirthdates[slot]);
+      }
+    }
+    return this;
+  }
+
+  CustomersAggregation toAggregation() {
+    var groups = new ArrayList<CustomersAggregation.Group>(size);
+    for (var slot = 0; slot < keys.length; slot++) {
+      if (0 != counts[slot]) {
+        var hasBirthdate = Long.MIN_VALUE != maxBirthdates[slot];
+        groups.add(
+          new CustomersAggregation.Group(
+            decode(keys[slot]),
+            counts[slot],
+            hasBirthdate ? LocalDate.ofEpochDay(minBirthdates[slot]) : null,
+            hasBirthdate ? LocalDate.ofEpochDay(maxBirthdates[slot]) : null
+          )
+        );
+      }
+    }
+    return CustomersAggregation.of(groupBy, groups);
+  }
+
+}
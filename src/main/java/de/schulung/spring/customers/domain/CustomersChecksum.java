@@ -0,0 +1,32 @@
+package de.schulung.spring.customers.domain;
+
+import java.util.UUID;
+
+/*
+ * Order-independent checksum over the uuids and versions of customers:
+ * the sum of a hash per customer. It changes when a customer is
+ * created, deleted or modified, and can be computed without sorting.
+ */
+public final class CustomersChecksum {
+
+  private CustomersChecksum() {
+  }
+
+  public static long of(UUID uuid, Long version) {
+    var hash = mix(uuid.getMostSignificantBits());
+    hash = mix(hash ^ uuid.getLeastSignificantBits());
+    return mix(hash ^ (null == version ? -1L : version));
+  }
+
+  public static long of(Customer customer) {
+    return of(customer.getUuid(), customer.getVersion());
+  }
+
+  // finalizer of SplitMix64
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+}
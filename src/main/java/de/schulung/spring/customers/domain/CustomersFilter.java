@@ -0,0 +1,56 @@
+package de.schulung.spring.customers.domain;
+
+import lombok.Builder;
+
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+/**
+ * A filter for customers. All criteria are optional (<code>null</code>) and combined with AND.
+ *
+ * @param state         the state
+ * @param namePrefix    the prefix of the name (case-insensitive)
+ * @param birthdateFrom the earliest birthdate (inclusive), customers without a birthdate do not match a range
+ * @param birthdateTo   the latest birthdate (inclusive)
+ */
+@Builder
+public record CustomersFilter(
+  CustomerState state,
+  String namePrefix,
+  LocalDate birthdateFrom,
+  LocalDate birthdateTo
+) implements Predicate<Customer> {
+
+  public static final CustomersFilter NONE = CustomersFilter.builder().build();
+
+  public boolean hasState() {
+    return null != state;
+  }
+
+  public boolean hasNamePrefix() {
+    return null != namePrefix;
+  }
+
+  public boolean hasBirthdateRange() {
+    return null != birthdateFrom || null != birthdateTo;
+  }
+
+  @Override
+  public boolean test(Customer customer) {
+    return (!hasState() || customer.getState() == state)
+      && (!hasNamePrefix() || matchesNamePrefix(customer.getName(), namePrefix))
+      && (!hasBirthdateRange() || matchesBirthdateRange(customer.getBirthdate(), birthdateFrom, birthdateTo));
+  }
+
+  // an unknown birthdate is not within any range, like NULL in SQL
+  static boolean matchesBirthdateRange(LocalDate birthdate, LocalDate from, LocalDate to) {
+    return null != birthdate
+      && (null == from || !birthdate.isBefore(from))
+      && (null == to || !birthdate.isAfter(to));
+  }
+
+  static boolean matchesNamePrefix(String name, String prefix) {
+    return null != name && name.regionMatches(true, 0, prefix, 0, prefix.length());
+  }
+
+}
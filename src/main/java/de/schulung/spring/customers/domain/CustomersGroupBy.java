@@ -0,0 +1,15 @@
+package de.schulung.spring.customers.domain;
+
+/**
+ * The dimension of a {@link CustomersAggregation}, determines the type of the group keys.
+ */
+public enum CustomersGroupBy {
+
+  // CustomerState
+  STATE,
+  // Integer
+  BIRTH_YEAR,
+  // String, the first character of the lower case name (see CustomerNameSearch#normalize)
+  NAME_INITIAL
+
+}
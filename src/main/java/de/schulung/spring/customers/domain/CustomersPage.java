@@ -0,0 +1,17 @@
+package de.schulung.spring.customers.domain;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A page of customers, ordered by their uuid.
+ *
+ * @param customers the customers of this page
+ * @param next      the uuid to continue with (exclusive), empty if this is the last page
+ */
+public record CustomersPage(
+  List<Customer> customers,
+  Optional<UUID> next
+) {
+}
@@ -0,0 +1,29 @@
+package de.schulung.spring.customers.domain;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// GET /actuator/info
+@Component
+@RequiredArgsConstructor
+public class CustomersQueryPlanInfoContributor
+  implements InfoContributor {
+
+  private final CustomersQueryPlanner planner;
+
+  @Override
+  public void contribute(Info.Builder builder) {
+    builder.withDetail(
+      "customers-queries",
+      Map.of(
+        "native", planner.getCapabilities(),
+        "full-scan", planner.getFullScans()
+      )
+    );
+  }
+
+}
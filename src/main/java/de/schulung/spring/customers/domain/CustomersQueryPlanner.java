@@ -0,0 +1,74 @@
+package de.schulung.spring.customers.domain;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Routes filter queries to the sink's native queries
+ * and reports the queries that would scan all customers.
+ */
+@Component
+@Slf4j
+public class CustomersQueryPlanner {
+
+  private final CustomersSink sink;
+  @Getter
+  private final Set<CustomersSinkCapability> capabilities;
+  @Getter
+  private final Set<CustomersSinkCapability> fullScans;
+
+  public CustomersQueryPlanner(
+    CustomersSink sink,
+    @Value("${application.persistence.strict-queries:false}")
+    boolean strict
+  ) {
+    this.sink = sink;
+    var capabilities = EnumSet.noneOf(CustomersSinkCapability.class);
+    capabilities.addAll(sink.getCapabilities());
+    this.capabilities = Collections.unmodifiableSet(capabilities);
+    this.fullScans = Collections.unmodifiableSet(EnumSet.complementOf(capabilities));
+    if (!fullScans.isEmpty()) {
+      var message = String.format(
+        "%s scans all customers for these queries: %s",
+        sink.getClass().getSimpleName(),
+        fullScans
+      );
+      if (strict) {
+        throw new IllegalStateException(message);
+      }
+      log.warn(message);
+    }
+  }
+
+  public boolean isNative(CustomersSinkCapability capability) {
+    return capabilities.contains(capability);
+  }
+
+  /*
+   * Uses a single native query for the most selective criterion
+   * and applies the remaining criteria on the result.
+   */
+  public Stream<Customer> findAll(CustomersFilter filter) {
+    final Stream<Customer> result;
+    if (filter.hasNamePrefix() && isNative(CustomersSinkCapability.NAME_PREFIX)) {
+      result = sink.findAllByNamePrefix(filter.namePrefix());
+    } else if (filter.hasBirthdateRange() && isNative(CustomersSinkCapability.BIRTHDATE_RANGE)) {
+      result = sink.findAllByBirthdateBetween(filter.birthdateFrom(), filter.birthdateTo());
+    } else if (filter.hasState() && isNative(CustomersSinkCapability.STATE)) {
+      result = sink.findAllByState(filter.state());
+    } else {
+      result = sink.findAll();
+    }
+    return filter.equals(CustomersFilter.NONE)
+      ? result
+      : result.filter(filter);
+  }
+
+}
@@ -5,6 +5,10 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
@@ -15,17 +19,85 @@ import java.util.stream.Stream;
 public class CustomersService {
 
   private final CustomersSink sink;
+  private final CustomersQueryPlanner planner;
 
   public long count() {
     return sink.count();
   }
 
+  public long countByState(CustomerState state) {
+    return sink.countByState(state);
+  }
+
+  public CustomersStatistics getStatistics() {
+    var countsByState = new EnumMap<CustomerState, Long>(CustomerState.class);
+    for (var state : CustomerState.values()) {
+      countsByState.put(state, sink.countByState(state));
+    }
+    return new CustomersStatistics(
+      sink.count(),
+      countsByState
+    );
+  }
+
+  public CustomersAgeStatistics getAgeStatistics(int bucketSize) {
+    return getAgeStatistics(bucketSize, LocalDate.now());
+  }
+
+  public CustomersAgeStatistics getAgeStatistics(int bucketSize, LocalDate today) {
+    return CustomersAgeStatistics.of(
+      sink.countByBirthdateAndState(),
+      today,
+      bucketSize
+    );
+  }
+
+  // see CustomersSink#aggregate
+  public CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    return sink.aggregate(groupBy);
+  }
+
+  public boolean isChecksumMaintained() {
+    return sink.isChecksumMaintained();
+  }
+
+  public long checksum(CustomerState state) {
+    return sink.checksum(state);
+  }
+
   public Stream<Customer> findAll() {
     return sink.findAll();
   }
 
   public Stream<Customer> findAllByState(CustomerState state) {
-    return sink.findAllByState(state);
+    return findAll(
+      CustomersFilter
+        .builder()
+        .state(state)
+        .build()
+    );
+  }
+
+  public Stream<Customer> findAll(CustomersFilter filter) {
+    return planner.findAll(filter);
+  }
+
+  // see CustomersSink#searchByName
+  public List<Customer> searchByName(String term, CustomerState state, int limit) {
+    return sink.searchByName(term, state, limit);
+  }
+
+  public CustomersPage findPage(CustomerState state, UUID after, int limit) {
+    // read one more to know whether there is a next page
+    var customers = sink.findPage(state, after, limit + 1);
+    if (customers.size() > limit) {
+      var page = customers.subList(0, limit);
+      return new CustomersPage(
+        page,
+        Optional.of(page.getLast().getUuid())
+      );
+    }
+    return new CustomersPage(customers, Optional.empty());
   }
 
   public Optional<Customer> findById(UUID uuid) {
@@ -36,8 +108,39 @@ public class CustomersService {
     sink.create(customer);
   }
 
+  public void createAll(List<@Valid Customer> customers) {
+    sink.createAll(customers);
+  }
+
+  // see CustomersSink#update
+  public boolean update(@Valid Customer customer, Long expectedVersion) {
+    return sink.update(customer, expectedVersion).isPresent();
+  }
+
+  public Optional<Long> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    return sink
+      .updateState(uuid, state, expectedVersion)
+      .map(CustomerStateUpdate::version);
+  }
+
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    return sink.updateAllStates(uuids, state);
+  }
+
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    return sink.updateAllStates(filter, state);
+  }
+
   public boolean delete(UUID uuid) {
-    return sink.delete(uuid);
+    return sink.delete(uuid).isPresent();
+  }
+
+  public long deleteAll(Collection<UUID> uuids) {
+    return sink.deleteAll(uuids);
+  }
+
+  public long deleteAllByState(CustomerState state) {
+    return sink.deleteAllByState(state);
   }
 
 }
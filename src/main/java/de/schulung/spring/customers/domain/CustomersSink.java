@@ -1,11 +1,29 @@
 package de.schulung.spring.customers.domain;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.UUID;
 import java.util.stream.Stream;
 
+/*
+ * The default methods scan all customers. Implementations that
+ * override them more efficiently declare this by their capabilities.
+ * Updates have no default, because they could not be atomic.
+ */
 public interface CustomersSink {
 
+  default Set<CustomersSinkCapability> getCapabilities() {
+    return EnumSet.noneOf(CustomersSinkCapability.class);
+  }
+
+  // the returned stream might hold resources (e.g. a database cursor) and must be closed
   Stream<Customer> findAll();
 
   default Stream<Customer> findAllByState(CustomerState state) {
@@ -13,19 +31,170 @@ public interface CustomersSink {
       .filter(c -> c.getState() == state);
   }
 
-  default Optional<Customer> findById(UUID uuid) {
+  // case-insensitive
+  default Stream<Customer> findAllByNamePrefix(String prefix) {
     return findAll()
-      .filter(c -> c.getUuid().equals(uuid))
-      .findFirst();
+      .filter(CustomersFilter.builder().namePrefix(prefix).build());
   }
 
-  default long count() {
+  // both inclusive, null for an open range
+  default Stream<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
     return findAll()
-      .count();
+      .filter(CustomersFilter.builder().birthdateFrom(from).birthdateTo(to).build());
+  }
+
+  /**
+   * Searches customers by their names (case-insensitive prefix or substring).
+   *
+   * @param term  the text to search, not empty
+   * @param state the state to filter, or <code>null</code> for all customers
+   * @param limit the maximum count of customers
+   * @return the best matches, ordered by their rank (see {@link CustomerNameSearch})
+   */
+  default List<Customer> searchByName(String term, CustomerState state, int limit) {
+    try (var customers = null == state ? findAll() : findAllByState(state)) {
+      return CustomerNameSearch.top(customers, CustomerNameSearch.normalize(term), limit);
+    }
+  }
+
+  /**
+   * Finds customers ordered by their uuid (keyset pagination).
+   *
+   * @param state the state to filter, or <code>null</code> for all customers
+   * @param after the uuid to start after (exclusive), or <code>null</code> for the first page
+   * @param limit the maximum count of customers
+   * @return the customers, ordered by their uuid
+   */
+  default List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    try (var customers = null == state ? findAll() : findAllByState(state)) {
+      return customers
+        .filter(c -> null == after || c.getUuid().compareTo(after) > 0)
+        .sorted(Comparator.comparing(Customer::getUuid))
+        .limit(limit)
+        .toList();
+    }
+  }
+
+  default Optional<Customer> findById(UUID uuid) {
+    try (var customers = findAll()) {
+      return customers
+        .filter(c -> c.getUuid().equals(uuid))
+        .findFirst();
+    }
+  }
+
+  default long count() {
+    try (var customers = findAll()) {
+      return customers
+        .count();
+    }
+  }
+
+  default long countByState(CustomerState state) {
+    try (var customers = findAllByState(state)) {
+      return customers
+        .count();
+    }
+  }
+
+  // see CustomersAgeStatistics, implementations should aggregate without materializing the customers
+  default SortedMap<LocalDate, Map<CustomerState, Long>> countByBirthdateAndState() {
+    try (var customers = findAll()) {
+      return customers
+        .collect(CustomersAgeStatistics.countingByBirthdateAndState());
+    }
+  }
+
+  // see CustomersAggregation, implementations should aggregate without materializing the customers
+  default CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    try (var customers = findAll()) {
+      return customers
+        .collect(CustomersAggregation.aggregating(groupBy));
+    }
+  }
+
+  // whether the checksums are maintained on writes, so that reading them does not scan the customers
+  default boolean isChecksumMaintained() {
+    return false;
+  }
+
+  // see CustomersChecksum, the state is optional
+  default long checksum(CustomerState state) {
+    try (var customers = null == state ? findAll() : findAllByState(state)) {
+      return customers
+        .mapToLong(CustomersChecksum::of)
+        .sum();
+    }
   }
 
+  // assigns a new uuid, unless the customer already has one (e.g. from a write-behind buffer)
   void create(Customer customer);
 
-  boolean delete(UUID uuid);
+  // bulk insert, assigns the uuids like create
+  default void createAll(Collection<Customer> customers) {
+    customers.forEach(this::create);
+  }
+
+  /**
+   * Replaces the name, birthdate and state of a customer. The version is incremented
+   * if anything has changed, and set to the given customer (like with create).
+   *
+   * @param customer        the uuid of the customer and the new values
+   * @param expectedVersion the current version (optimistic locking), or <code>null</code> to replace any version
+   * @return the customer before the update, or empty if it does not exist
+   * @throws org.springframework.dao.OptimisticLockingFailureException if the customer has another version
+   */
+  Optional<Customer> update(Customer customer, Long expectedVersion);
+
+  // like update, but only the state, returns the new version or empty if the customer does not exist
+  Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion);
+
+  /*
+   * Bulk state transitions, return the count of changed customers.
+   * Customers that have the state already are not updated (and keep their version).
+   */
+
+  default long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    return uuids
+      .stream()
+      .distinct()
+      .filter(uuid -> findById(uuid).filter(customer -> customer.getState() != state).isPresent())
+      .filter(uuid -> updateState(uuid, state, null).isPresent())
+      .count();
+  }
+
+  default long updateAllStates(CustomersFilter filter, CustomerState state) {
+    final List<UUID> uuids;
+    try (var customers = filter.hasState() ? findAllByState(filter.state()) : findAll()) {
+      uuids = customers
+        .filter(filter)
+        .filter(customer -> customer.getState() != state)
+        .map(Customer::getUuid)
+        .toList();
+    }
+    return updateAllStates(uuids, state);
+  }
+
+  // returns the deleted customer, or empty if it does not exist
+  Optional<Customer> delete(UUID uuid);
+
+  // returns the count of deleted customers
+  default long deleteAll(Collection<UUID> uuids) {
+    return uuids
+      .stream()
+      .distinct()
+      .filter(uuid -> delete(uuid).isPresent())
+      .count();
+  }
+
+  default long deleteAllByState(CustomerState state) {
+    final List<UUID> uuids;
+    try (var customers = findAllByState(state)) {
+      uuids = customers
+        .map(Customer::getUuid)
+        .toList();
+    }
+    return deleteAll(uuids);
+  }
 
 }
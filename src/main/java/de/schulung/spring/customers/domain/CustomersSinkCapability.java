@@ -0,0 +1,38 @@
+package de.schulung.spring.customers.domain;
+
+/**
+ * Queries that a {@link CustomersSink} can serve natively,
+ * i.e. without scanning all customers.
+ */
+public enum CustomersSinkCapability {
+
+  /**
+   * {@link CustomersSink#findById(java.util.UUID)}
+   */
+  ID,
+  /**
+   * {@link CustomersSink#findAllByState(CustomerState)}
+   */
+  STATE,
+  /**
+   * {@link CustomersSink#findAllByNamePrefix(String)}
+   */
+  NAME_PREFIX,
+  /**
+   * {@link CustomersSink#searchByName(String, CustomerState, int)}
+   */
+  NAME_SEARCH,
+  /**
+   * {@link CustomersSink#findAllByBirthdateBetween(java.time.LocalDate, java.time.LocalDate)}
+   */
+  BIRTHDATE_RANGE,
+  /**
+   * {@link CustomersSink#findPage(CustomerState, java.util.UUID, int)}
+   */
+  PAGE,
+  /**
+   * {@link CustomersSink#count()} and {@link CustomersSink#countByState(CustomerState)}
+   */
+  COUNT
+
+}
@@ -0,0 +1,15 @@
+package de.schulung.spring.customers.domain;
+
+import java.util.Map;
+
+/**
+ * Counts of customers.
+ *
+ * @param count         the total count
+ * @param countsByState the count per state
+ */
+public record CustomersStatistics(
+  long count,
+  Map<CustomerState, Long> countsByState
+) {
+}
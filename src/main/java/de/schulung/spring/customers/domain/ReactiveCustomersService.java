@@ -0,0 +1,138 @@
+package de.schulung.spring.customers.domain;
+
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+@Validated
+@Service
+@RequiredArgsConstructor
+public class ReactiveCustomersService {
+
+  private final ReactiveCustomersSink sink;
+
+  public Mono<Long> count() {
+    return sink.count();
+  }
+
+  public Mono<CustomersStatistics> getStatistics() {
+    return Flux
+      .fromArray(CustomerState.values())
+      .concatMap(state -> sink
+        .countByState(state)
+        .map(count -> Map.entry(state, count))
+      )
+      .collectMap(
+        Map.Entry::getKey,
+        Map.Entry::getValue,
+        () -> new EnumMap<>(CustomerState.class)
+      )
+      .zipWith(
+        sink.count(),
+        (countsByState, count) -> new CustomersStatistics(count, countsByState)
+      );
+  }
+
+  // see CustomersService#getAgeStatistics
+  public Mono<CustomersAgeStatistics> getAgeStatistics(int bucketSize) {
+    var today = LocalDate.now();
+    return sink
+      .countByBirthdateAndState()
+      .map(counts -> CustomersAgeStatistics.of(counts, today, bucketSize));
+  }
+
+  public Mono<CustomersAggregation> aggregate(CustomersGroupBy groupBy) {
+    return sink.aggregate(groupBy);
+  }
+
+  public boolean isChecksumMaintained() {
+    return sink.isChecksumMaintained();
+  }
+
+  public Mono<Long> checksum(CustomerState state) {
+    return sink.checksum(state);
+  }
+
+  public Flux<Customer> findAll() {
+    return sink.findAll();
+  }
+
+  public Flux<Customer> findAllByState(CustomerState state) {
+    return sink.findAllByState(state);
+  }
+
+  // like the CustomersQueryPlanner, the birthdate range is the more selective criterion
+  public Flux<Customer> findAll(CustomersFilter filter) {
+    final Flux<Customer> result;
+    if (filter.hasBirthdateRange()) {
+      result = sink.findAllByBirthdateBetween(filter.birthdateFrom(), filter.birthdateTo());
+    } else if (filter.hasState()) {
+      result = sink.findAllByState(filter.state());
+    } else {
+      result = sink.findAll();
+    }
+    return result.filter(filter);
+  }
+
+  public Flux<Customer> searchByName(String term, CustomerState state, int limit) {
+    return sink.searchByName(term, state, limit);
+  }
+
+  // see CustomersService#findPage
+  public Mono<CustomersPage> findPage(CustomerState state, UUID after, int limit) {
+    return sink
+      .findPage(state, after, limit + 1)
+      .collectList()
+      .map(customers -> {
+        if (customers.size() > limit) {
+          var page = customers.subList(0, limit);
+          return new CustomersPage(
+            page,
+            Optional.of(page.getLast().getUuid())
+          );
+        }
+        return new CustomersPage(customers, Optional.empty());
+      });
+  }
+
+  public Mono<Customer> findById(UUID uuid) {
+    return sink.findById(uuid);
+  }
+
+  public Mono<Void> create(@Valid Customer customer) {
+    return sink.create(customer);
+  }
+
+  // see CustomersSink#update
+  public Mono<Boolean> update(@Valid Customer customer, Long expectedVersion) {
+    return sink
+      .update(customer, expectedVersion)
+      .hasElement();
+  }
+
+  public Mono<Long> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    return sink
+      .updateState(uuid, state, expectedVersion)
+      .map(CustomerStateUpdate::version);
+  }
+
+  public Mono<Boolean> delete(UUID uuid) {
+    return sink
+      .delete(uuid)
+      .hasElement();
+  }
+
+  public Mono<Long> deleteAllByState(CustomerState state) {
+    return sink.deleteAllByState(state);
+  }
+
+}
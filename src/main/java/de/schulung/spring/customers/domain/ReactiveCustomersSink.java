@@ -0,0 +1,110 @@
+package de.schulung.spring.customers.domain;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+
+/*
+ * Non-blocking counterpart of the CustomersSink. Like there, the
+ * default methods scan all customers. Subscribers control the demand,
+ * so findAll can be consumed with backpressure.
+ */
+public interface ReactiveCustomersSink {
+
+  Flux<Customer> findAll();
+
+  default Flux<Customer> findAllByState(CustomerState state) {
+    return findAll()
+      .filter(c -> c.getState() == state);
+  }
+
+  // see CustomersSink#findAllByBirthdateBetween
+  default Flux<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    return findAll()
+      .filter(CustomersFilter.builder().birthdateFrom(from).birthdateTo(to).build());
+  }
+
+  // see CustomersSink#searchByName
+  default Flux<Customer> searchByName(String term, CustomerState state, int limit) {
+    return (null == state ? findAll() : findAllByState(state))
+      .collectList()
+      .flatMapIterable(customers -> CustomerNameSearch.top(
+        customers.stream(),
+        CustomerNameSearch.normalize(term),
+        limit
+      ));
+  }
+
+  // see CustomersSink#findPage
+  default Flux<Customer> findPage(CustomerState state, UUID after, int limit) {
+    return (null == state ? findAll() : findAllByState(state))
+      .filter(c -> null == after || c.getUuid().compareTo(after) > 0)
+      .sort(Comparator.comparing(Customer::getUuid))
+      .take(limit);
+  }
+
+  default Mono<Customer> findById(UUID uuid) {
+    return findAll()
+      .filter(c -> c.getUuid().equals(uuid))
+      .next();
+  }
+
+  default Mono<Long> count() {
+    return findAll()
+      .count();
+  }
+
+  default Mono<Long> countByState(CustomerState state) {
+    return findAllByState(state)
+      .count();
+  }
+
+  // see CustomersSink#countByBirthdateAndState
+  default Mono<SortedMap<LocalDate, Map<CustomerState, Long>>> countByBirthdateAndState() {
+    return findAll()
+      .collect(CustomersAgeStatistics.countingByBirthdateAndState());
+  }
+
+  // see CustomersSink#aggregate
+  default Mono<CustomersAggregation> aggregate(CustomersGroupBy groupBy) {
+    return findAll()
+      .collect(CustomersAggregation.aggregating(groupBy));
+  }
+
+  // see CustomersSink#isChecksumMaintained
+  default boolean isChecksumMaintained() {
+    return false;
+  }
+
+  // see CustomersChecksum, the state is optional
+  default Mono<Long> checksum(CustomerState state) {
+    return (null == state ? findAll() : findAllByState(state))
+      .reduce(0L, (sum, c) -> sum + CustomersChecksum.of(c));
+  }
+
+  Mono<Void> create(Customer customer);
+
+  // see CustomersSink#update, empty if the customer does not exist
+  Mono<Customer> update(Customer customer, Long expectedVersion);
+
+  // see CustomersSink#updateState, empty if the customer does not exist
+  Mono<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion);
+
+  // see CustomersSink#delete, empty if the customer does not exist
+  Mono<Customer> delete(UUID uuid);
+
+  default Mono<Long> deleteAllByState(CustomerState state) {
+    return findAllByState(state)
+      .map(Customer::getUuid)
+      .collectList()
+      .flatMapMany(Flux::fromIterable)
+      .concatMap(this::delete)
+      .count();
+  }
+
+}
@@ -0,0 +1,28 @@
+package de.schulung.spring.customers.persistence;
+
+import de.schulung.spring.customers.domain.CustomersSink;
+
+import java.util.stream.Stream;
+
+/**
+ * Wraps the customers sink with additional behaviour (e.g. caching).
+ * Beans of this type are applied by the sink configurations in their order.
+ */
+@FunctionalInterface
+public interface CustomersSinkDecorator {
+
+  CustomersSink decorate(CustomersSink sink);
+
+  static CustomersSink decorate(
+    CustomersSink sink,
+    Stream<CustomersSinkDecorator> decorators
+  ) {
+    return decorators
+      .reduce(
+        sink,
+        (result, decorator) -> decorator.decorate(result),
+        (a, b) -> b
+      );
+  }
+
+}
@@ -0,0 +1,151 @@
+package de.schulung.spring.customers.persistence;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.CustomersSinkCapability;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/*
+ * Base class for decorators. Delegates all methods, including the
+ * default methods, so that the delegate's native queries are kept.
+ */
+@RequiredArgsConstructor
+public abstract class DelegatingCustomersSink
+  implements CustomersSink {
+
+  @Getter(AccessLevel.PROTECTED)
+  private final CustomersSink delegate;
+
+  @Override
+  public Set<CustomersSinkCapability> getCapabilities() {
+    return delegate.getCapabilities();
+  }
+
+  @Override
+  public Stream<Customer> findAll() {
+    return delegate.findAll();
+  }
+
+  @Override
+  public Stream<Customer> findAllByState(CustomerState state) {
+    return delegate.findAllByState(state);
+  }
+
+  @Override
+  public Stream<Customer> findAllByNamePrefix(String prefix) {
+    return delegate.findAllByNamePrefix(prefix);
+  }
+
+  @Override
+  public Stream<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    return delegate.findAllByBirthdateBetween(from, to);
+  }
+
+  @Override
+  public List<Customer> searchByName(String term, CustomerState state, int limit) {
+    return delegate.searchByName(term, state, limit);
+  }
+
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    return delegate.findPage(state, after, limit);
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    return delegate.findById(uuid);
+  }
+
+  @Override
+  public long count() {
+    return delegate.count();
+  }
+
+  @Override
+  public long countByState(CustomerState state) {
+    return delegate.countByState(state);
+  }
+
+  @Override
+  public SortedMap<LocalDate, Map<CustomerState, Long>> countByBirthdateAndState() {
+    return delegate.countByBirthdateAndState();
+  }
+
+  @Override
+  public CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    return delegate.aggregate(groupBy);
+  }
+
+  @Override
+  public boolean isChecksumMaintained() {
+    return delegate.isChecksumMaintained();
+  }
+
+  @Override
+  public long checksum(CustomerState state) {
+    return delegate.checksum(state);
+  }
+
+  @Override
+  public void create(Customer customer) {
+    delegate.create(customer);
+  }
+
+  @Override
+  public void createAll(Collection<Customer> customers) {
+    delegate.createAll(customers);
+  }
+
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    return delegate.update(customer, expectedVersion);
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    return delegate.updateState(uuid, state, expectedVersion);
+  }
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    return delegate.updateAllStates(uuids, state);
+  }
+
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    return delegate.updateAllStates(filter, state);
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    return delegate.delete(uuid);
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    return delegate.deleteAll(uuids);
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    return delegate.deleteAllByState(state);
+  }
+
+}
@@ -0,0 +1,33 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.DelegatingCustomersSink;
+
+/*
+ * Caches the aggregations for a short time (the TTL of the cache).
+ * Writes do not invalidate them, so an aggregation might miss the
+ * writes of up to the TTL. Concurrent reads of the same dimension
+ * wait for a single aggregation.
+ */
+public class AggregationCachingCustomersSink
+  extends DelegatingCustomersSink {
+
+  private final Cache<CustomersGroupBy, CustomersAggregation> cache;
+
+  public AggregationCachingCustomersSink(
+    CustomersSink delegate,
+    Cache<CustomersGroupBy, CustomersAggregation> cache
+  ) {
+    super(delegate);
+    this.cache = cache;
+  }
+
+  @Override
+  public CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    return cache.get(groupBy, getDelegate()::aggregate);
+  }
+
+}
@@ -0,0 +1,40 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(
+  name = "application.persistence.aggregations.cache.enabled",
+  havingValue = "true"
+)
+public class AggregationCachingCustomersSinkConfiguration {
+
+  @Bean
+  CustomersSinkDecorator aggregationCachingCustomersSinkDecorator(
+    @Value("${application.persistence.aggregations.cache.ttl:10s}")
+    Duration ttl,
+    MeterRegistry meterRegistry
+  ) {
+    // one entry per dimension, hit/miss counters via /actuator/metrics/cache.*
+    var cache = Caffeine
+      .newBuilder()
+      .maximumSize(CustomersGroupBy.values().length)
+      .expireAfterWrite(ttl)
+      .recordStats()
+      .<CustomersGroupBy, CustomersAggregation>build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "customers.aggregations");
+    return sink -> new AggregationCachingCustomersSink(sink, cache);
+  }
+
+}
@@ -0,0 +1,121 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.DelegatingCustomersSink;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+/*
+ * Read-through cache for single customers by uuid.
+ * Misses are cached too (as empty optionals), writes invalidate the cache.
+ */
+public class CachingCustomersSink
+  extends DelegatingCustomersSink {
+
+  private final Cache<UUID, Optional<Customer>> cache;
+
+  public CachingCustomersSink(
+    CustomersSink delegate,
+    Cache<UUID, Optional<Customer>> cache
+  ) {
+    super(delegate);
+    this.cache = cache;
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    return cache.get(uuid, getDelegate()::findById);
+  }
+
+  @Override
+  public void create(Customer customer) {
+    super.create(customer);
+    cache.invalidate(customer.getUuid());
+  }
+
+  @Override
+  public void createAll(Collection<Customer> customers) {
+    super.createAll(customers);
+    cache.invalidateAll(
+      customers
+        .stream()
+        .map(Customer::getUuid)
+        .toList()
+    );
+  }
+
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    try {
+      return super.update(customer, expectedVersion);
+    } finally {
+      cache.invalidate(customer.getUuid());
+    }
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    try {
+      return super.updateState(uuid, state, expectedVersion);
+    } finally {
+      cache.invalidate(uuid);
+    }
+  }
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    try {
+      return super.updateAllStates(uuids, state);
+    } finally {
+      cache.invalidateAll(uuids);
+    }
+  }
+
+  // the cached customers might not match the filter anymore
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    try {
+      return super.updateAllStates(filter, state);
+    } finally {
+      cache.invalidateAll();
+    }
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    try {
+      return super.delete(uuid);
+    } finally {
+      cache.invalidate(uuid);
+    }
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    try {
+      return super.deleteAll(uuids);
+    } finally {
+      cache.invalidateAll(uuids);
+    }
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    try {
+      return super.deleteAllByState(state);
+    } finally {
+      cache
+        .asMap()
+        .values()
+        .removeIf(customer -> customer.isPresent() && customer.get().getState() == state);
+    }
+  }
+
+}
@@ -0,0 +1,81 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.Nonnull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+@Configuration
+@ConditionalOnProperty(
+  name = "application.persistence.cache.enabled",
+  havingValue = "true"
+)
+public class CachingCustomersSinkConfiguration {
+
+  static final int ORDER = 100;
+
+  // wraps the write-behind sink and is wrapped by the counting decorator
+  @Bean
+  @Order(CachingCustomersSinkConfiguration.ORDER)
+  CustomersSinkDecorator cachingCustomersSinkDecorator(
+    @Value("${application.persistence.cache.max-size:10000}")
+    long maxSize,
+    @Value("${application.persistence.cache.ttl:5m}")
+    Duration ttl,
+    @Value("${application.persistence.cache.negative-ttl:30s}")
+    Duration negativeTtl,
+    MeterRegistry meterRegistry
+  ) {
+    // W-TinyLFU eviction, hit/miss/eviction counters via /actuator/metrics/cache.*
+    var cache = Caffeine
+      .newBuilder()
+      .maximumSize(maxSize)
+      .expireAfter(new Expiry<UUID, Optional<Customer>>() {
+        @Override
+        public long expireAfterCreate(
+          @Nonnull UUID key,
+          @Nonnull Optional<Customer> value,
+          long currentTime
+        ) {
+          return (value.isPresent() ? ttl : negativeTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(
+          @Nonnull UUID key,
+          @Nonnull Optional<Customer> value,
+          long currentTime,
+          long currentDuration
+        ) {
+          return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+          @Nonnull UUID key,
+          @Nonnull Optional<Customer> value,
+          long currentTime,
+          long currentDuration
+        ) {
+          return currentDuration;
+        }
+      })
+      .recordStats()
+      .<UUID, Optional<Customer>>build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "customers");
+    return sink -> new CachingCustomersSink(sink, cache);
+  }
+
+}
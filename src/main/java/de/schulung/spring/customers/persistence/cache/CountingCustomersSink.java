@@ -0,0 +1,171 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.DelegatingCustomersSink;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Maintains the total and per-state counts incrementally on writes.
+ * Counts are loaded from the delegate on first read and on reconcile().
+ * Single updates and deletes return the previous state of the customer,
+ * so it is not read before. Bulk updates and deletes do not tell the previous
+ * states, so the per-state counts are reloaded on their next read after them.
+ */
+public class CountingCustomersSink
+  extends DelegatingCustomersSink {
+
+  private final AtomicLong count = new AtomicLong();
+  private final Map<CustomerState, AtomicLong> countsByState = new EnumMap<>(CustomerState.class);
+  private volatile boolean countKnown = false;
+  private volatile boolean countsByStateKnown = false;
+
+  public CountingCustomersSink(CustomersSink delegate) {
+    super(delegate);
+    for (var state : CustomerState.values()) {
+      countsByState.put(state, new AtomicLong());
+    }
+  }
+
+  // concurrent writes while reconciling might be missed until the next reconcile
+  public void reconcile() {
+    reconcileCount();
+    reconcileCountsByState();
+  }
+
+  private void reconcileCount() {
+    count.set(getDelegate().count());
+    countKnown = true;
+  }
+
+  private void reconcileCountsByState() {
+    countsByState.forEach((state, counter) -> counter.set(getDelegate().countByState(state)));
+    countsByStateKnown = true;
+  }
+
+  @Override
+  public long count() {
+    if (!countKnown) {
+      reconcileCount();
+    }
+    return count.get();
+  }
+
+  @Override
+  public long countByState(CustomerState state) {
+    if (null == state) {
+      return super.countByState(null);
+    }
+    if (!countsByStateKnown) {
+      reconcileCountsByState();
+    }
+    return countsByState.get(state).get();
+  }
+
+  @Override
+  public void create(Customer customer) {
+    super.create(customer);
+    count.incrementAndGet();
+    if (null != customer.getState()) {
+      countsByState.get(customer.getState()).incrementAndGet();
+    }
+  }
+
+  @Override
+  public void createAll(Collection<Customer> customers) {
+    super.createAll(customers);
+    count.addAndGet(customers.size());
+    customers
+      .stream()
+      .map(Customer::getState)
+      .filter(state -> null != state)
+      .forEach(state -> countsByState.get(state).incrementAndGet());
+  }
+
+  // moves one count from the previous state to the new one
+  private void moveCount(CustomerState previousState, CustomerState state) {
+    if (previousState == state) {
+      return;
+    }
+    if (null != previousState) {
+      countsByState.get(previousState).decrementAndGet();
+    }
+    if (null != state) {
+      countsByState.get(state).incrementAndGet();
+    }
+  }
+
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    var previous = super.update(customer, expectedVersion);
+    previous.ifPresent(p -> moveCount(p.getState(), customer.getState()));
+    return previous;
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    var update = super.updateState(uuid, state, expectedVersion);
+    update.ifPresent(u -> moveCount(u.previousState(), state));
+    return update;
+  }
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    var updated = super.updateAllStates(uuids, state);
+    if (updated > 0) {
+      countsByStateKnown = false;
+    }
+    return updated;
+  }
+
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    var updated = super.updateAllStates(filter, state);
+    if (updated > 0) {
+      countsByStateKnown = false;
+    }
+    return updated;
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    var deleted = super.delete(uuid);
+    deleted.ifPresent(customer -> {
+      count.decrementAndGet();
+      if (null != customer.getState()) {
+        countsByState.get(customer.getState()).decrementAndGet();
+      }
+    });
+    return deleted;
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    var deleted = super.deleteAll(uuids);
+    if (deleted > 0) {
+      count.addAndGet(-deleted);
+      countsByStateKnown = false;
+    }
+    return deleted;
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    var deleted = super.deleteAllByState(state);
+    count.addAndGet(-deleted);
+    if (null != state) {
+      countsByState.get(state).addAndGet(-deleted);
+    }
+    return deleted;
+  }
+
+}
@@ -0,0 +1,74 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Configuration
+@ConditionalOnProperty(
+  name = "application.persistence.counts.enabled",
+  havingValue = "true"
+)
+@EnableScheduling
+public class CountingCustomersSinkConfiguration {
+
+  static class CountingCustomersSinkDecorator
+    implements CustomersSinkDecorator, MeterBinder {
+
+    private final List<CountingCustomersSink> sinks = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CustomersSink decorate(CustomersSink sink) {
+      var result = new CountingCustomersSink(sink);
+      sinks.add(result);
+      return result;
+    }
+
+    @Scheduled(
+      initialDelayString = "${application.persistence.counts.reconcile-interval:1m}",
+      fixedDelayString = "${application.persistence.counts.reconcile-interval:1m}"
+    )
+    void reconcile() {
+      sinks.forEach(CountingCustomersSink::reconcile);
+    }
+
+    // GET /actuator/metrics/customers.count?tag=state:active
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+      for (var state : CustomerState.values()) {
+        Gauge
+          .builder(
+            "customers.count",
+            sinks,
+            s -> s.stream().mapToLong(sink -> sink.countByState(state)).sum()
+          )
+          .description("The count of customers")
+          .tag("state", state.name().toLowerCase(Locale.ROOT))
+          .register(registry);
+      }
+    }
+
+  }
+
+  // outside the caching decorator, so that counts are answered before any other decorator
+  @Bean
+  @Order(CachingCustomersSinkConfiguration.ORDER + 100)
+  CountingCustomersSinkDecorator countingCustomersSinkDecorator() {
+    return new CountingCustomersSinkDecorator();
+  }
+
+}
@@ -0,0 +1,38 @@
+package de.schulung.spring.customers.persistence.database;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.util.EnumSet;
+import java.util.UUID;
+
+class AssignableUuidGenerator
+  implements BeforeExecutionGenerator {
+
+  @Override
+  public Object generate(
+    SharedSessionContractImplementor session,
+    Object owner,
+    Object currentValue,
+    EventType eventType
+  ) {
+    // Hibernate does not pass the current value for identifiers
+    var uuid = session
+      .getEntityPersister(null, owner)
+      .getIdentifier(owner, session);
+    return null != uuid ? uuid : UUID.randomUUID();
+  }
+
+  @Override
+  public EnumSet<EventType> getEventTypes() {
+    return EventTypeSets.INSERT_ONLY;
+  }
+
+  @Override
+  public boolean allowAssignedIdentifiers() {
+    return true;
+  }
+
+}
@@ -0,0 +1,128 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.CustomersSinkCapability;
+import de.schulung.spring.customers.domain.ReactiveCustomersSink;
+import lombok.RequiredArgsConstructor;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/*
+ * Blocking view on the reactive sink for the blocking CustomersService
+ * (e.g. the CustomersInitializer). Must not be used on event loop threads.
+ * Streams cancel their subscription when they are closed.
+ */
+@RequiredArgsConstructor
+public class BlockingCustomersSink
+  implements CustomersSink {
+
+  private final ReactiveCustomersSink delegate;
+
+  @Override
+  public Set<CustomersSinkCapability> getCapabilities() {
+    return EnumSet.of(
+      CustomersSinkCapability.ID,
+      CustomersSinkCapability.STATE,
+      CustomersSinkCapability.PAGE,
+      CustomersSinkCapability.COUNT
+    );
+  }
+
+  @Override
+  public Stream<Customer> findAll() {
+    return delegate
+      .findAll()
+      .toStream();
+  }
+
+  @Override
+  public Stream<Customer> findAllByState(CustomerState state) {
+    return delegate
+      .findAllByState(state)
+      .toStream();
+  }
+
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    return delegate
+      .findPage(state, after, limit)
+      .collectList()
+      .block();
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    return delegate
+      .findById(uuid)
+      .blockOptional();
+  }
+
+  @Override
+  public long count() {
+    return delegate
+      .count()
+      .blockOptional()
+      .orElse(0L);
+  }
+
+  @Override
+  public long countByState(CustomerState state) {
+    return delegate
+      .countByState(state)
+      .blockOptional()
+      .orElse(0L);
+  }
+
+  @Override
+  public long checksum(CustomerState state) {
+    return delegate
+      .checksum(state)
+      .blockOptional()
+      .orElse(0L);
+  }
+
+  @Override
+  public void create(Customer customer) {
+    delegate
+      .create(customer)
+      .block();
+  }
+
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    return delegate
+      .update(customer, expectedVersion)
+      .blockOptional();
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    return delegate
+      .updateState(uuid, state, expectedVersion)
+      .blockOptional();
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    return delegate
+      .delete(uuid)
+      .blockOptional();
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    return delegate
+      .deleteAllByState(state)
+      .blockOptional()
+      .orElse(0L);
+  }
+
+}
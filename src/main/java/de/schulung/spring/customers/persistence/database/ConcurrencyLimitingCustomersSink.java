@@ -0,0 +1,196 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.DelegatingCustomersSink;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+ * Limits the concurrent calls to the delegate to the size of the
+ * connection pool. With virtual threads, there is no request thread pool
+ * that limits them, and waiting for a permit is cheaper than waiting
+ * for a connection (no pool lock, no connection timeout per thread).
+ * Streams keep their permit until they are closed.
+ */
+public class ConcurrencyLimitingCustomersSink
+  extends DelegatingCustomersSink {
+
+  private final Semaphore permits;
+  private final long timeoutNanos;
+
+  public ConcurrencyLimitingCustomersSink(
+    CustomersSink delegate,
+    int permits,
+    Duration timeout
+  ) {
+    super(delegate);
+    this.permits = new Semaphore(permits, true);
+    this.timeoutNanos = timeout.toNanos();
+  }
+
+  public int getAvailablePermits() {
+    return permits.availablePermits();
+  }
+
+  private void acquire() {
+    try {
+      if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+        throw new TransientDataAccessResourceException("Too many concurrent database accesses");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TransientDataAccessResourceException("Interrupted while waiting for database access", e);
+    }
+  }
+
+  private <T> T limit(Supplier<T> call) {
+    acquire();
+    try {
+      return call.get();
+    } finally {
+      permits.release();
+    }
+  }
+
+  private Stream<Customer> limitStream(Supplier<Stream<Customer>> call) {
+    acquire();
+    try {
+      return call
+        .get()
+        .onClose(permits::release);
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public Stream<Customer> findAll() {
+    return limitStream(super::findAll);
+  }
+
+  @Override
+  public Stream<Customer> findAllByState(CustomerState state) {
+    return limitStream(() -> super.findAllByState(state));
+  }
+
+  @Override
+  public Stream<Customer> findAllByNamePrefix(String prefix) {
+    return limitStream(() -> super.findAllByNamePrefix(prefix));
+  }
+
+  @Override
+  public Stream<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    return limitStream(() -> super.findAllByBirthdateBetween(from, to));
+  }
+
+  @Override
+  public List<Customer> searchByName(String term, CustomerState state, int limit) {
+    return limit(() -> super.searchByName(term, state, limit));
+  }
+
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    return limit(() -> super.findPage(state, after, limit));
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    return limit(() -> super.findById(uuid));
+  }
+
+  @Override
+  public long count() {
+    return limit(super::count);
+  }
+
+  @Override
+  public long countByState(CustomerState state) {
+    return limit(() -> super.countByState(state));
+  }
+
+  @Override
+  public SortedMap<LocalDate, Map<CustomerState, Long>> countByBirthdateAndState() {
+    return limit(super::countByBirthdateAndState);
+  }
+
+  @Override
+  public CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    return limit(() -> super.aggregate(groupBy));
+  }
+
+  @Override
+  public long checksum(CustomerState state) {
+    return limit(() -> super.checksum(state));
+  }
+
+  @Override
+  public void create(Customer customer) {
+    limit(() -> {
+      super.create(customer);
+      return null;
+    });
+  }
+
+  @Override
+  public void createAll(Collection<Customer> customers) {
+    limit(() -> {
+      super.createAll(customers);
+      return null;
+    });
+  }
+
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    return limit(() -> super.update(customer, expectedVersion));
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    return limit(() -> super.updateState(uuid, state, expectedVersion));
+  }
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    return limit(() -> super.updateAllStates(uuids, state));
+  }
+
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    return limit(() -> super.updateAllStates(filter, state));
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    return limit(() -> super.delete(uuid));
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    return limit(() -> super.deleteAll(uuids));
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    return limit(() -> super.deleteAllByState(state));
+  }
+
+}
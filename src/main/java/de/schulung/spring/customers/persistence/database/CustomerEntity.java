@@ -4,6 +4,7 @@ import de.schulung.spring.customers.domain.CustomerState;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDate;
 import java.util.UUID;
@@ -12,16 +13,20 @@ import java.util.UUID;
 @Setter
 @Entity(name = "Customer")
 @Table(name = "CUSTOMERS")
+// updates only the changed columns
+@DynamicUpdate
 public class CustomerEntity {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.UUID)
+  @AssignableUuid
   private UUID uuid;
   private String name;
   @Column(name = "BIRTH_DATE")
   private LocalDate birthdate;
   // @Enumerated(EnumType.STRING)
   private CustomerState state;
+  @Version
+  private Long version;
 
 
 }
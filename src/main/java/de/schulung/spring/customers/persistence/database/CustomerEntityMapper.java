@@ -2,6 +2,7 @@ package de.schulung.spring.customers.persistence.database;
 
 import de.schulung.spring.customers.domain.Customer;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring")
@@ -13,4 +14,9 @@ public interface CustomerEntityMapper {
 
   void copy(CustomerEntity source, @MappingTarget Customer target);
 
+  // for updates, the identity and the version are managed by Hibernate
+  @Mapping(target = "uuid", ignore = true)
+  @Mapping(target = "version", ignore = true)
+  void copy(Customer source, @MappingTarget CustomerEntity target);
+
 }
@@ -3,10 +3,16 @@ package de.schulung.spring.customers.persistence.database;
 
 import de.schulung.spring.customers.domain.CustomerState;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface CustomerEntityRepository
@@ -14,6 +20,44 @@ public interface CustomerEntityRepository
 
   List<CustomerEntity> findAllByState(CustomerState state);
 
+  long countByState(CustomerState state);
+
+  interface CustomerVersion {
+    UUID getUuid();
+
+    Long getVersion();
+  }
+
+  // for checksums, without loading the entities
+  @Query("SELECT c.uuid AS uuid, c.version AS version FROM Customer c")
+  Stream<CustomerVersion> streamAllVersions();
+
+  @Query("SELECT c.uuid AS uuid, c.version AS version FROM Customer c WHERE c.state = :state")
+  Stream<CustomerVersion> streamAllVersionsByState(CustomerState state);
+
+  @Query("SELECT c.version FROM Customer c WHERE c.uuid = :uuid")
+  Optional<Long> findVersionByUuid(UUID uuid);
+
+  // single statements, without loading the entities before
+  // (unchanged states are not updated, so that the version stays the same)
+  @Transactional
+  @Modifying
+  @Query("""
+    UPDATE Customer c SET c.state = :state, c.version = c.version + 1
+    WHERE c.uuid IN :uuids AND (c.state IS NULL OR c.state <> :state)
+    """)
+  int updateStateByUuidIn(Collection<UUID> uuids, CustomerState state);
+
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM Customer c WHERE c.uuid IN :uuids")
+  int deleteAllByUuidIn(Collection<UUID> uuids);
+
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM Customer c WHERE c.state = :state")
+  int deleteAllByState(CustomerState state);
+
   // @Query("SELECT c FROM Customer c WHERE c.state = :state")
   // List<CustomerEntity> gelbeKatze(@Param("state") CustomerState state);
 
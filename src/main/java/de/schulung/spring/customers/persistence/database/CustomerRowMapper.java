@@ -0,0 +1,58 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/*
+ * Maps the rows of read-only queries directly to customers,
+ * without entities, persistence context and attribute converters.
+ * The columns must be selected in the order of COLUMNS.
+ */
+class CustomerRowMapper
+  implements RowMapper<Customer> {
+
+  static final String COLUMNS = "UUID, NAME, BIRTH_DATE, STATE, VERSION";
+
+  static final CustomerRowMapper INSTANCE = new CustomerRowMapper();
+
+  // indexed by the first character of the column value (see CustomerStateConverter)
+  private static final CustomerState[] STATES = new CustomerState[128];
+
+  static {
+    var converter = new CustomerStateConverter();
+    for (var state : CustomerState.values()) {
+      STATES[converter.convertToDatabaseColumn(state).charAt(0)] = state;
+    }
+  }
+
+  static CustomerState decodeState(String dbData) {
+    if (null == dbData) {
+      return null;
+    }
+    var c = dbData.length() == 1 ? dbData.charAt(0) : 0;
+    var state = c < STATES.length ? STATES[c] : null;
+    if (null == state) {
+      throw new IllegalStateException("Unexpected value: " + dbData);
+    }
+    return state;
+  }
+
+  @Override
+  public Customer mapRow(ResultSet rs, int rowNum) throws SQLException {
+    return Customer
+      .builder()
+      .uuid(rs.getObject(1, UUID.class))
+      .name(rs.getString(2))
+      .birthdate(rs.getObject(3, LocalDate.class))
+      .state(decodeState(rs.getString(4)))
+      .version(rs.getObject(5, Long.class))
+      .build();
+  }
+
+}
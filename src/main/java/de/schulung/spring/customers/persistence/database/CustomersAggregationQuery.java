@@ -0,0 +1,38 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+
+/*
+ * The GROUP BY of CustomersSink#aggregate, shared by the JPA and the R2DBC sink.
+ * The columns are the group key, the count and the birthdate range.
+ */
+final class CustomersAggregationQuery {
+
+  private CustomersAggregationQuery() {
+  }
+
+  static String sql(CustomersGroupBy groupBy) {
+    var key = switch (groupBy) {
+      case STATE -> "STATE";
+      case BIRTH_YEAR -> "EXTRACT(YEAR FROM BIRTH_DATE)";
+      // NAME_LOWER is generated (see V3__index_customer_names.sql)
+      case NAME_INITIAL -> "SUBSTRING(NAME_LOWER, 1, 1)";
+    };
+    return "SELECT " + key + " AS GROUP_KEY, COUNT(*) AS CUSTOMERS,"
+      + " MIN(BIRTH_DATE) AS MIN_BIRTH_DATE, MAX(BIRTH_DATE) AS MAX_BIRTH_DATE"
+      + " FROM CUSTOMERS GROUP BY " + key;
+  }
+
+  // the key types of CustomersGroupBy
+  static Object decodeKey(CustomersGroupBy groupBy, Object value) {
+    if (null == value) {
+      return null;
+    }
+    return switch (groupBy) {
+      case STATE -> CustomerRowMapper.decodeState(value.toString());
+      case BIRTH_YEAR -> ((Number) value).intValue();
+      case NAME_INITIAL -> value.toString().isEmpty() ? null : value.toString();
+    };
+  }
+
+}
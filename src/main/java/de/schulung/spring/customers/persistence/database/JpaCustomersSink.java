@@ -1,11 +1,36 @@
 package de.schulung.spring.customers.persistence.database;
 
 import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerNameSearch;
 import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomerVersions;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
 import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.CustomersSinkCapability;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Stream;
 
@@ -13,30 +38,198 @@ import java.util.stream.Stream;
 public class JpaCustomersSink
   implements CustomersSink {
 
+  private static final TransactionDefinition READ_ONLY_TRANSACTION;
+
+  static {
+    var definition = new DefaultTransactionDefinition();
+    definition.setReadOnly(true);
+    READ_ONLY_TRANSACTION = definition;
+  }
+
+  private static final int MAX_IN_PARAMETERS = 1000;
+  // read-only queries, see CustomerRowMapper
+  private static final String SELECT = "SELECT " + CustomerRowMapper.COLUMNS + " FROM CUSTOMERS";
+  // H2 would prefer the index on STATE, but then it had to sort all customers of the state
+  private static final String SELECT_BY_NAME_INDEX = SELECT + " USE INDEX (IDX_CUSTOMERS_NAME_LOWER)";
+  private static final CustomerStateConverter STATE_CONVERTER = new CustomerStateConverter();
+
   private final CustomerEntityRepository repo;
   private final CustomerEntityMapper mapper;
+  private final EntityManager entityManager;
+  private final PlatformTransactionManager transactionManager;
+  private final JdbcClient jdbc;
+
+  @Override
+  public Set<CustomersSinkCapability> getCapabilities() {
+    return EnumSet.allOf(CustomersSinkCapability.class);
+  }
 
   @Override
   public Stream<Customer> findAll() {
-    return repo
-      .findAll()
-      .stream()
-      .map(mapper::map);
+    return stream(jdbc.sql(SELECT));
   }
 
   @Override
   public Stream<Customer> findAllByState(CustomerState state) {
-    return repo
-      .findAllByState(state)
-      .stream()
-      .map(mapper::map);
+    return stream(
+      jdbc
+        .sql(SELECT + " WHERE STATE = ?")
+        .param(STATE_CONVERTER.convertToDatabaseColumn(state))
+    );
+  }
+
+  @Override
+  public Stream<Customer> findAllByNamePrefix(String prefix) {
+    return stream(
+      jdbc
+        .sql(SELECT + " WHERE NAME_LOWER LIKE ? ESCAPE '\\'")
+        .param(escapeLike(CustomerNameSearch.normalize(prefix)) + "%")
+    );
+  }
+
+  @Override
+  public Stream<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    if (null == from) {
+      return null == to
+        ? findAll()
+        : stream(jdbc.sql(SELECT + " WHERE BIRTH_DATE <= ?").param(to));
+    }
+    return null == to
+      ? stream(jdbc.sql(SELECT + " WHERE BIRTH_DATE >= ?").param(from))
+      : stream(jdbc.sql(SELECT + " WHERE BIRTH_DATE BETWEEN ? AND ?").params(from, to));
+  }
+
+  private static String escapeLike(String value) {
+    return value
+      .replace("\\", "\\\\")
+      .replace("%", "\\%")
+      .replace("_", "\\_");
+  }
+
+  /*
+   * The returned stream is backed by a database cursor.
+   * The read-only transaction stays open until the stream is closed,
+   * so it must be consumed within try-with-resources on the calling
+   * thread. Otherwise, the connection is not returned to the pool,
+   * and other calls of this sink on the thread join the transaction.
+   * The rows are mapped directly to customers, so that neither
+   * the persistence context nor the dirty checking is involved.
+   */
+  private Stream<Customer> stream(JdbcClient.StatementSpec query) {
+    var transaction = transactionManager.getTransaction(READ_ONLY_TRANSACTION);
+    try {
+      return query
+        .query(CustomerRowMapper.INSTANCE)
+        .stream()
+        .onClose(() -> transactionManager.commit(transaction));
+    } catch (RuntimeException e) {
+      transactionManager.rollback(transaction);
+      throw e;
+    }
+  }
+
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    var where = new ArrayList<String>(2);
+    var params = new ArrayList<>(3);
+    if (null != state) {
+      where.add("STATE = ?");
+      params.add(STATE_CONVERTER.convertToDatabaseColumn(state));
+    }
+    if (null != after) {
+      where.add("UUID > ?");
+      params.add(after);
+    }
+    params.add(limit);
+    var sql = SELECT
+      + (where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where))
+      // with the state, so that the index (STATE, UUID) delivers the rows sorted
+      + (null != state ? " ORDER BY STATE, UUID" : " ORDER BY UUID")
+      + " FETCH FIRST ? ROWS ONLY";
+    var transaction = new TransactionTemplate(transactionManager, READ_ONLY_TRANSACTION);
+    return transaction.execute(status -> jdbc
+      .sql(sql)
+      .params(params)
+      .query(CustomerRowMapper.INSTANCE)
+      .list()
+    );
+  }
+
+  /*
+   * Up to three limited queries, the better matches first. The prefix matches
+   * are a range scan on the index of NAME_LOWER, delivered in the order of the
+   * index. H2 has no trigram (or other substring) index, so the queries for
+   * word prefixes and substrings scan the table, but only until enough matches
+   * are found. The matches are ranked again, because a word might also start
+   * after other characters than a space.
+   */
+  @Override
+  public List<Customer> searchByName(String term, CustomerState state, int limit) {
+    var normalizedTerm = CustomerNameSearch.normalize(term);
+    var prefix = escapeLike(normalizedTerm) + "%";
+    var wordPrefix = "% " + prefix;
+    var substring = "%" + prefix;
+    var transaction = new TransactionTemplate(transactionManager, READ_ONLY_TRANSACTION);
+    var result = transaction.execute(status -> {
+      var matches = new ArrayList<>(
+        searchByName(List.of(prefix), List.of(), state, limit)
+      );
+      if (matches.size() < limit) {
+        matches.addAll(
+          searchByName(List.of(wordPrefix), List.of(prefix), state, limit - matches.size())
+        );
+      }
+      if (matches.size() < limit) {
+        matches.addAll(
+          searchByName(List.of(substring), List.of(prefix, wordPrefix), state, limit - matches.size())
+        );
+      }
+      return matches;
+    });
+    result.sort(CustomerNameSearch.order(normalizedTerm));
+    return result;
+  }
+
+  /*
+   * Ordered by name, so that the limit selects the same customers each time.
+   * The name index delivers them in that order, so there is no sort, and
+   * the scan stops when the limit is reached, even for infix patterns.
+   */
+  private List<Customer> searchByName(
+    List<String> patterns,
+    List<String> excludedPatterns,
+    CustomerState state,
+    int limit
+  ) {
+    var where = new ArrayList<String>(4);
+    var params = new ArrayList<>(5);
+    for (var pattern : patterns) {
+      where.add("NAME_LOWER LIKE ? ESCAPE '\\'");
+      params.add(pattern);
+    }
+    for (var pattern : excludedPatterns) {
+      where.add("NAME_LOWER NOT LIKE ? ESCAPE '\\'");
+      params.add(pattern);
+    }
+    if (null != state) {
+      where.add("STATE = ?");
+      params.add(STATE_CONVERTER.convertToDatabaseColumn(state));
+    }
+    params.add(limit);
+    return jdbc
+      .sql(SELECT_BY_NAME_INDEX + " WHERE " + String.join(" AND ", where) + " ORDER BY NAME_LOWER FETCH FIRST ? ROWS ONLY")
+      .params(params)
+      .query(CustomerRowMapper.INSTANCE)
+      .list();
   }
 
   @Override
   public Optional<Customer> findById(UUID uuid) {
-    return repo
-      .findById(uuid)
-      .map(mapper::map);
+    return jdbc
+      .sql(SELECT + " WHERE UUID = ?")
+      .param(uuid)
+      .query(CustomerRowMapper.INSTANCE)
+      .optional();
   }
 
   @Override
@@ -45,6 +238,65 @@ public class JpaCustomersSink
       .count();
   }
 
+  @Override
+  public long countByState(CustomerState state) {
+    return repo
+      .countByState(state);
+  }
+
+  // aggregated by the database, grouped in the order of the index (BIRTH_DATE, STATE)
+  @Override
+  public SortedMap<LocalDate, Map<CustomerState, Long>> countByBirthdateAndState() {
+    var counts = new TreeMap<LocalDate, Map<CustomerState, Long>>();
+    var transaction = new TransactionTemplate(transactionManager, READ_ONLY_TRANSACTION);
+    transaction.executeWithoutResult(status -> jdbc
+      .sql(
+        "SELECT BIRTH_DATE, STATE, COUNT(*) FROM CUSTOMERS"
+          + " WHERE BIRTH_DATE IS NOT NULL AND STATE IS NOT NULL"
+          + " GROUP BY BIRTH_DATE, STATE"
+      )
+      .query(rs -> {
+        counts
+          .computeIfAbsent(rs.getObject(1, LocalDate.class), birthdate -> new EnumMap<>(CustomerState.class))
+          .put(CustomerRowMapper.decodeState(rs.getString(2)), rs.getLong(3));
+      })
+    );
+    return counts;
+  }
+
+  // aggregated by the database, see CustomersAggregationQuery
+  @Override
+  public CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    var transaction = new TransactionTemplate(transactionManager, READ_ONLY_TRANSACTION);
+    var groups = transaction.execute(status -> jdbc
+      .sql(CustomersAggregationQuery.sql(groupBy))
+      .query((rs, rowNum) -> new CustomersAggregation.Group(
+        CustomersAggregationQuery.decodeKey(groupBy, rs.getObject(1)),
+        rs.getLong(2),
+        rs.getObject(3, LocalDate.class),
+        rs.getObject(4, LocalDate.class)
+      ))
+      .list()
+    );
+    return CustomersAggregation.of(groupBy, groups);
+  }
+
+  @Override
+  public long checksum(CustomerState state) {
+    var transaction = new TransactionTemplate(transactionManager, READ_ONLY_TRANSACTION);
+    return transaction.execute(status -> {
+      try (
+        var versions = null == state
+          ? repo.streamAllVersions()
+          : repo.streamAllVersionsByState(state)
+      ) {
+        return versions
+          .mapToLong(v -> CustomersChecksum.of(v.getUuid(), v.getVersion()))
+          .sum();
+      }
+    });
+  }
+
   @Override
   public void create(Customer customer) {
     var entity = mapper.map(customer);
@@ -54,13 +306,183 @@ public class JpaCustomersSink
     mapper.copy(entity, customer);
   }
 
+  /*
+   * Inserts are sent in JDBC batches (hibernate.jdbc.batch_size),
+   * and the uuids are generated by Hibernate without any round trip.
+   */
   @Override
-  public boolean delete(UUID uuid) {
-    if (!repo.existsById(uuid)) {
-      return false;
+  public void createAll(Collection<Customer> customers) {
+    var transaction = new TransactionTemplate(transactionManager);
+    transaction.executeWithoutResult(status -> {
+      var entities = new ArrayList<CustomerEntity>(customers.size());
+      for (var customer : customers) {
+        var entity = mapper.map(customer);
+        entityManager.persist(entity);
+        entities.add(entity);
+      }
+      entityManager.flush();
+      var iterator = entities.iterator();
+      for (var customer : customers) {
+        var entity = iterator.next();
+        entityManager.detach(entity);
+        mapper.copy(entity, customer);
+      }
+    });
+  }
+
+  /*
+   * The entity is loaded to find the changed attributes. Only those are
+   * updated (see @DynamicUpdate), and Hibernate checks the version with
+   * the same statement. A concurrent update fails on commit with an
+   * ObjectOptimisticLockingFailureException.
+   */
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    var transaction = new TransactionTemplate(transactionManager);
+    var previous = new Customer[1];
+    var entity = transaction.execute(status -> {
+      var managed = entityManager.find(CustomerEntity.class, customer.getUuid());
+      if (null != managed) {
+        CustomerVersions.check(customer.getUuid(), managed.getVersion(), expectedVersion);
+        previous[0] = mapper.map(managed);
+        mapper.copy(customer, managed);
+      }
+      return managed;
+    });
+    if (null == entity) {
+      return Optional.empty();
     }
-    repo
-      .deleteById(uuid);
-    return true;
+    customer.setVersion(entity.getVersion());
+    return Optional.of(previous[0]);
+  }
+
+  /*
+   * A single statement that returns the previous state and version (an H2
+   * data change delta table). Only if no row was updated (not found, another
+   * version or the same state), the version is read to find out the reason.
+   */
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    var code = STATE_CONVERTER.convertToDatabaseColumn(state);
+    var sql = new StringBuilder("SELECT STATE, VERSION FROM OLD TABLE (")
+      .append("UPDATE CUSTOMERS SET STATE = ?, VERSION = VERSION + 1 WHERE UUID = ?");
+    var params = new ArrayList<>(4);
+    params.add(code);
+    params.add(uuid);
+    if (null != expectedVersion) {
+      sql.append(" AND VERSION = ?");
+      params.add(expectedVersion);
+    }
+    sql.append(" AND (STATE IS NULL OR STATE <> ?))");
+    params.add(code);
+    var transaction = new TransactionTemplate(transactionManager);
+    return transaction.execute(status -> {
+      var updated = jdbc
+        .sql(sql.toString())
+        .params(params)
+        .query((rs, rowNum) -> new CustomerStateUpdate(
+          STATE_CONVERTER.convertToEntityAttribute(rs.getString(1)),
+          rs.getLong(2) + 1
+        ))
+        .optional();
+      if (updated.isPresent()) {
+        return updated;
+      }
+      var version = repo.findVersionByUuid(uuid);
+      version.ifPresent(v -> CustomerVersions.check(uuid, v, expectedVersion));
+      return version.map(v -> new CustomerStateUpdate(state, v));
+    });
+  }
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    var distinctUuids = List.copyOf(new HashSet<>(uuids));
+    var transaction = new TransactionTemplate(transactionManager);
+    return transaction.execute(status -> {
+      long count = 0;
+      for (int i = 0; i < distinctUuids.size(); i += MAX_IN_PARAMETERS) {
+        count += repo.updateStateByUuidIn(
+          distinctUuids.subList(i, Math.min(i + MAX_IN_PARAMETERS, distinctUuids.size())),
+          state
+        );
+      }
+      return count;
+    });
+  }
+
+  /*
+   * A single set-based statement, the rows are neither read nor loaded
+   * as entities. The state criterion uses the index (STATE, UUID),
+   * birthdate ranges use the index on BIRTH_DATE.
+   */
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    if (filter.hasState() && filter.state() == state) {
+      return 0;
+    }
+    var code = STATE_CONVERTER.convertToDatabaseColumn(state);
+    var where = new ArrayList<String>(4);
+    var params = new ArrayList<>(5);
+    params.add(code);
+    if (filter.hasState()) {
+      where.add("STATE = ?");
+      params.add(STATE_CONVERTER.convertToDatabaseColumn(filter.state()));
+    } else {
+      where.add("(STATE IS NULL OR STATE <> ?)");
+      params.add(code);
+    }
+    if (filter.hasNamePrefix()) {
+      where.add("NAME_LOWER LIKE ? ESCAPE '\\'");
+      params.add(escapeLike(CustomerNameSearch.normalize(filter.namePrefix())) + "%");
+    }
+    if (null != filter.birthdateFrom()) {
+      where.add("BIRTH_DATE >= ?");
+      params.add(filter.birthdateFrom());
+    }
+    if (null != filter.birthdateTo()) {
+      where.add("BIRTH_DATE <= ?");
+      params.add(filter.birthdateTo());
+    }
+    var sql = "UPDATE CUSTOMERS SET STATE = ?, VERSION = VERSION + 1 WHERE " + String.join(" AND ", where);
+    var transaction = new TransactionTemplate(transactionManager);
+    return transaction.execute(status -> (long) jdbc
+      .sql(sql)
+      .params(params)
+      .update()
+    );
+  }
+
+  // a single statement that returns the deleted row (an H2 data change delta table)
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    var transaction = new TransactionTemplate(transactionManager);
+    return transaction.execute(status -> jdbc
+      .sql("SELECT " + CustomerRowMapper.COLUMNS + " FROM OLD TABLE (DELETE FROM CUSTOMERS WHERE UUID = ?)")
+      .param(uuid)
+      .query(CustomerRowMapper.INSTANCE)
+      .optional()
+    );
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    var distinctUuids = List.copyOf(new HashSet<>(uuids));
+    var transaction = new TransactionTemplate(transactionManager);
+    return transaction.execute(status -> {
+      long count = 0;
+      // limit the count of parameters per statement
+      for (int i = 0; i < distinctUuids.size(); i += MAX_IN_PARAMETERS) {
+        count += repo.deleteAllByUuidIn(
+          distinctUuids.subList(i, Math.min(i + MAX_IN_PARAMETERS, distinctUuids.size()))
+        );
+      }
+      return count;
+    });
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    return repo
+      .deleteAllByState(state);
   }
 }
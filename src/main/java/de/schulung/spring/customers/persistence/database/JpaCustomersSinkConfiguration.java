@@ -1,21 +1,55 @@
 package de.schulung.spring.customers.persistence.database;
 
 import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
 
-// @ConditionalOnProperty... - Schalter zum Deaktivieren
 @Configuration
+@ConditionalOnProperty(
+  name = "application.persistence.sink",
+  havingValue = "jpa",
+  matchIfMissing = true
+)
 public class JpaCustomersSinkConfiguration {
 
   @Bean
   CustomersSink jpaCustomersSink(
     CustomerEntityRepository repo,
-    CustomerEntityMapper mapper
+    CustomerEntityMapper mapper,
+    EntityManager entityManager,
+    PlatformTransactionManager transactionManager,
+    JdbcClient jdbc,
+    ObjectProvider<CustomersSinkDecorator> decorators,
+    @Value("${application.persistence.database.guard.enabled:false}")
+    boolean guardEnabled,
+    @Value("${application.persistence.database.guard.permits:10}")
+    int guardPermits,
+    @Value("${application.persistence.database.guard.timeout:10s}")
+    Duration guardTimeout
   ) {
-    return new JpaCustomersSink(
+    CustomersSink sink = new JpaCustomersSink(
       repo,
-      mapper
+      mapper,
+      entityManager,
+      transactionManager,
+      jdbc
+    );
+    // innermost, so that cache hits do not need a permit
+    if (guardEnabled) {
+      sink = new ConcurrencyLimitingCustomersSink(sink, guardPermits, guardTimeout);
+    }
+    return CustomersSinkDecorator.decorate(
+      sink,
+      decorators.orderedStream()
     );
   }
 
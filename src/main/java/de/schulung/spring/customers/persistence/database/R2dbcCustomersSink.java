@@ -0,0 +1,310 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomerVersions;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.ReactiveCustomersSink;
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/*
+ * Uses the same table as the JPA entity (CustomerEntity),
+ * including the version column for optimistic locking.
+ */
+@RequiredArgsConstructor
+public class R2dbcCustomersSink
+  implements ReactiveCustomersSink {
+
+  private static final String COLUMNS = "uuid, name, BIRTH_DATE, state, version";
+  private static final String SELECT = "SELECT " + COLUMNS + " FROM CUSTOMERS";
+
+  private final DatabaseClient client;
+  private final CustomerStateConverter stateConverter = new CustomerStateConverter();
+
+  private Customer map(Readable row) {
+    return Customer
+      .builder()
+      .uuid(row.get("uuid", UUID.class))
+      .name(row.get("name", String.class))
+      .birthdate(row.get("BIRTH_DATE", LocalDate.class))
+      .state(stateConverter.convertToEntityAttribute(row.get("state", String.class)))
+      .version(row.get("version", Long.class))
+      .build();
+  }
+
+  @Override
+  public Flux<Customer> findAll() {
+    return client
+      .sql(SELECT)
+      .map(this::map)
+      .all();
+  }
+
+  @Override
+  public Flux<Customer> findAllByState(CustomerState state) {
+    return client
+      .sql(SELECT + " WHERE state = :state")
+      .bind("state", stateConverter.convertToDatabaseColumn(state))
+      .map(this::map)
+      .all();
+  }
+
+  // a range scan on the index (BIRTH_DATE, STATE), like the JPA sink
+  @Override
+  public Flux<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    if (null == from && null == to) {
+      return findAll();
+    }
+    var sql = new StringBuilder(SELECT).append(" WHERE 1 = 1");
+    if (null != from) {
+      sql.append(" AND BIRTH_DATE >= :from");
+    }
+    if (null != to) {
+      sql.append(" AND BIRTH_DATE <= :to");
+    }
+    var spec = client.sql(sql.toString());
+    if (null != from) {
+      spec = spec.bind("from", from);
+    }
+    if (null != to) {
+      spec = spec.bind("to", to);
+    }
+    return spec
+      .map(this::map)
+      .all();
+  }
+
+  @Override
+  public Flux<Customer> findPage(CustomerState state, UUID after, int limit) {
+    var sql = new StringBuilder(SELECT).append(" WHERE 1 = 1");
+    if (null != state) {
+      sql.append(" AND state = :state");
+    }
+    if (null != after) {
+      sql.append(" AND uuid > :after");
+    }
+    // with the state, so that the index (state, uuid) delivers the rows sorted
+    sql.append(null != state ? " ORDER BY state, uuid" : " ORDER BY uuid");
+    sql.append(" LIMIT :limit");
+    var spec = client
+      .sql(sql.toString())
+      .bind("limit", limit);
+    if (null != state) {
+      spec = spec.bind("state", stateConverter.convertToDatabaseColumn(state));
+    }
+    if (null != after) {
+      spec = spec.bind("after", after);
+    }
+    return spec
+      .map(this::map)
+      .all();
+  }
+
+  @Override
+  public Mono<Customer> findById(UUID uuid) {
+    return client
+      .sql(SELECT + " WHERE uuid = :uuid")
+      .bind("uuid", uuid)
+      .map(this::map)
+      .one();
+  }
+
+  @Override
+  public Mono<Long> count() {
+    return client
+      .sql("SELECT COUNT(*) FROM CUSTOMERS")
+      .map(row -> row.get(0, Long.class))
+      .one();
+  }
+
+  @Override
+  public Mono<Long> countByState(CustomerState state) {
+    return client
+      .sql("SELECT COUNT(*) FROM CUSTOMERS WHERE state = :state")
+      .bind("state", stateConverter.convertToDatabaseColumn(state))
+      .map(row -> row.get(0, Long.class))
+      .one();
+  }
+
+  private record BirthdateCount(LocalDate birthdate, CustomerState state, long count) {
+  }
+
+  // aggregated by the database, like the JPA sink
+  @Override
+  public Mono<SortedMap<LocalDate, Map<CustomerState, Long>>> countByBirthdateAndState() {
+    return client
+      .sql(
+        "SELECT BIRTH_DATE, state, COUNT(*) AS customers FROM CUSTOMERS"
+          + " WHERE BIRTH_DATE IS NOT NULL AND state IS NOT NULL"
+          + " GROUP BY BIRTH_DATE, state"
+      )
+      .map(row -> new BirthdateCount(
+        row.get("BIRTH_DATE", LocalDate.class),
+        stateConverter.convertToEntityAttribute(row.get("state", String.class)),
+        row.get("customers", Long.class)
+      ))
+      .all()
+      .collect(
+        TreeMap::new,
+        (counts, row) -> counts
+          .computeIfAbsent(row.birthdate(), birthdate -> new EnumMap<>(CustomerState.class))
+          .put(row.state(), row.count())
+      );
+  }
+
+  // aggregated by the database, like the JPA sink
+  @Override
+  public Mono<CustomersAggregation> aggregate(CustomersGroupBy groupBy) {
+    return client
+      .sql(CustomersAggregationQuery.sql(groupBy))
+      .map(row -> new CustomersAggregation.Group(
+        CustomersAggregationQuery.decodeKey(groupBy, row.get("GROUP_KEY")),
+        row.get("CUSTOMERS", Long.class),
+        row.get("MIN_BIRTH_DATE", LocalDate.class),
+        row.get("MAX_BIRTH_DATE", LocalDate.class)
+      ))
+      .all()
+      .collectList()
+      .map(groups -> CustomersAggregation.of(groupBy, groups));
+  }
+
+  // only reads uuid and version, like the JPA sink
+  @Override
+  public Mono<Long> checksum(CustomerState state) {
+    var spec = null == state
+      ? client.sql("SELECT uuid, version FROM CUSTOMERS")
+      : client
+      .sql("SELECT uuid, version FROM CUSTOMERS WHERE state = :state")
+      .bind("state", stateConverter.convertToDatabaseColumn(state));
+    return spec
+      .map(row -> CustomersChecksum.of(row.get("uuid", UUID.class), row.get("version", Long.class)))
+      .all()
+      .reduce(0L, Long::sum);
+  }
+
+  @Override
+  public Mono<Void> create(Customer customer) {
+    var uuid = null != customer.getUuid() ? customer.getUuid() : UUID.randomUUID();
+    var spec = client
+      .sql("INSERT INTO CUSTOMERS (uuid, name, BIRTH_DATE, state, version) VALUES (:uuid, :name, :birthdate, :state, 0)")
+      .bind("uuid", uuid)
+      .bind("name", customer.getName())
+      .bind("birthdate", customer.getBirthdate());
+    spec = null == customer.getState()
+      ? spec.bindNull("state", String.class)
+      : spec.bind("state", stateConverter.convertToDatabaseColumn(customer.getState()));
+    return spec
+      .then()
+      .doOnSuccess(result -> {
+        customer.setUuid(uuid);
+        customer.setVersion(0L);
+      });
+  }
+
+  private static DatabaseClient.GenericExecuteSpec bindNullable(
+    DatabaseClient.GenericExecuteSpec spec,
+    String name,
+    Object value,
+    Class<?> type
+  ) {
+    return null == value ? spec.bindNull(name, type) : spec.bind(name, value);
+  }
+
+  // only if no row was updated, to find out the reason (see JpaCustomersSink#updateState)
+  private Mono<Customer> findUnchanged(UUID uuid, Long expectedVersion) {
+    return findById(uuid)
+      .doOnNext(customer -> CustomerVersions.check(uuid, customer.getVersion(), expectedVersion));
+  }
+
+  /*
+   * Like the state update, a single statement that returns the previous row.
+   * Unchanged customers are not updated, so that they keep their version.
+   */
+  @Override
+  public Mono<Customer> update(Customer customer, Long expectedVersion) {
+    var sql = new StringBuilder("SELECT " + COLUMNS + " FROM OLD TABLE (")
+      .append("UPDATE CUSTOMERS SET name = :name, BIRTH_DATE = :birthdate, state = :state, version = version + 1")
+      .append(" WHERE uuid = :uuid");
+    if (null != expectedVersion) {
+      sql.append(" AND version = :version");
+    }
+    sql.append(" AND (name IS DISTINCT FROM :name OR BIRTH_DATE IS DISTINCT FROM :birthdate OR state IS DISTINCT FROM :state))");
+    var spec = client
+      .sql(sql.toString())
+      .bind("uuid", customer.getUuid())
+      .bind("name", customer.getName());
+    spec = bindNullable(spec, "birthdate", customer.getBirthdate(), LocalDate.class);
+    spec = bindNullable(spec, "state", stateConverter.convertToDatabaseColumn(customer.getState()), String.class);
+    if (null != expectedVersion) {
+      spec = spec.bind("version", expectedVersion);
+    }
+    return spec
+      .map(this::map)
+      .one()
+      .doOnNext(previous -> customer.setVersion(previous.getVersion() + 1))
+      .switchIfEmpty(Mono.defer(() -> findUnchanged(customer.getUuid(), expectedVersion)
+        .doOnNext(unchanged -> customer.setVersion(unchanged.getVersion()))
+      ));
+  }
+
+  // see JpaCustomersSink#updateState
+  @Override
+  public Mono<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    var sql = new StringBuilder("SELECT state, version FROM OLD TABLE (")
+      .append("UPDATE CUSTOMERS SET state = :state, version = version + 1 WHERE uuid = :uuid");
+    if (null != expectedVersion) {
+      sql.append(" AND version = :version");
+    }
+    sql.append(" AND (state IS NULL OR state <> :state))");
+    var spec = client
+      .sql(sql.toString())
+      .bind("uuid", uuid)
+      .bind("state", stateConverter.convertToDatabaseColumn(state));
+    if (null != expectedVersion) {
+      spec = spec.bind("version", expectedVersion);
+    }
+    return spec
+      .map(row -> new CustomerStateUpdate(
+        stateConverter.convertToEntityAttribute(row.get("state", String.class)),
+        row.get("version", Long.class) + 1
+      ))
+      .one()
+      .switchIfEmpty(Mono.defer(() -> findUnchanged(uuid, expectedVersion)
+        .map(unchanged -> new CustomerStateUpdate(unchanged.getState(), unchanged.getVersion()))
+      ));
+  }
+
+  // returns the deleted row, like JpaCustomersSink#delete
+  @Override
+  public Mono<Customer> delete(UUID uuid) {
+    return client
+      .sql("SELECT " + COLUMNS + " FROM OLD TABLE (DELETE FROM CUSTOMERS WHERE uuid = :uuid)")
+      .bind("uuid", uuid)
+      .map(this::map)
+      .one();
+  }
+
+  @Override
+  public Mono<Long> deleteAllByState(CustomerState state) {
+    return client
+      .sql("DELETE FROM CUSTOMERS WHERE state = :state")
+      .bind("state", stateConverter.convertToDatabaseColumn(state))
+      .fetch()
+      .rowsUpdated();
+  }
+
+}
@@ -0,0 +1,40 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.ReactiveCustomersSink;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+/*
+ * Requires the R2DBC auto-configuration, which is excluded by default,
+ * because Spring Boot does not configure a DataSource if there is
+ * a ConnectionFactory (see application-reactive.yml).
+ */
+@Configuration
+@ConditionalOnProperty(
+  name = "application.persistence.sink",
+  havingValue = "r2dbc"
+)
+public class R2dbcCustomersSinkConfiguration {
+
+  @Bean
+  ReactiveCustomersSink r2dbcCustomersSink(DatabaseClient client) {
+    return new R2dbcCustomersSink(client);
+  }
+
+  @Bean
+  CustomersSink blockingR2dbcCustomersSink(
+    ReactiveCustomersSink r2dbcCustomersSink,
+    ObjectProvider<CustomersSinkDecorator> decorators
+  ) {
+    return CustomersSinkDecorator.decorate(
+      new BlockingCustomersSink(r2dbcCustomersSink),
+      decorators.orderedStream()
+    );
+  }
+
+}
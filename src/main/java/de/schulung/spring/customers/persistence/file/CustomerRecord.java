@@ -0,0 +1,153 @@
+package de.schulung.spring.customers.persistence.file;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/*
+ * Binary format of the records within a segment, read and written
+ * at absolute offsets, so that reads do not copy the mapped memory.
+ *
+ *   int    length of the body (0 marks the end of the segment)
+ *   int    CRC32 of the body
+ *   byte   type ('C' for a created customer, 'D' for a deletion)
+ *   long   uuid (most significant bits)
+ *   long   uuid (least significant bits)
+ *   -- created customers only:
+ *   long   version
+ *   byte   state ordinal (-1 for null)
+ *   int    birthdate as epoch day (Integer.MIN_VALUE for null)
+ *   int    length of the name (-1 for null)
+ *   byte[] name (UTF-8)
+ *
+ * The length is written last, so a record is visible only if complete.
+ * The CRC detects torn records after a crash.
+ */
+final class CustomerRecord {
+
+  static final byte CREATE = 'C';
+  static final byte DELETE = 'D';
+
+  private static final int HEADER = 8;
+  private static final int TYPE = 0;
+  private static final int MSB = 1;
+  private static final int LSB = 9;
+  private static final int VERSION = 17;
+  private static final int STATE = 25;
+  private static final int BIRTHDATE = 26;
+  private static final int NAME_LENGTH = 30;
+  private static final int NAME = 34;
+  private static final int DELETE_LENGTH = VERSION;
+  private static final CustomerState[] STATES = CustomerState.values();
+
+  private CustomerRecord() {
+  }
+
+  static byte[] encodeName(Customer customer) {
+    return null == customer.getName() ? null : customer.getName().getBytes(StandardCharsets.UTF_8);
+  }
+
+  static int sizeOfCreate(byte[] name) {
+    return HEADER + NAME + (null == name ? 0 : name.length);
+  }
+
+  static int sizeOfDelete() {
+    return HEADER + DELETE_LENGTH;
+  }
+
+  static void writeCreate(ByteBuffer buffer, int offset, Customer customer, byte[] name) {
+    var body = offset + HEADER;
+    buffer.put(body + TYPE, CREATE);
+    buffer.putLong(body + MSB, customer.getUuid().getMostSignificantBits());
+    buffer.putLong(body + LSB, customer.getUuid().getLeastSignificantBits());
+    buffer.putLong(body + VERSION, null == customer.getVersion() ? 0L : customer.getVersion());
+    buffer.put(body + STATE, (byte) (null == customer.getState() ? -1 : customer.getState().ordinal()));
+    buffer.putInt(body + BIRTHDATE, null == customer.getBirthdate() ? Integer.MIN_VALUE : (int) customer.getBirthdate().toEpochDay());
+    buffer.putInt(body + NAME_LENGTH, null == name ? -1 : name.length);
+    if (null != name) {
+      buffer.put(body + NAME, name);
+    }
+    seal(buffer, offset, sizeOfCreate(name) - HEADER);
+  }
+
+  static void writeDelete(ByteBuffer buffer, int offset, UUID uuid) {
+    var body = offset + HEADER;
+    buffer.put(body + TYPE, DELETE);
+    buffer.putLong(body + MSB, uuid.getMostSignificantBits());
+    buffer.putLong(body + LSB, uuid.getLeastSignificantBits());
+    seal(buffer, offset, DELETE_LENGTH);
+  }
+
+  private static void seal(ByteBuffer buffer, int offset, int length) {
+    buffer.putInt(offset + 4, crc(buffer, offset + HEADER, length));
+    buffer.putInt(offset, length);
+  }
+
+  private static int crc(ByteBuffer buffer, int offset, int length) {
+    var crc = new CRC32();
+    crc.update(buffer.slice(offset, length));
+    return (int) crc.getValue();
+  }
+
+  // the size of the valid record at the offset, or 0 at the end of the segment or for a torn record
+  static int validate(ByteBuffer buffer, int offset) {
+    if (offset + HEADER > buffer.capacity()) {
+      return 0;
+    }
+    var length = buffer.getInt(offset);
+    if (length < DELETE_LENGTH || length > buffer.capacity() - offset - HEADER) {
+      return 0;
+    }
+    return crc(buffer, offset + HEADER, length) == buffer.getInt(offset + 4) ? HEADER + length : 0;
+  }
+
+  static int size(ByteBuffer buffer, int offset) {
+    return HEADER + buffer.getInt(offset);
+  }
+
+  static byte type(ByteBuffer buffer, int offset) {
+    return buffer.get(offset + HEADER + TYPE);
+  }
+
+  static UUID uuid(ByteBuffer buffer, int offset) {
+    return new UUID(
+      buffer.getLong(offset + HEADER + MSB),
+      buffer.getLong(offset + HEADER + LSB)
+    );
+  }
+
+  static long version(ByteBuffer buffer, int offset) {
+    return buffer.getLong(offset + HEADER + VERSION);
+  }
+
+  static CustomerState state(ByteBuffer buffer, int offset) {
+    var ordinal = buffer.get(offset + HEADER + STATE);
+    return ordinal < 0 ? null : STATES[ordinal];
+  }
+
+  static Customer decode(ByteBuffer buffer, int offset) {
+    var body = offset + HEADER;
+    var birthdate = buffer.getInt(body + BIRTHDATE);
+    var nameLength = buffer.getInt(body + NAME_LENGTH);
+    String name = null;
+    if (nameLength >= 0) {
+      var bytes = new byte[nameLength];
+      buffer.get(body + NAME, bytes);
+      name = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return Customer
+      .builder()
+      .uuid(uuid(buffer, offset))
+      .name(name)
+      .birthdate(birthdate == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(birthdate))
+      .state(state(buffer, offset))
+      .version(version(buffer, offset))
+      .build();
+  }
+
+}
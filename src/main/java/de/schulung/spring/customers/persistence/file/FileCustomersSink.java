@@ -0,0 +1,549 @@
+package de.schulung.spring.customers.persistence.file;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomerVersions;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.CustomersSinkCapability;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/*
+ * Stores the customers in memory-mapped segment files as an append-only
+ * log of binary records (see CustomerRecord). Only the positions of the
+ * records are kept on the heap, indexed by uuid (and by state), and
+ * rebuilt by scanning the segments on startup. Reads decode the records
+ * directly from the mapped memory.
+ *
+ * Deletions append a tombstone, so the segments grow until they are
+ * compacted, which rewrites the live records into new segments.
+ *
+ * Writes and compaction are serialized, reads are lock-free.
+ */
+@Slf4j
+public class FileCustomersSink
+  implements CustomersSink, AutoCloseable {
+
+  private final Path directory;
+  private final int segmentSize;
+  private final boolean sync;
+
+  // by id, in the order they were created
+  private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+  // the positions of the records (segment id and offset), see position(...)
+  private final ConcurrentNavigableMap<UUID, Long> index = new ConcurrentSkipListMap<>();
+  private final Map<CustomerState, ConcurrentNavigableMap<UUID, Long>> indexByState = new EnumMap<>(CustomerState.class);
+  private final Map<CustomerState, LongAdder> countsByState = new EnumMap<>(CustomerState.class);
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+  // guarded by the write lock
+  private Segment current;
+  private long liveBytes;
+  private long totalBytes;
+
+  @FunctionalInterface
+  private interface RecordReader<T> {
+    T read(ByteBuffer buffer, int offset);
+  }
+
+  public FileCustomersSink(Path directory, int segmentSize, boolean sync) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.sync = sync;
+    // both maps are read-only after construction
+    for (var state : CustomerState.values()) {
+      indexByState.put(state, new ConcurrentSkipListMap<>());
+      countsByState.put(state, new LongAdder());
+    }
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    recover();
+  }
+
+  private static long position(long segment, int offset) {
+    return segment << 32 | offset;
+  }
+
+  private static long segmentOf(long position) {
+    return position >>> 32;
+  }
+
+  private static int offsetOf(long position) {
+    return (int) position;
+  }
+
+  /*
+   * Rebuilds the index by replaying the records of all segments.
+   * A segment ends at the first torn record (crash while writing).
+   */
+  private void recover() {
+    var start = System.nanoTime();
+    for (var id : Segment.list(directory)) {
+      var segment = Segment.open(directory, id, segmentSize);
+      segments.put(id, segment);
+      var buffer = segment.buffer();
+      var offset = 0;
+      int size;
+      while ((size = CustomerRecord.validate(buffer, offset)) > 0) {
+        apply(position(id, offset), size);
+        offset += size;
+      }
+      segment.position(offset);
+      // a full segment might end with less unused bytes than a length
+      if (offset + Integer.BYTES <= buffer.capacity() && 0 != buffer.getInt(offset)) {
+        log.warn("Ignoring torn record at offset {} of segment {}", offset, id);
+        segment.truncate();
+      }
+    }
+    current = segments.isEmpty()
+      ? roll()
+      : segments.lastEntry().getValue();
+    log.info(
+      "Loaded {} customers from {} segments in {} ms",
+      index.size(),
+      segments.size(),
+      (System.nanoTime() - start) / 1_000_000
+    );
+  }
+
+  // guarded by the write lock
+  private void apply(long position, int size) {
+    var segment = segments.get(segmentOf(position));
+    var buffer = segment.buffer();
+    var offset = offsetOf(position);
+    var uuid = CustomerRecord.uuid(buffer, offset);
+    totalBytes += size;
+    if (CustomerRecord.type(buffer, offset) == CustomerRecord.CREATE) {
+      removeFromIndexes(uuid);
+      index.put(uuid, position);
+      var state = CustomerRecord.state(buffer, offset);
+      if (null != state) {
+        indexByState.get(state).put(uuid, position);
+        countsByState.get(state).increment();
+      }
+      liveBytes += size;
+    } else {
+      removeFromIndexes(uuid);
+    }
+  }
+
+  // guarded by the write lock
+  private void removeFromIndexes(UUID uuid) {
+    var position = index.remove(uuid);
+    if (null == position) {
+      return;
+    }
+    var buffer = segments.get(segmentOf(position)).buffer();
+    var offset = offsetOf(position);
+    var state = CustomerRecord.state(buffer, offset);
+    if (null != state) {
+      indexByState.get(state).remove(uuid);
+      countsByState.get(state).decrement();
+    }
+    liveBytes -= CustomerRecord.size(buffer, offset);
+  }
+
+  // guarded by the write lock
+  private Segment roll() {
+    var id = segments.isEmpty() ? 0L : segments.lastKey() + 1;
+    var segment = Segment.open(directory, id, segmentSize);
+    segments.put(id, segment);
+    return segment;
+  }
+
+  // reserves space for a record in the current segment, guarded by the write lock
+  private long reserve(int size) {
+    if (current.remaining() < size) {
+      if (size > segmentSize) {
+        throw new IllegalArgumentException("Customer record exceeds the segment size");
+      }
+      current = roll();
+    }
+    var offset = current.position();
+    current.position(offset + size);
+    return position(current.id(), offset);
+  }
+
+  /*
+   * Reads the record at a position. If its segment was compacted
+   * in the meantime, the index points to the new segment already.
+   */
+  private <T> Optional<T> read(UUID uuid, Long position, RecordReader<T> reader) {
+    while (null != position) {
+      var segment = segments.get(segmentOf(position));
+      if (null != segment) {
+        return Optional.of(reader.read(segment.buffer(), offsetOf(position)));
+      }
+      position = index.get(uuid);
+    }
+    return Optional.empty();
+  }
+
+  private Stream<Customer> readAll(Map<UUID, Long> positions) {
+    return positions
+      .entrySet()
+      .stream()
+      .flatMap(e -> read(e.getKey(), e.getValue(), CustomerRecord::decode).stream());
+  }
+
+  @Override
+  public Set<CustomersSinkCapability> getCapabilities() {
+    return EnumSet.of(
+      CustomersSinkCapability.ID,
+      CustomersSinkCapability.STATE,
+      CustomersSinkCapability.PAGE,
+      CustomersSinkCapability.COUNT
+    );
+  }
+
+  @Override
+  public Stream<Customer> findAll() {
+    return readAll(index);
+  }
+
+  @Override
+  public Stream<Customer> findAllByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.findAllByState(null);
+    }
+    return readAll(indexByState.get(state));
+  }
+
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    var positions = null == state ? index : indexByState.get(state);
+    try (var customers = readAll(null == after ? positions : positions.tailMap(after, false))) {
+      return customers
+        .limit(limit)
+        .toList();
+    }
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    return read(uuid, index.get(uuid), CustomerRecord::decode);
+  }
+
+  @Override
+  public long count() {
+    return index.size();
+  }
+
+  @Override
+  public long countByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.countByState(null);
+    }
+    return countsByState
+      .get(state)
+      .sum();
+  }
+
+  // reads the versions only, without decoding the customers
+  @Override
+  public long checksum(CustomerState state) {
+    return (null == state ? index : indexByState.get(state))
+      .entrySet()
+      .stream()
+      .mapToLong(e -> read(
+          e.getKey(),
+          e.getValue(),
+          (buffer, offset) -> CustomersChecksum.of(e.getKey(), CustomerRecord.version(buffer, offset))
+        ).orElse(0L)
+      )
+      .sum();
+  }
+
+  // guarded by the write lock
+  private void append(Customer customer) {
+    var uuid = null != customer.getUuid() ? customer.getUuid() : UUID.randomUUID();
+    customer.setUuid(uuid);
+    customer.setVersion(0L);
+    write(customer);
+  }
+
+  // guarded by the write lock, replaces a previous record with the same uuid
+  private void write(Customer customer) {
+    var name = CustomerRecord.encodeName(customer);
+    var size = CustomerRecord.sizeOfCreate(name);
+    var position = reserve(size);
+    CustomerRecord.writeCreate(current.buffer(), offsetOf(position), customer, name);
+    apply(position, size);
+  }
+
+  // guarded by the write lock
+  private boolean appendDelete(UUID uuid) {
+    if (!index.containsKey(uuid)) {
+      return false;
+    }
+    var size = CustomerRecord.sizeOfDelete();
+    var position = reserve(size);
+    CustomerRecord.writeDelete(current.buffer(), offsetOf(position), uuid);
+    apply(position, size);
+    return true;
+  }
+
+  // guarded by the write lock
+  private void forceIfSync() {
+    if (sync) {
+      current.force();
+    }
+  }
+
+  @Override
+  public void create(Customer customer) {
+    writeLock.lock();
+    try {
+      append(customer);
+      forceIfSync();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // forced once per batch
+  @Override
+  public void createAll(Collection<Customer> customers) {
+    writeLock.lock();
+    try {
+      var first = current;
+      customers.forEach(this::append);
+      if (sync && first != current) {
+        first.force();
+      }
+      forceIfSync();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /*
+   * Appends a new record with the incremented version, which replaces the
+   * previous one (like on replay). Unchanged customers append nothing.
+   */
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    writeLock.lock();
+    try {
+      var updated = update(customer.getUuid(), expectedVersion, previous -> Customer
+        .builder()
+        .uuid(previous.getUuid())
+        .name(customer.getName())
+        .birthdate(customer.getBirthdate())
+        .state(customer.getState())
+        .build()
+      );
+      updated.ifPresent(update -> customer.setVersion(update.version()));
+      return updated.map(Update::previous);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    writeLock.lock();
+    try {
+      return update(uuid, expectedVersion, previous -> Customer
+        .builder()
+        .uuid(uuid)
+        .name(previous.getName())
+        .birthdate(previous.getBirthdate())
+        .state(state)
+        .build()
+      )
+        .map(update -> new CustomerStateUpdate(update.previous().getState(), update.version()));
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private record Update(Customer previous, long version) {
+  }
+
+  // guarded by the write lock
+  private Optional<Update> update(UUID uuid, Long expectedVersion, UnaryOperator<Customer> modification) {
+    var position = index.get(uuid);
+    if (null == position) {
+      return Optional.empty();
+    }
+    var previous = CustomerRecord.decode(segments.get(segmentOf(position)).buffer(), offsetOf(position));
+    CustomerVersions.check(uuid, previous.getVersion(), expectedVersion);
+    var customer = modification.apply(previous);
+    if (
+      Objects.equals(previous.getName(), customer.getName())
+        && Objects.equals(previous.getBirthdate(), customer.getBirthdate())
+        && previous.getState() == customer.getState()
+    ) {
+      return Optional.of(new Update(previous, previous.getVersion()));
+    }
+    customer.setVersion(previous.getVersion() + 1);
+    write(customer);
+    forceIfSync();
+    return Optional.of(new Update(previous, customer.getVersion()));
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    writeLock.lock();
+    try {
+      var position = index.get(uuid);
+      if (null == position) {
+        return Optional.empty();
+      }
+      var deleted = CustomerRecord.decode(segments.get(segmentOf(position)).buffer(), offsetOf(position));
+      appendDelete(uuid);
+      forceIfSync();
+      return Optional.of(deleted);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    writeLock.lock();
+    try {
+      var first = current;
+      var count = uuids
+        .stream()
+        .distinct()
+        .filter(this::appendDelete)
+        .count();
+      if (sync && first != current) {
+        first.force();
+      }
+      forceIfSync();
+      return count;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.deleteAllByState(null);
+    }
+    return deleteAll(List.copyOf(indexByState.get(state).keySet()));
+  }
+
+  /**
+   * Compacts the segments if more than the half of them is garbage
+   * (deleted or replaced records, tombstones) and they exceed a segment.
+   *
+   * @return whether the segments were compacted
+   */
+  public boolean compactIfNeeded() {
+    writeLock.lock();
+    try {
+      if (totalBytes <= segmentSize || liveBytes * 2 > totalBytes) {
+        return false;
+      }
+      compact();
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /*
+   * Copies the live records into new segments and deletes the old ones
+   * afterward. A crash in between leaves both, which results in the same
+   * customers when replayed. Writes are blocked meanwhile, reads are not.
+   */
+  public void compact() {
+    writeLock.lock();
+    try {
+      var start = System.nanoTime();
+      var obsolete = new ArrayList<>(segments.values());
+      current = roll();
+      var compacted = new ArrayList<Segment>();
+      compacted.add(current);
+      totalBytes = 0;
+      for (var entry : index.entrySet()) {
+        var uuid = entry.getKey();
+        var source = segments.get(segmentOf(entry.getValue())).buffer();
+        var sourceOffset = offsetOf(entry.getValue());
+        var size = CustomerRecord.size(source, sourceOffset);
+        var position = reserve(size);
+        if (current != compacted.getLast()) {
+          compacted.add(current);
+        }
+        current.buffer().put(offsetOf(position), source, sourceOffset, size);
+        index.put(uuid, position);
+        var state = CustomerRecord.state(source, sourceOffset);
+        if (null != state) {
+          indexByState.get(state).put(uuid, position);
+        }
+        totalBytes += size;
+      }
+      // before deleting the old segments
+      compacted.forEach(Segment::force);
+      obsolete.forEach(segment -> {
+        segments.remove(segment.id());
+        segment.delete();
+      });
+      log.info(
+        "Compacted {} segments into {} in {} ms",
+        obsolete.size(),
+        compacted.size(),
+        (System.nanoTime() - start) / 1_000_000
+      );
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  long getLiveBytes() {
+    return liveBytes;
+  }
+
+  long getTotalBytes() {
+    return totalBytes;
+  }
+
+  int getSegmentCount() {
+    return segments.size();
+  }
+
+  @Override
+  public void close() {
+    writeLock.lock();
+    try {
+      segments.values().forEach(segment -> {
+        segment.force();
+        segment.close();
+      });
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+package de.schulung.spring.customers.persistence.file;
+
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@Configuration
+@ConditionalOnProperty(
+  name = "application.persistence.sink",
+  havingValue = "file"
+)
+@EnableScheduling
+public class FileCustomersSinkConfiguration {
+
+  // compacts and closes the files, while the sink bean might be decorated
+  @RequiredArgsConstructor
+  static class FileCustomersSinkLifecycle
+    implements DisposableBean {
+
+    private final FileCustomersSink sink;
+
+    @Scheduled(
+      initialDelayString = "${application.persistence.file.compaction-interval:1m}",
+      fixedDelayString = "${application.persistence.file.compaction-interval:1m}"
+    )
+    void compact() {
+      sink.compactIfNeeded();
+    }
+
+    @Override
+    public void destroy() {
+      sink.close();
+    }
+
+  }
+
+  @Bean
+  FileCustomersSinkLifecycle fileCustomersSinkLifecycle(
+    @Value("${application.persistence.file.directory:./.local-db/customers-file}")
+    Path directory,
+    @Value("${application.persistence.file.segment-size:16MB}")
+    DataSize segmentSize,
+    @Value("${application.persistence.file.sync:false}")
+    boolean sync
+  ) {
+    return new FileCustomersSinkLifecycle(
+      new FileCustomersSink(directory, Math.toIntExact(segmentSize.toBytes()), sync)
+    );
+  }
+
+  @Bean
+  CustomersSink fileCustomersSink(
+    FileCustomersSinkLifecycle lifecycle,
+    ObjectProvider<CustomersSinkDecorator> decorators
+  ) {
+    return CustomersSinkDecorator.decorate(
+      lifecycle.sink,
+      decorators.orderedStream()
+    );
+  }
+
+}
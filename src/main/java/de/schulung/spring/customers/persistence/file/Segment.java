@@ -0,0 +1,125 @@
+package de.schulung.spring.customers.persistence.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ * A file of a fixed size, mapped into memory. The mapping stays valid
+ * after the segment is closed and deleted, so concurrent readers of a
+ * compacted segment do not fail.
+ */
+final class Segment
+  implements AutoCloseable {
+
+  private static final String SUFFIX = ".segment";
+
+  private final long id;
+  private final Path file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  // the offset to append at, guarded by the sink's write lock
+  private int position;
+
+  private Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+    this.id = id;
+    this.file = file;
+    this.channel = channel;
+    this.buffer = buffer;
+  }
+
+  // maps an existing segment with its size, or creates a new one
+  static Segment open(Path directory, long id, int size) {
+    var file = directory.resolve(String.format("%020d%s", id, SUFFIX));
+    try {
+      var channel = FileChannel.open(
+        file,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+      );
+      try {
+        var existing = channel.size();
+        var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, existing > 0 ? existing : size);
+        return new Segment(id, file, channel, buffer);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // the ids of the segments in the directory, in the order they were created
+  static List<Long> list(Path directory) {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+        .map(file -> file.getFileName().toString())
+        .filter(name -> name.endsWith(SUFFIX))
+        .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+        .sorted()
+        .toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  long id() {
+    return id;
+  }
+
+  MappedByteBuffer buffer() {
+    return buffer;
+  }
+
+  int position() {
+    return position;
+  }
+
+  void position(int position) {
+    this.position = position;
+  }
+
+  int remaining() {
+    return buffer.capacity() - position;
+  }
+
+  // zeroes a torn record, so that it is not read after records appended later (only after a crash)
+  void truncate() {
+    for (var i = position; i < buffer.capacity(); i++) {
+      if (0 != buffer.get(i)) {
+        buffer.put(i, (byte) 0);
+      }
+    }
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void delete() {
+    close();
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
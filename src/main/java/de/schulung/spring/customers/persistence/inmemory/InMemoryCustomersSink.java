@@ -1,17 +1,98 @@
 package de.schulung.spring.customers.persistence.inmemory;
 
 import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerNameSearch;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomerVersions;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
 import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.CustomersSinkCapability;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class InMemoryCustomersSink
   implements CustomersSink {
 
+  private static final int TRIGRAM_LENGTH = 3;
+  private static final int PARALLEL_AGGREGATION_THRESHOLD = 10_000;
+
   private final Map<UUID, Customer> customers = new ConcurrentHashMap<>();
+  // secondary indexes, sorted by uuid for keyset pagination
+  private final ConcurrentNavigableMap<UUID, Customer> customersByUuid = new ConcurrentSkipListMap<>();
+  private final Map<CustomerState, ConcurrentNavigableMap<UUID, Customer>> customersByState = new EnumMap<>(CustomerState.class);
+  private final Map<CustomerState, LongAdder> countsByState = new EnumMap<>(CustomerState.class);
+  // see CustomersChecksum, the sums wrap around like the sum of a scan
+  private final LongAdder checksum = new LongAdder();
+  private final Map<CustomerState, LongAdder> checksumsByState = new EnumMap<>(CustomerState.class);
+  // birthdate ranges
+  private final ConcurrentNavigableMap<IndexKey<LocalDate>, Customer> customersByBirthdate = new ConcurrentSkipListMap<>();
+  // name search (see CustomerNameSearch): sorted by the lower case names for prefixes,
+  // and the uuids by the trigrams of the lower case names for substrings
+  private final ConcurrentNavigableMap<IndexKey<String>, Customer> customersByName = new ConcurrentSkipListMap<>();
+  private final Map<Long, Set<UUID>> uuidsByTrigram = new ConcurrentHashMap<>();
+
+  // the uuid makes the key unique, a null uuid sorts before all customers with the value (range bounds)
+  private record IndexKey<T extends Comparable<? super T>>(T value, UUID uuid)
+    implements Comparable<IndexKey<T>> {
+
+    @Override
+    public int compareTo(IndexKey<T> other) {
+      var result = value.compareTo(other.value);
+      if (0 != result || uuid == other.uuid) {
+        return result;
+      }
+      if (null == uuid || null == other.uuid) {
+        return null == uuid ? -1 : 1;
+      }
+      return uuid.compareTo(other.uuid);
+    }
+
+  }
+
+  public InMemoryCustomersSink() {
+    // both maps are read-only after construction
+    for (var state : CustomerState.values()) {
+      customersByState.put(state, new ConcurrentSkipListMap<>());
+      countsByState.put(state, new LongAdder());
+      checksumsByState.put(state, new LongAdder());
+    }
+  }
+
+  @Override
+  public Set<CustomersSinkCapability> getCapabilities() {
+    return EnumSet.of(
+      CustomersSinkCapability.ID,
+      CustomersSinkCapability.STATE,
+      CustomersSinkCapability.NAME_PREFIX,
+      CustomersSinkCapability.NAME_SEARCH,
+      CustomersSinkCapability.BIRTHDATE_RANGE,
+      CustomersSinkCapability.PAGE,
+      CustomersSinkCapability.COUNT
+    );
+  }
 
   @Override
   public Stream<Customer> findAll() {
@@ -20,19 +101,362 @@ public class InMemoryCustomersSink
       .stream();
   }
 
+  @Override
+  public Stream<Customer> findAllByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.findAllByState(null);
+    }
+    return customersByState
+      .get(state)
+      .values()
+      .stream();
+  }
+
+  @Override
+  public Stream<Customer> findAllByNamePrefix(String prefix) {
+    return customersByNamePrefix(CustomerNameSearch.normalize(prefix))
+      .values()
+      .stream();
+  }
+
+  @Override
+  public Stream<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    NavigableMap<IndexKey<LocalDate>, Customer> range = customersByBirthdate;
+    if (null != from) {
+      range = range.tailMap(new IndexKey<>(from, null), true);
+    }
+    if (null != to && to.isBefore(LocalDate.MAX)) {
+      range = range.headMap(new IndexKey<>(to.plusDays(1), null), false);
+    }
+    return range
+      .values()
+      .stream();
+  }
+
+  // the term must be normalized
+  private ConcurrentNavigableMap<IndexKey<String>, Customer> customersByNamePrefix(String term) {
+    return customersByName.subMap(
+      new IndexKey<>(term, null),
+      true,
+      new IndexKey<>(term + Character.MAX_VALUE, null),
+      false
+    );
+  }
+
+  /*
+   * The prefix matches are a range of the name index, already in the order
+   * of their ranks. All other matches contain each trigram of the term, so
+   * only the customers of the smallest posting set are ranked. Terms shorter
+   * than a trigram are rarely selective, they are searched by a full scan.
+   */
+  @Override
+  public List<Customer> searchByName(String term, CustomerState state, int limit) {
+    var normalizedTerm = CustomerNameSearch.normalize(term);
+    Predicate<Customer> hasState = customer -> null == state || customer.getState() == state;
+    var prefixMatches = customersByNamePrefix(normalizedTerm)
+      .values()
+      .stream()
+      .filter(hasState)
+      .limit(limit)
+      .toList();
+    if (prefixMatches.size() == limit) {
+      return prefixMatches;
+    }
+    var candidates = normalizedTerm.length() < TRIGRAM_LENGTH
+      ? customersByName.values().stream()
+      : smallestPostingSet(normalizedTerm).stream().map(customers::get).filter(Objects::nonNull);
+    var otherMatches = CustomerNameSearch.top(
+      candidates
+        .filter(hasState)
+        .filter(customer -> CustomerNameSearch.rank(customer.getName(), normalizedTerm) > CustomerNameSearch.PREFIX),
+      normalizedTerm,
+      limit - prefixMatches.size()
+    );
+    return Stream
+      .concat(prefixMatches.stream(), otherMatches.stream())
+      .toList();
+  }
+
+  private Set<UUID> smallestPostingSet(String normalizedTerm) {
+    Set<UUID> result = null;
+    for (var trigram : trigrams(normalizedTerm).toArray()) {
+      var uuids = uuidsByTrigram.get(trigram);
+      if (null == uuids) {
+        return Set.of();
+      }
+      if (null == result || uuids.size() < result.size()) {
+        result = uuids;
+      }
+    }
+    return result;
+  }
+
+  // 3 chars (16 bit each) packed into a long, without any string instances
+  private static LongStream trigrams(String normalizedName) {
+    return IntStream
+      .rangeClosed(0, normalizedName.length() - TRIGRAM_LENGTH)
+      .mapToLong(i -> (long) normalizedName.charAt(i) << 32
+        | (long) normalizedName.charAt(i + 1) << 16
+        | normalizedName.charAt(i + 2)
+      )
+      .distinct();
+  }
+
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    var index = null == state ? customersByUuid : customersByState.get(state);
+    return (null == after ? index : index.tailMap(after, false))
+      .values()
+      .stream()
+      .limit(limit)
+      .toList();
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    return Optional.ofNullable(customers.get(uuid));
+  }
+
   @Override
   public long count() {
     return customers.size();
   }
 
+  @Override
+  public long countByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.countByState(null);
+    }
+    return countsByState
+      .get(state)
+      .sum();
+  }
+
+  @Override
+  public boolean isChecksumMaintained() {
+    return true;
+  }
+
+  @Override
+  public long checksum(CustomerState state) {
+    return (null == state ? checksum : checksumsByState.get(state)).sum();
+  }
+
+  /*
+   * The spliterator of the map splits by its bins, so a parallel stream
+   * aggregates the splits on all cores of the common fork-join pool,
+   * each split into its own primitive accumulators (see CustomersAggregation).
+   * Small maps are not worth the coordination.
+   */
+  @Override
+  public CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    var values = customers.values();
+    return (values.size() < PARALLEL_AGGREGATION_THRESHOLD ? values.stream() : values.parallelStream())
+      .collect(CustomersAggregation.aggregating(groupBy));
+  }
+
+  /*
+   * The primary map's compute methods lock the entry,
+   * so that the secondary indexes are updated atomically per uuid.
+   */
+
   @Override
   public void create(Customer customer) {
-    customer.setUuid(UUID.randomUUID());
-    customers.put(customer.getUuid(), customer);
+    var uuid = null != customer.getUuid() ? customer.getUuid() : UUID.randomUUID();
+    customer.setUuid(uuid);
+    customer.setVersion(0L);
+    customers.compute(uuid, (key, previous) -> {
+      if (null != previous) {
+        removeFromIndexes(previous, true);
+      }
+      addToIndexes(customer, true);
+      return customer;
+    });
+  }
+
+  // the stored customer is replaced, because readers might hold it
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    var result = new Customer[1];
+    var updated = customers.computeIfPresent(customer.getUuid(), (key, previous) -> {
+      CustomerVersions.check(key, previous.getVersion(), expectedVersion);
+      result[0] = previous;
+      if (
+        Objects.equals(previous.getName(), customer.getName())
+          && Objects.equals(previous.getBirthdate(), customer.getBirthdate())
+          && previous.getState() == customer.getState()
+      ) {
+        return previous;
+      }
+      return replace(
+        previous,
+        Customer
+          .builder()
+          .uuid(key)
+          .name(customer.getName())
+          .birthdate(customer.getBirthdate())
+          .state(customer.getState())
+          .version(previous.getVersion() + 1)
+          .build()
+      );
+    });
+    if (null == updated) {
+      return Optional.empty();
+    }
+    customer.setVersion(updated.getVersion());
+    return Optional.of(result[0]);
   }
 
   @Override
-  public boolean delete(UUID uuid) {
-    return customers.remove(uuid) != null;
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    var previousState = new CustomerState[1];
+    return Optional
+      .ofNullable(customers.computeIfPresent(uuid, (key, previous) -> {
+        CustomerVersions.check(key, previous.getVersion(), expectedVersion);
+        previousState[0] = previous.getState();
+        return previous.getState() == state ? previous : withState(previous, state);
+      }))
+      .map(updated -> new CustomerStateUpdate(previousState[0], updated.getVersion()));
+  }
+
+  private Customer withState(Customer previous, CustomerState state) {
+    return replace(
+      previous,
+      Customer
+        .builder()
+        .uuid(previous.getUuid())
+        .name(previous.getName())
+        .birthdate(previous.getBirthdate())
+        .state(state)
+        .version(previous.getVersion() + 1)
+        .build()
+    );
+  }
+
+  // only if the customer still matches, it could have been modified meanwhile
+  private boolean updateStateIf(UUID uuid, Predicate<Customer> condition, CustomerState state) {
+    var updated = new boolean[1];
+    customers.computeIfPresent(uuid, (key, previous) -> {
+      if (previous.getState() == state || !condition.test(previous)) {
+        return previous;
+      }
+      updated[0] = true;
+      return withState(previous, state);
+    });
+    return updated[0];
   }
+
+  /*
+   * Parallel passes, the entries of different uuids are locked independently.
+   * The indexes are weakly consistent while being iterated.
+   */
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    return new HashSet<>(uuids)
+      .parallelStream()
+      .filter(uuid -> updateStateIf(uuid, customer -> true, state))
+      .count();
+  }
+
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    // the most selective index, like the CustomersQueryPlanner
+    var index = filter.hasBirthdateRange()
+      ? findAllByBirthdateBetween(filter.birthdateFrom(), filter.birthdateTo())
+      : (filter.hasState() ? customersByState.get(filter.state()) : customersByUuid).values().stream();
+    return index
+      .parallel()
+      .filter(filter)
+      .filter(customer -> customer.getState() != state)
+      .map(Customer::getUuid)
+      .filter(uuid -> updateStateIf(uuid, filter, state))
+      .count();
+  }
+
+  private Customer replace(Customer previous, Customer customer) {
+    // the trigrams only change with the name
+    var renamed = !Objects.equals(previous.getName(), customer.getName());
+    removeFromIndexes(previous, renamed);
+    addToIndexes(customer, renamed);
+    return customer;
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    var removed = new Customer[1];
+    customers.computeIfPresent(uuid, (key, customer) -> {
+      removeFromIndexes(customer, true);
+      removed[0] = customer;
+      return null;
+    });
+    return Optional.ofNullable(removed[0]);
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.deleteAllByState(null);
+    }
+    // keys of the state index, without collecting the customers before
+    return customersByState
+      .get(state)
+      .keySet()
+      .stream()
+      .filter(uuid -> delete(uuid).isPresent())
+      .count();
+  }
+
+  private void addToIndexes(Customer customer, boolean withTrigrams) {
+    var uuid = customer.getUuid();
+    var hash = CustomersChecksum.of(customer);
+    customersByUuid.put(uuid, customer);
+    checksum.add(hash);
+    if (null != customer.getState()) {
+      customersByState.get(customer.getState()).put(uuid, customer);
+      countsByState.get(customer.getState()).increment();
+      checksumsByState.get(customer.getState()).add(hash);
+    }
+    if (null != customer.getBirthdate()) {
+      customersByBirthdate.put(new IndexKey<>(customer.getBirthdate(), uuid), customer);
+    }
+    if (null != customer.getName()) {
+      var name = CustomerNameSearch.normalize(customer.getName());
+      customersByName.put(new IndexKey<>(name, uuid), customer);
+      if (withTrigrams) {
+        // within compute, so that a concurrent removal cannot drop the posting set meanwhile
+        trigrams(name).forEach(trigram -> uuidsByTrigram.compute(trigram, (key, uuids) -> {
+          var result = null == uuids ? ConcurrentHashMap.<UUID>newKeySet() : uuids;
+          result.add(uuid);
+          return result;
+        }));
+      }
+    }
+  }
+
+  private void removeFromIndexes(Customer customer, boolean withTrigrams) {
+    var uuid = customer.getUuid();
+    var hash = CustomersChecksum.of(customer);
+    customersByUuid.remove(uuid);
+    checksum.add(-hash);
+    if (null != customer.getState()) {
+      customersByState.get(customer.getState()).remove(uuid);
+      countsByState.get(customer.getState()).decrement();
+      checksumsByState.get(customer.getState()).add(-hash);
+    }
+    if (null != customer.getBirthdate()) {
+      customersByBirthdate.remove(new IndexKey<>(customer.getBirthdate(), uuid));
+    }
+    if (null != customer.getName()) {
+      var name = CustomerNameSearch.normalize(customer.getName());
+      customersByName.remove(new IndexKey<>(name, uuid));
+      if (withTrigrams) {
+        trigrams(name).forEach(trigram -> uuidsByTrigram.computeIfPresent(trigram, (key, uuids) -> {
+          uuids.remove(uuid);
+          return uuids.isEmpty() ? null : uuids;
+        }));
+      }
+    }
+  }
+
 }
@@ -1,6 +1,9 @@
 package de.schulung.spring.customers.persistence.inmemory;
 
 import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,8 +13,15 @@ public class InMemoryCustomersSinkConfiguration {
 
   @ConditionalOnMissingBean
   @Bean
-  CustomersSink inMemoryCustomersSink() {
-    return new InMemoryCustomersSink();
+  CustomersSink inMemoryCustomersSink(
+    ObjectProvider<CustomersSinkDecorator> decorators,
+    @Value("${application.persistence.inmemory.packed:false}")
+    boolean packed
+  ) {
+    return CustomersSinkDecorator.decorate(
+      packed ? new PackedInMemoryCustomersSink() : new InMemoryCustomersSink(),
+      decorators.orderedStream()
+    );
   }
 
 }
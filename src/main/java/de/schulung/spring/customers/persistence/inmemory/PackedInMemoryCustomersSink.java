@@ -0,0 +1,680 @@
+package de.schulung.spring.customers.persistence.inmemory;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomerVersions;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.CustomersSinkCapability;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/*
+ * Stores the customers column-wise in primitive arrays instead of one
+ * object graph per customer (Customer, UUID, LocalDate, String, map
+ * entries), which needs a fraction of the memory and leaves almost
+ * nothing for the GC to trace:
+ *
+ *  - uuid as two longs, version as long
+ *  - birthdate as epoch day (int), state as ordinal (byte)
+ *  - names as UTF-8 in a shared byte arena, referenced by offset and length
+ *
+ * A slot is found by its uuid via an open-addressing hash table (linear
+ * probing) of slot numbers. Deleted slots are reused. Customers are only
+ * materialized on read, filters on state and birthdate are evaluated on
+ * the arrays before. For keyset paging, the slots of each state are kept
+ * in a set sorted by uuid.
+ *
+ * A read-write lock guards the arrays. Streams read the slots in chunks,
+ * so they do not block writers while being consumed, and they see the
+ * modifications of other threads weakly consistent, like a concurrent map.
+ */
+public class PackedInMemoryCustomersSink
+  implements CustomersSink {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int CHUNK_SIZE = 1024;
+  private static final byte NO_STATE = -1;
+  private static final byte FREE = -2;
+  private static final int NO_BIRTHDATE = Integer.MIN_VALUE;
+  private static final CustomerState[] STATES = CustomerState.values();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // columns, indexed by slot
+  private long[] uuidMsb = new long[INITIAL_CAPACITY];
+  private long[] uuidLsb = new long[INITIAL_CAPACITY];
+  private long[] versions = new long[INITIAL_CAPACITY];
+  private int[] birthdates = new int[INITIAL_CAPACITY];
+  private byte[] states = new byte[INITIAL_CAPACITY];
+  private int[] nameOffsets = new int[INITIAL_CAPACITY];
+  // -1 for null
+  private int[] nameLengths = new int[INITIAL_CAPACITY];
+  // the slots in use so far, including free ones
+  private int slots;
+  private int[] freeSlots = new int[16];
+  private int freeCount;
+
+  // the arena of the names, compacted if more than the half is garbage
+  private byte[] names = new byte[INITIAL_CAPACITY * 16];
+  private int namesLength;
+  private int namesGarbage;
+
+  // buckets with slot + 1, 0 for an empty bucket, at most half full
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+  private int size;
+  private final long[] countsByState = new long[STATES.length];
+
+  // slots, or a uuid as the bound of a tail set, in the order of UUID#compareTo
+  private final Comparator<Object> uuidOrder = Comparator
+    .comparingLong(this::msbOf)
+    .thenComparingLong(this::lsbOf);
+  // the slots by state ordinal + 1, so that NO_STATE is at 0
+  private final List<NavigableSet<Object>> slotsByState = Stream
+    .<NavigableSet<Object>>generate(() -> new TreeSet<>(uuidOrder))
+    .limit(STATES.length + 1)
+    .toList();
+
+  @Override
+  public Set<CustomersSinkCapability> getCapabilities() {
+    return EnumSet.of(
+      CustomersSinkCapability.ID,
+      CustomersSinkCapability.PAGE,
+      CustomersSinkCapability.COUNT
+    );
+  }
+
+  // SplitMix64 finalizer, uuids from other sources might not be random
+  private static int hash(long msb, long lsb) {
+    var z = msb ^ Long.rotateLeft(lsb, 32);
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return (int) (z ^ (z >>> 31));
+  }
+
+  // the bucket of the uuid, or of the empty bucket to insert it
+  private int bucketOf(long msb, long lsb) {
+    var mask = table.length - 1;
+    var bucket = hash(msb, lsb) & mask;
+    while (true) {
+      var slot = table[bucket] - 1;
+      if (slot < 0 || (uuidMsb[slot] == msb && uuidLsb[slot] == lsb)) {
+        return bucket;
+      }
+      bucket = (bucket + 1) & mask;
+    }
+  }
+
+  private int slotOf(UUID uuid) {
+    return table[bucketOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())] - 1;
+  }
+
+  // backward shift deletion, so that probing does not need tombstones
+  private void removeBucket(int bucket) {
+    var mask = table.length - 1;
+    var hole = bucket;
+    table[hole] = 0;
+    var next = hole;
+    while (true) {
+      next = (next + 1) & mask;
+      var slot = table[next] - 1;
+      if (slot < 0) {
+        return;
+      }
+      var home = hash(uuidMsb[slot], uuidLsb[slot]) & mask;
+      // the entry stays if its home bucket is cyclically within (hole, next]
+      var stays = hole <= next
+        ? hole < home && home <= next
+        : hole < home || home <= next;
+      if (!stays) {
+        table[hole] = table[next];
+        table[next] = 0;
+        hole = next;
+      }
+    }
+  }
+
+  private void resizeTable() {
+    var previous = table;
+    table = new int[previous.length * 2];
+    for (var entry : previous) {
+      if (entry > 0) {
+        var slot = entry - 1;
+        table[bucketOf(uuidMsb[slot], uuidLsb[slot])] = entry;
+      }
+    }
+  }
+
+  private int allocateSlot() {
+    if (freeCount > 0) {
+      return freeSlots[--freeCount];
+    }
+    if (slots == states.length) {
+      var capacity = states.length + (states.length >> 1);
+      uuidMsb = Arrays.copyOf(uuidMsb, capacity);
+      uuidLsb = Arrays.copyOf(uuidLsb, capacity);
+      versions = Arrays.copyOf(versions, capacity);
+      birthdates = Arrays.copyOf(birthdates, capacity);
+      states = Arrays.copyOf(states, capacity);
+      nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+      nameLengths = Arrays.copyOf(nameLengths, capacity);
+    }
+    return slots++;
+  }
+
+  private void freeSlot(int slot) {
+    releaseName(slot);
+    releaseState(slot);
+    states[slot] = FREE;
+    if (freeCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+    }
+    freeSlots[freeCount++] = slot;
+  }
+
+  private long msbOf(Object key) {
+    return key instanceof UUID uuid ? uuid.getMostSignificantBits() : uuidMsb[(Integer) key];
+  }
+
+  private long lsbOf(Object key) {
+    return key instanceof UUID uuid ? uuid.getLeastSignificantBits() : uuidLsb[(Integer) key];
+  }
+
+  private NavigableSet<Object> slotsOf(byte state) {
+    return slotsByState.get(state + 1);
+  }
+
+  // the uuid of the slot must be set
+  private void assignState(int slot, byte state) {
+    states[slot] = state;
+    if (state >= 0) {
+      countsByState[state]++;
+    }
+    slotsOf(state).add(slot);
+  }
+
+  // before the uuid of the slot is reused
+  private void releaseState(int slot) {
+    if (states[slot] >= 0) {
+      countsByState[states[slot]]--;
+    }
+    slotsOf(states[slot]).remove(slot);
+  }
+
+  private void releaseName(int slot) {
+    if (nameLengths[slot] > 0) {
+      namesGarbage += nameLengths[slot];
+    }
+  }
+
+  private void storeName(int slot, String name) {
+    // the previous name is garbage already, and must not be kept by a compaction
+    nameLengths[slot] = -1;
+    if (null == name) {
+      return;
+    }
+    var bytes = name.getBytes(StandardCharsets.UTF_8);
+    if (namesLength + bytes.length > names.length) {
+      compactNames(bytes.length);
+    }
+    System.arraycopy(bytes, 0, names, namesLength, bytes.length);
+    nameOffsets[slot] = namesLength;
+    nameLengths[slot] = bytes.length;
+    namesLength += bytes.length;
+  }
+
+  // drops the garbage of the arena, and grows it if it is still too small
+  private void compactNames(int required) {
+    var live = namesLength - namesGarbage;
+    var capacity = names.length;
+    while (live + required > capacity / 2 && capacity < Integer.MAX_VALUE / 2) {
+      capacity *= 2;
+    }
+    var compacted = new byte[Math.max(capacity, live + required)];
+    var length = 0;
+    for (var slot = 0; slot < slots; slot++) {
+      if (states[slot] != FREE && nameLengths[slot] > 0) {
+        System.arraycopy(names, nameOffsets[slot], compacted, length, nameLengths[slot]);
+        nameOffsets[slot] = length;
+        length += nameLengths[slot];
+      }
+    }
+    names = compacted;
+    namesLength = length;
+    namesGarbage = 0;
+  }
+
+  // guarded by the write lock
+  private void store(Customer customer) {
+    var uuid = null != customer.getUuid() ? customer.getUuid() : UUID.randomUUID();
+    customer.setUuid(uuid);
+    customer.setVersion(0L);
+    var msb = uuid.getMostSignificantBits();
+    var lsb = uuid.getLeastSignificantBits();
+    var bucket = bucketOf(msb, lsb);
+    int slot;
+    if (table[bucket] > 0) {
+      // replaces the customer with the same uuid
+      slot = table[bucket] - 1;
+      releaseName(slot);
+      releaseState(slot);
+    } else {
+      slot = allocateSlot();
+      uuidMsb[slot] = msb;
+      uuidLsb[slot] = lsb;
+      table[bucket] = slot + 1;
+      size++;
+      if (size * 2 > table.length) {
+        resizeTable();
+      }
+    }
+    versions[slot] = customer.getVersion();
+    birthdates[slot] = null == customer.getBirthdate() ? NO_BIRTHDATE : (int) customer.getBirthdate().toEpochDay();
+    assignState(slot, null == customer.getState() ? NO_STATE : (byte) customer.getState().ordinal());
+    storeName(slot, customer.getName());
+  }
+
+  // guarded by the read lock
+  private CustomerState stateOf(int slot) {
+    var state = states[slot];
+    return NO_STATE == state ? null : STATES[state];
+  }
+
+  // guarded by the read lock
+  private Customer materialize(int slot) {
+    var birthdate = birthdates[slot];
+    return Customer
+      .builder()
+      .uuid(new UUID(uuidMsb[slot], uuidLsb[slot]))
+      .name(nameOf(slot))
+      .birthdate(NO_BIRTHDATE == birthdate ? null : LocalDate.ofEpochDay(birthdate))
+      .state(stateOf(slot))
+      .version(versions[slot])
+      .build();
+  }
+
+  // materializes the matching customers of a chunk of slots
+  private List<Customer> readChunk(int from, IntPredicate filter) {
+    lock.readLock().lock();
+    try {
+      var to = Math.min(from + CHUNK_SIZE, slots);
+      var result = new ArrayList<Customer>();
+      for (var slot = from; slot < to; slot++) {
+        if (states[slot] != FREE && filter.test(slot)) {
+          result.add(materialize(slot));
+        }
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int slotCount() {
+    lock.readLock().lock();
+    try {
+      return slots;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // the filter is evaluated on the columns, before materializing
+  private Stream<Customer> findAll(IntPredicate filter) {
+    return IntStream
+      .iterate(0, from -> from < slotCount(), from -> from + CHUNK_SIZE)
+      .mapToObj(from -> readChunk(from, filter))
+      .flatMap(List::stream);
+  }
+
+  @Override
+  public Stream<Customer> findAll() {
+    return findAll(slot -> true);
+  }
+
+  @Override
+  public Stream<Customer> findAllByState(CustomerState state) {
+    var ordinal = null == state ? NO_STATE : (byte) state.ordinal();
+    return findAll(slot -> states[slot] == ordinal);
+  }
+
+  @Override
+  public Stream<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    var min = null == from ? Integer.MIN_VALUE + 1 : (int) from.toEpochDay();
+    var max = null == to ? Integer.MAX_VALUE : (int) to.toEpochDay();
+    return findAll(slot -> birthdates[slot] >= min && birthdates[slot] <= max);
+  }
+
+  /*
+   * Reads at most limit slots after the cursor from the sorted sets of
+   * the state, or of all states, which are merged then. Only the customers
+   * of the page are materialized.
+   */
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    lock.readLock().lock();
+    try {
+      var indexes = null == state ? slotsByState : List.of(slotsOf((byte) state.ordinal()));
+      var candidates = new ArrayList<>();
+      for (var index : indexes) {
+        (null == after ? index : index.tailSet(after, false))
+          .stream()
+          .limit(limit)
+          .forEach(candidates::add);
+      }
+      return candidates
+        .stream()
+        .sorted(uuidOrder)
+        .limit(limit)
+        .map(slot -> materialize((Integer) slot))
+        .toList();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    lock.readLock().lock();
+    try {
+      var slot = slotOf(uuid);
+      return slot < 0 ? Optional.empty() : Optional.of(materialize(slot));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long count() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long countByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.countByState(null);
+    }
+    lock.readLock().lock();
+    try {
+      return countsByState[state.ordinal()];
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // without materializing the customers, the counts per epoch day are sorted afterwards
+  @Override
+  public SortedMap<LocalDate, Map<CustomerState, Long>> countByBirthdateAndState() {
+    var countsByEpochDay = new HashMap<Integer, long[]>();
+    lock.readLock().lock();
+    try {
+      for (var slot = 0; slot < slots; slot++) {
+        // neither FREE nor NO_STATE
+        if (states[slot] >= 0 && birthdates[slot] != NO_BIRTHDATE) {
+          countsByEpochDay.computeIfAbsent(birthdates[slot], day -> new long[STATES.length])[states[slot]]++;
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    var result = new TreeMap<LocalDate, Map<CustomerState, Long>>();
+    countsByEpochDay.forEach((epochDay, counts) -> {
+      var countsByState = new EnumMap<CustomerState, Long>(CustomerState.class);
+      for (var ordinal = 0; ordinal < counts.length; ordinal++) {
+        if (counts[ordinal] > 0) {
+          countsByState.put(STATES[ordinal], counts[ordinal]);
+        }
+      }
+      result.put(LocalDate.ofEpochDay(epochDay), countsByState);
+    });
+    return result;
+  }
+
+  // without materializing the customers
+  @Override
+  public long checksum(CustomerState state) {
+    var ordinal = null == state ? NO_STATE : (byte) state.ordinal();
+    lock.readLock().lock();
+    try {
+      var checksum = 0L;
+      for (var slot = 0; slot < slots; slot++) {
+        if (states[slot] != FREE && (null == state || states[slot] == ordinal)) {
+          checksum += CustomersChecksum.of(new UUID(uuidMsb[slot], uuidLsb[slot]), versions[slot]);
+        }
+      }
+      return checksum;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void create(Customer customer) {
+    lock.writeLock().lock();
+    try {
+      store(customer);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void createAll(Collection<Customer> customers) {
+    lock.writeLock().lock();
+    try {
+      customers.forEach(this::store);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // guarded by the read lock
+  private String nameOf(int slot) {
+    return nameLengths[slot] < 0
+      ? null
+      : new String(names, nameOffsets[slot], nameLengths[slot], StandardCharsets.UTF_8);
+  }
+
+  // guarded by the write lock, the version is incremented only if the state changes
+  private boolean storeState(int slot, CustomerState state) {
+    var ordinal = null == state ? NO_STATE : (byte) state.ordinal();
+    if (states[slot] == ordinal) {
+      return false;
+    }
+    releaseState(slot);
+    assignState(slot, ordinal);
+    return true;
+  }
+
+  // the name is only written to the arena if it has changed
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    lock.writeLock().lock();
+    try {
+      var slot = slotOf(customer.getUuid());
+      if (slot < 0) {
+        return Optional.empty();
+      }
+      CustomerVersions.check(customer.getUuid(), versions[slot], expectedVersion);
+      var previous = materialize(slot);
+      var changed = storeState(slot, customer.getState());
+      var birthdate = null == customer.getBirthdate() ? NO_BIRTHDATE : (int) customer.getBirthdate().toEpochDay();
+      if (birthdates[slot] != birthdate) {
+        birthdates[slot] = birthdate;
+        changed = true;
+      }
+      if (!Objects.equals(nameOf(slot), customer.getName())) {
+        releaseName(slot);
+        storeName(slot, customer.getName());
+        changed = true;
+      }
+      if (changed) {
+        versions[slot]++;
+      }
+      customer.setVersion(versions[slot]);
+      return Optional.of(previous);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    lock.writeLock().lock();
+    try {
+      var slot = slotOf(uuid);
+      if (slot < 0) {
+        return Optional.empty();
+      }
+      CustomerVersions.check(uuid, versions[slot], expectedVersion);
+      var previousState = stateOf(slot);
+      if (storeState(slot, state)) {
+        versions[slot]++;
+      }
+      return Optional.of(new CustomerStateUpdate(previousState, versions[slot]));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    lock.writeLock().lock();
+    try {
+      var count = 0L;
+      for (var uuid : new HashSet<>(uuids)) {
+        var slot = slotOf(uuid);
+        if (slot >= 0 && storeState(slot, state)) {
+          versions[slot]++;
+          count++;
+        }
+      }
+      return count;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // the filter is evaluated on the columns, the name only if the other criteria match
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    var ordinal = filter.hasState() ? (byte) filter.state().ordinal() : NO_STATE;
+    var min = null == filter.birthdateFrom() ? Integer.MIN_VALUE + 1 : (int) filter.birthdateFrom().toEpochDay();
+    var max = null == filter.birthdateTo() ? Integer.MAX_VALUE : (int) filter.birthdateTo().toEpochDay();
+    var checkBirthdate = filter.hasBirthdateRange();
+    lock.writeLock().lock();
+    try {
+      var count = 0L;
+      for (var slot = 0; slot < slots; slot++) {
+        if (
+          states[slot] != FREE
+            && (!filter.hasState() || states[slot] == ordinal)
+            && (!checkBirthdate || (birthdates[slot] >= min && birthdates[slot] <= max))
+            && (!filter.hasNamePrefix() || filter.test(materialize(slot)))
+            && storeState(slot, state)
+        ) {
+          versions[slot]++;
+          count++;
+        }
+      }
+      return count;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // guarded by the write lock
+  private boolean remove(UUID uuid) {
+    var bucket = bucketOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    var slot = table[bucket] - 1;
+    if (slot < 0) {
+      return false;
+    }
+    removeBucket(bucket);
+    freeSlot(slot);
+    size--;
+    return true;
+  }
+
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    lock.writeLock().lock();
+    try {
+      var slot = slotOf(uuid);
+      if (slot < 0) {
+        return Optional.empty();
+      }
+      var deleted = materialize(slot);
+      remove(uuid);
+      return Optional.of(deleted);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    lock.writeLock().lock();
+    try {
+      return uuids
+        .stream()
+        .distinct()
+        .filter(this::remove)
+        .count();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    if (null == state) {
+      return CustomersSink.super.deleteAllByState(null);
+    }
+    var ordinal = (byte) state.ordinal();
+    lock.writeLock().lock();
+    try {
+      var count = 0L;
+      for (var slot = 0; slot < slots; slot++) {
+        if (states[slot] == ordinal && remove(new UUID(uuidMsb[slot], uuidLsb[slot]))) {
+          count++;
+        }
+      }
+      return count;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+}
@@ -0,0 +1,159 @@
+package de.schulung.spring.customers.persistence.reactive;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.ReactiveCustomersSink;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+
+/*
+ * Reactive view on a blocking sink. The blocking calls are moved
+ * to a bounded elastic scheduler, so they do not block an event loop.
+ * Streams are closed on completion, error and cancellation.
+ */
+@RequiredArgsConstructor
+public class ReactiveCustomersSinkAdapter
+  implements ReactiveCustomersSink {
+
+  private final CustomersSink delegate;
+  private final Scheduler scheduler;
+
+  public ReactiveCustomersSinkAdapter(CustomersSink delegate) {
+    this(delegate, Schedulers.boundedElastic());
+  }
+
+  @Override
+  public Flux<Customer> findAll() {
+    return Flux
+      .fromStream(delegate::findAll)
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Flux<Customer> findAllByState(CustomerState state) {
+    return Flux
+      .fromStream(() -> delegate.findAllByState(state))
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Flux<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    return Flux
+      .fromStream(() -> delegate.findAllByBirthdateBetween(from, to))
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Flux<Customer> searchByName(String term, CustomerState state, int limit) {
+    return Flux
+      .defer(() -> Flux.fromIterable(delegate.searchByName(term, state, limit)))
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Flux<Customer> findPage(CustomerState state, UUID after, int limit) {
+    return Flux
+      .defer(() -> Flux.fromIterable(delegate.findPage(state, after, limit)))
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<Customer> findById(UUID uuid) {
+    return Mono
+      .fromCallable(() -> delegate.findById(uuid))
+      .flatMap(Mono::justOrEmpty)
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<SortedMap<LocalDate, Map<CustomerState, Long>>> countByBirthdateAndState() {
+    return Mono
+      .fromCallable(delegate::countByBirthdateAndState)
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<CustomersAggregation> aggregate(CustomersGroupBy groupBy) {
+    return Mono
+      .fromCallable(() -> delegate.aggregate(groupBy))
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public boolean isChecksumMaintained() {
+    return delegate.isChecksumMaintained();
+  }
+
+  @Override
+  public Mono<Long> count() {
+    return Mono
+      .fromCallable(delegate::count)
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<Long> countByState(CustomerState state) {
+    return Mono
+      .fromCallable(() -> delegate.countByState(state))
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<Long> checksum(CustomerState state) {
+    return Mono
+      .fromCallable(() -> delegate.checksum(state))
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<Void> create(Customer customer) {
+    return Mono
+      .fromRunnable(() -> delegate.create(customer))
+      .subscribeOn(scheduler)
+      .then();
+  }
+
+  @Override
+  public Mono<Customer> update(Customer customer, Long expectedVersion) {
+    return Mono
+      .fromCallable(() -> delegate.update(customer, expectedVersion))
+      .flatMap(Mono::justOrEmpty)
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    return Mono
+      .fromCallable(() -> delegate.updateState(uuid, state, expectedVersion))
+      .flatMap(Mono::justOrEmpty)
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<Customer> delete(UUID uuid) {
+    return Mono
+      .fromCallable(() -> delegate.delete(uuid))
+      .flatMap(Mono::justOrEmpty)
+      .subscribeOn(scheduler);
+  }
+
+  @Override
+  public Mono<Long> deleteAllByState(CustomerState state) {
+    return Mono
+      .fromCallable(() -> delegate.deleteAllByState(state))
+      .subscribeOn(scheduler);
+  }
+
+}
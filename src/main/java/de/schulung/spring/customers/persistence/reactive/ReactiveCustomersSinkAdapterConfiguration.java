@@ -0,0 +1,19 @@
+package de.schulung.spring.customers.persistence.reactive;
+
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.domain.ReactiveCustomersSink;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// e.g. WebFlux on top of JPA, if there is no reactive sink
+@Configuration
+public class ReactiveCustomersSinkAdapterConfiguration {
+
+  @ConditionalOnMissingBean
+  @Bean
+  ReactiveCustomersSink reactiveCustomersSinkAdapter(CustomersSink sink) {
+    return new ReactiveCustomersSinkAdapter(sink);
+  }
+
+}
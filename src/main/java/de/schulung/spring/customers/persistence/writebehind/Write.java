@@ -0,0 +1,26 @@
+package de.schulung.spring.customers.persistence.writebehind;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+
+import java.util.UUID;
+
+// a buffered write, the latest one per uuid
+sealed interface Write {
+
+  UUID uuid();
+
+  record Create(Customer customer) implements Write {
+
+    @Override
+    public UUID uuid() {
+      return customer.getUuid();
+    }
+
+  }
+
+  // state and version are only known if the customer was read before
+  record Delete(UUID uuid, CustomerState state, Long version) implements Write {
+  }
+
+}
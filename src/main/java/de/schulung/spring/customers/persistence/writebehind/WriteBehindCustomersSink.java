@@ -0,0 +1,706 @@
+package de.schulung.spring.customers.persistence.writebehind;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerNameSearch;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersAgeStatistics;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.DelegatingCustomersSink;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.nio.file.Path;
+import java.sql.SQLDataException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/*
+ * Acknowledges creates and deletes from an in-memory buffer and writes
+ * them to the delegate in batches, within a single transaction.
+ *
+ *  - Only the latest write per uuid is kept, so a customer that is
+ *    created and deleted before the flush never reaches the delegate.
+ *  - Reads merge the buffer (pending and in-flight writes) with the
+ *    delegate, so they see the writes immediately. While a batch is
+ *    being committed, counts might be off for a moment.
+ *  - A flush is triggered when the buffer reaches the batch size and
+ *    periodically. If the buffer reaches its maximum size, the writing
+ *    thread flushes itself (backpressure).
+ *  - Bulk deletes and updates flush the buffer and then go to the
+ *    delegate directly, single updates only if the customer is buffered.
+ *  - With a log, writes are appended before they are acknowledged and
+ *    replayed on startup if they were not flushed before.
+ *  - If the delegate rejects a batch (e.g. by a constraint), its writes
+ *    are retried one by one. The rejected ones are moved to the dead
+ *    letters, so that they do not block the buffer.
+ */
+@Slf4j
+public class WriteBehindCustomersSink
+  extends DelegatingCustomersSink
+  implements AutoCloseable {
+
+  private final TransactionOperations transaction;
+  private final int batchSize;
+  private final int maxPending;
+  private final WriteBehindLog writeLog;
+  private final WriteBehindLog deadLetterLog;
+  private final ScheduledExecutorService flusher;
+
+  // guards the buffer and the log
+  private final ReentrantLock lock = new ReentrantLock();
+  // serializes the flushes
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private LinkedHashMap<UUID, Write> pending = new LinkedHashMap<>();
+  private Map<UUID, Write> inFlight = Map.of();
+  private long pendingSince;
+  private long inFlightSince;
+  // log segments that are not yet flushed (e.g. after a failed flush)
+  private final List<Path> unflushedSegments = new ArrayList<>();
+
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final AtomicLong flushedWrites = new AtomicLong();
+  private final AtomicLong failedFlushes = new AtomicLong();
+  private final AtomicLong deadLetters = new AtomicLong();
+
+  public WriteBehindCustomersSink(
+    CustomersSink delegate,
+    TransactionOperations transaction,
+    int batchSize,
+    int maxPending,
+    Duration flushInterval,
+    WriteBehindLog writeLog,
+    WriteBehindLog deadLetterLog
+  ) {
+    super(delegate);
+    this.transaction = transaction;
+    this.batchSize = batchSize;
+    this.maxPending = Math.max(batchSize, maxPending);
+    this.writeLog = writeLog;
+    this.deadLetterLog = deadLetterLog;
+    if (null != writeLog) {
+      recover();
+    }
+    this.flusher = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().name("customers-write-behind").daemon().factory()
+    );
+    var interval = flushInterval.toMillis();
+    flusher.scheduleWithFixedDelay(this::flushSafely, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /*
+   * Writes that were logged, but not flushed before a crash. Creates
+   * of customers that exist already were flushed, but the segment was
+   * not deleted anymore.
+   */
+  private void recover() {
+    var writes = writeLog.recover();
+    if (writes.isEmpty()) {
+      return;
+    }
+    log.info("Recovering {} buffered writes from the log", writes.size());
+    var recovered = new LinkedHashMap<UUID, Write>();
+    writes.forEach(write -> coalesce(recovered, write));
+    var batch = new LinkedHashMap<UUID, Write>();
+    recovered.forEach((uuid, write) -> {
+      if (!(write instanceof Write.Create) || getDelegate().findById(uuid).isEmpty()) {
+        batch.put(uuid, write);
+      }
+    });
+    try {
+      write(batch);
+    } catch (RuntimeException e) {
+      if (!isRejected(e) || !writeSeparately(batch).isEmpty()) {
+        throw e;
+      }
+    }
+    writeLog.deleteAll();
+  }
+
+  // applies a write to a buffer, so that only the latest one per uuid is kept
+  private static void coalesce(Map<UUID, Write> buffer, Write write) {
+    if (write instanceof Write.Delete && buffer.get(write.uuid()) instanceof Write.Create) {
+      buffer.remove(write.uuid());
+    } else {
+      buffer.put(write.uuid(), write);
+    }
+  }
+
+  private static Customer copy(Customer customer) {
+    return Customer
+      .builder()
+      .uuid(customer.getUuid())
+      .name(customer.getName())
+      .birthdate(customer.getBirthdate())
+      .state(customer.getState())
+      .version(customer.getVersion())
+      .build();
+  }
+
+  /* ------------------------------------------------------------ *
+   * Buffer
+   * ------------------------------------------------------------ */
+
+  private Write latest(UUID uuid) {
+    var write = pending.get(uuid);
+    return null != write ? write : inFlight.get(uuid);
+  }
+
+  /*
+   * Updates the latest buffered write of a customer atomically.
+   * The update returns null if there is nothing to write.
+   */
+  private boolean buffer(UUID uuid, UnaryOperator<Write> update) {
+    // backpressure, before the write is acknowledged
+    if (getPendingCount() >= maxPending) {
+      flush();
+    }
+    int size;
+    lock.lock();
+    try {
+      var write = update.apply(latest(uuid));
+      if (null == write) {
+        return false;
+      }
+      if (null != writeLog) {
+        writeLog.append(write);
+      }
+      if (pending.isEmpty()) {
+        pendingSince = System.nanoTime();
+      }
+      coalesce(pending, write);
+      size = pending.size();
+    } finally {
+      lock.unlock();
+    }
+    if (size >= batchSize && flushRequested.compareAndSet(false, true)) {
+      flusher.execute(this::flushSafely);
+    }
+    return true;
+  }
+
+  // the latest buffered write per uuid, pending writes override in-flight ones
+  private Map<UUID, Write> overlay() {
+    lock.lock();
+    try {
+      if (pending.isEmpty()) {
+        return inFlight;
+      }
+      if (inFlight.isEmpty()) {
+        return new HashMap<>(pending);
+      }
+      var result = new HashMap<>(inFlight);
+      result.putAll(pending);
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Optional<Write> buffered(UUID uuid) {
+    lock.lock();
+    try {
+      return Optional.ofNullable(latest(uuid));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static Stream<Customer> created(Map<UUID, Write> overlay, Predicate<Customer> filter) {
+    return overlay
+      .values()
+      .stream()
+      .filter(Write.Create.class::isInstance)
+      .map(write -> ((Write.Create) write).customer())
+      .filter(filter)
+      .map(WriteBehindCustomersSink::copy);
+  }
+
+  // the delegate's customers without the buffered ones, plus the buffered creates
+  private static Stream<Customer> merge(
+    Stream<Customer> customers,
+    Map<UUID, Write> overlay,
+    Predicate<Customer> filter
+  ) {
+    if (overlay.isEmpty()) {
+      return customers;
+    }
+    return Stream.concat(
+      customers.filter(c -> !overlay.containsKey(c.getUuid())),
+      created(overlay, filter)
+    );
+  }
+
+  /* ------------------------------------------------------------ *
+   * Flush
+   * ------------------------------------------------------------ */
+
+  private void flushSafely() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      log.error("Could not flush buffered writes, retrying with the next flush", e);
+    }
+  }
+
+  public void flush() {
+    flushLock.lock();
+    try {
+      flushRequested.set(false);
+      final Map<UUID, Write> batch;
+      lock.lock();
+      try {
+        if (pending.isEmpty()) {
+          return;
+        }
+        batch = pending;
+        inFlight = batch;
+        inFlightSince = pendingSince;
+        pending = new LinkedHashMap<>();
+        if (null != writeLog) {
+          var segment = writeLog.roll();
+          if (null != segment) {
+            unflushedSegments.add(segment);
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+      try {
+        write(batch);
+        flushedWrites.addAndGet(batch.size());
+      } catch (RuntimeException e) {
+        failedFlushes.incrementAndGet();
+        var unwritten = isRejected(e) ? writeSeparately(batch) : batch;
+        if (!unwritten.isEmpty()) {
+          // keep the writes, newer ones win
+          lock.lock();
+          try {
+            var merged = new LinkedHashMap<>(unwritten);
+            pending.values().forEach(write -> coalesce(merged, write));
+            pending = merged;
+            pendingSince = inFlightSince;
+            inFlight = Map.of();
+          } finally {
+            lock.unlock();
+          }
+          throw e;
+        }
+      }
+      lock.lock();
+      try {
+        inFlight = Map.of();
+        if (null != writeLog) {
+          writeLog.delete(unflushedSegments);
+          unflushedSegments.clear();
+        }
+      } finally {
+        lock.unlock();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  // a constraint or data error, so writing it again would fail again
+  private static boolean isRejected(Throwable e) {
+    for (var cause = e; null != cause; cause = cause.getCause()) {
+      if (cause instanceof DataIntegrityViolationException
+        || cause instanceof SQLIntegrityConstraintViolationException
+        || cause instanceof SQLDataException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Writes each write of a rejected batch in its own transaction and
+   * moves the rejected ones to the dead letters. Stops at the first
+   * other failure (e.g. the database is not available) and returns
+   * the writes that are not written yet.
+   */
+  private Map<UUID, Write> writeSeparately(Map<UUID, Write> batch) {
+    var unwritten = new LinkedHashMap<>(batch);
+    for (var iterator = unwritten.values().iterator(); iterator.hasNext(); ) {
+      var write = iterator.next();
+      try {
+        write(Map.of(write.uuid(), write));
+        flushedWrites.incrementAndGet();
+      } catch (RuntimeException e) {
+        if (!isRejected(e)) {
+          return unwritten;
+        }
+        deadLetter(write, e);
+      }
+      iterator.remove();
+    }
+    return unwritten;
+  }
+
+  private void deadLetter(Write write, RuntimeException e) {
+    log.error("Write of customer {} was rejected, moving it to the dead letters", write.uuid(), e);
+    if (null != deadLetterLog) {
+      deadLetterLog.append(write);
+    }
+    deadLetters.incrementAndGet();
+  }
+
+  private void write(Map<UUID, Write> batch) {
+    var creates = new ArrayList<Customer>();
+    var deletes = new ArrayList<UUID>();
+    batch.values().forEach(write -> {
+      switch (write) {
+        case Write.Create create -> {
+          // new to the delegate, the version is assigned on insert again
+          var customer = copy(create.customer());
+          customer.setVersion(null);
+          creates.add(customer);
+        }
+        case Write.Delete delete -> deletes.add(delete.uuid());
+      }
+    });
+    transaction.executeWithoutResult(status -> {
+      if (!deletes.isEmpty()) {
+        getDelegate().deleteAll(deletes);
+      }
+      if (!creates.isEmpty()) {
+        getDelegate().createAll(creates);
+      }
+    });
+  }
+
+  public int getPendingCount() {
+    lock.lock();
+    try {
+      return pending.size() + inFlight.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the age of the oldest write that is not yet flushed
+  public Duration getLag() {
+    lock.lock();
+    try {
+      var since = !inFlight.isEmpty()
+        ? inFlightSince
+        : !pending.isEmpty() ? pendingSince : System.nanoTime();
+      return Duration.ofNanos(System.nanoTime() - since);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getFlushedWrites() {
+    return flushedWrites.get();
+  }
+
+  public long getFailedFlushes() {
+    return failedFlushes.get();
+  }
+
+  public long getDeadLetters() {
+    return deadLetters.get();
+  }
+
+  @Override
+  public void close() {
+    flusher.shutdown();
+    try {
+      flush();
+    } finally {
+      if (null != writeLog) {
+        writeLog.close();
+      }
+      if (null != deadLetterLog) {
+        deadLetterLog.close();
+      }
+    }
+  }
+
+  /* ------------------------------------------------------------ *
+   * CustomersSink
+   * ------------------------------------------------------------ */
+
+  @Override
+  public Stream<Customer> findAll() {
+    var overlay = overlay();
+    return merge(super.findAll(), overlay, c -> true);
+  }
+
+  @Override
+  public Stream<Customer> findAllByState(CustomerState state) {
+    var overlay = overlay();
+    return merge(super.findAllByState(state), overlay, c -> c.getState() == state);
+  }
+
+  @Override
+  public Stream<Customer> findAllByNamePrefix(String prefix) {
+    var overlay = overlay();
+    return merge(
+      super.findAllByNamePrefix(prefix),
+      overlay,
+      CustomersFilter.builder().namePrefix(prefix).build()
+    );
+  }
+
+  @Override
+  public Stream<Customer> findAllByBirthdateBetween(LocalDate from, LocalDate to) {
+    var overlay = overlay();
+    return merge(
+      super.findAllByBirthdateBetween(from, to),
+      overlay,
+      CustomersFilter.builder().birthdateFrom(from).birthdateTo(to).build()
+    );
+  }
+
+  // like findPage, the buffered customers are ranked together with the delegate's matches
+  @Override
+  public List<Customer> searchByName(String term, CustomerState state, int limit) {
+    var overlay = overlay();
+    if (overlay.isEmpty()) {
+      return super.searchByName(term, state, limit);
+    }
+    return CustomerNameSearch.top(
+      merge(
+        super.searchByName(term, state, limit + overlay.size()).stream(),
+        overlay,
+        c -> null == state || c.getState() == state
+      ),
+      CustomerNameSearch.normalize(term),
+      limit
+    );
+  }
+
+  /*
+   * Reads as many more customers as there are buffered writes, so that
+   * there are still enough customers after removing the buffered ones.
+   */
+  @Override
+  public List<Customer> findPage(CustomerState state, UUID after, int limit) {
+    var overlay = overlay();
+    if (overlay.isEmpty()) {
+      return super.findPage(state, after, limit);
+    }
+    return merge(
+      super.findPage(state, after, limit + overlay.size()).stream(),
+      overlay,
+      c -> (null == state || c.getState() == state)
+        && (null == after || c.getUuid().compareTo(after) > 0)
+    )
+      .sorted(Comparator.comparing(Customer::getUuid))
+      .limit(limit)
+      .toList();
+  }
+
+  @Override
+  public Optional<Customer> findById(UUID uuid) {
+    return buffered(uuid)
+      .map(write -> switch (write) {
+        case Write.Create create -> Optional.of(copy(create.customer()));
+        case Write.Delete delete -> Optional.<Customer>empty();
+      })
+      .orElseGet(() -> super.findById(uuid));
+  }
+
+  @Override
+  public long count() {
+    var overlay = overlay();
+    var count = super.count();
+    for (var write : overlay.values()) {
+      count += write instanceof Write.Create ? 1 : -1;
+    }
+    return count;
+  }
+
+  @Override
+  public long countByState(CustomerState state) {
+    var overlay = overlay();
+    var count = super.countByState(state);
+    for (var write : overlay.values()) {
+      switch (write) {
+        case Write.Create create when create.customer().getState() == state -> count++;
+        case Write.Delete delete when delete.state() == state -> count--;
+        default -> {
+        }
+      }
+    }
+    return count;
+  }
+
+  // buffered deletes do not know the birthdate, so they can only be subtracted by a scan
+  @Override
+  public SortedMap<LocalDate, Map<CustomerState, Long>> countByBirthdateAndState() {
+    var overlay = overlay();
+    if (overlay.values().stream().anyMatch(Write.Delete.class::isInstance)) {
+      try (var customers = findAll()) {
+        return customers
+          .collect(CustomersAgeStatistics.countingByBirthdateAndState());
+      }
+    }
+    var counts = new TreeMap<>(super.countByBirthdateAndState());
+    for (var write : overlay.values()) {
+      var customer = ((Write.Create) write).customer();
+      if (null != customer.getBirthdate() && null != customer.getState()) {
+        counts.compute(customer.getBirthdate(), (birthdate, countsByState) -> {
+          var result = new EnumMap<CustomerState, Long>(CustomerState.class);
+          if (null != countsByState) {
+            result.putAll(countsByState);
+          }
+          result.merge(customer.getState(), 1L, Long::sum);
+          return result;
+        });
+      }
+    }
+    return counts;
+  }
+
+  // like countByBirthdateAndState
+  @Override
+  public CustomersAggregation aggregate(CustomersGroupBy groupBy) {
+    var overlay = overlay();
+    if (overlay.values().stream().anyMatch(Write.Delete.class::isInstance)) {
+      try (var customers = findAll()) {
+        return customers
+          .collect(CustomersAggregation.aggregating(groupBy));
+      }
+    }
+    var created = overlay
+      .values()
+      .stream()
+      .map(write -> ((Write.Create) write).customer())
+      .collect(CustomersAggregation.aggregating(groupBy));
+    return super
+      .aggregate(groupBy)
+      .combine(created);
+  }
+
+  @Override
+  public long checksum(CustomerState state) {
+    var overlay = overlay();
+    var checksum = super.checksum(state);
+    for (var write : overlay.values()) {
+      switch (write) {
+        case Write.Create create when null == state || create.customer().getState() == state ->
+          checksum += CustomersChecksum.of(create.customer());
+        case Write.Delete delete when null == state || delete.state() == state ->
+          checksum -= CustomersChecksum.of(delete.uuid(), delete.version());
+        default -> {
+        }
+      }
+    }
+    return checksum;
+  }
+
+  // assigns the uuid and version like the delegate would do
+  @Override
+  public void create(Customer customer) {
+    if (null == customer.getUuid()) {
+      customer.setUuid(UUID.randomUUID());
+    }
+    customer.setVersion(0L);
+    var write = new Write.Create(copy(customer));
+    buffer(customer.getUuid(), latest -> write);
+  }
+
+  @Override
+  public void createAll(Collection<Customer> customers) {
+    customers.forEach(this::create);
+  }
+
+  /*
+   * The delegate is read once for customers that are not buffered,
+   * to know whether they exist (and their state for the counts).
+   * If a buffered customer is flushed in the meantime (e.g. by the
+   * backpressure of this write), it is read while holding the lock.
+   */
+  @Override
+  public Optional<Customer> delete(UUID uuid) {
+    var loaded = buffered(uuid).isEmpty();
+    var existing = loaded
+      ? super.findById(uuid)
+      : Optional.<Customer>empty();
+    var deleted = new Customer[1];
+    buffer(uuid, latest -> {
+      deleted[0] = switch (latest) {
+        case Write.Create create -> copy(create.customer());
+        case Write.Delete delete -> null;
+        case null -> (loaded ? existing : super.findById(uuid)).orElse(null);
+      };
+      return null == deleted[0]
+        ? null
+        : new Write.Delete(uuid, deleted[0].getState(), deleted[0].getVersion());
+    });
+    return Optional.ofNullable(deleted[0]);
+  }
+
+  // the delegate checks the version, so buffered writes must reach it before
+  @Override
+  public Optional<Customer> update(Customer customer, Long expectedVersion) {
+    if (buffered(customer.getUuid()).isPresent()) {
+      flush();
+    }
+    return super.update(customer, expectedVersion);
+  }
+
+  @Override
+  public Optional<CustomerStateUpdate> updateState(UUID uuid, CustomerState state, Long expectedVersion) {
+    if (buffered(uuid).isPresent()) {
+      flush();
+    }
+    return super.updateState(uuid, state, expectedVersion);
+  }
+
+  @Override
+  public long updateAllStates(Collection<UUID> uuids, CustomerState state) {
+    flush();
+    return super.updateAllStates(uuids, state);
+  }
+
+  @Override
+  public long updateAllStates(CustomersFilter filter, CustomerState state) {
+    flush();
+    return super.updateAllStates(filter, state);
+  }
+
+  @Override
+  public long deleteAll(Collection<UUID> uuids) {
+    flush();
+    return super.deleteAll(uuids);
+  }
+
+  @Override
+  public long deleteAllByState(CustomerState state) {
+    flush();
+    return super.deleteAllByState(state);
+  }
+
+}
@@ -0,0 +1,152 @@
+package de.schulung.spring.customers.persistence.writebehind;
+
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.CustomersSinkDecorator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+@Configuration
+@ConditionalOnProperty(
+  name = "application.persistence.write-behind.enabled",
+  havingValue = "true"
+)
+public class WriteBehindCustomersSinkConfiguration {
+
+  enum Durability {
+    // writes are lost on a crash
+    NONE,
+    // writes survive a crash of the process
+    LOG,
+    // writes survive a crash of the operating system
+    FSYNC
+  }
+
+  @RequiredArgsConstructor
+  static class WriteBehindCustomersSinkDecorator
+    implements CustomersSinkDecorator, MeterBinder, DisposableBean {
+
+    private final TransactionOperations transaction;
+    private final int batchSize;
+    private final int maxPending;
+    private final Duration flushInterval;
+    private final Durability durability;
+    private final Path logDirectory;
+    private final List<WriteBehindCustomersSink> sinks = new CopyOnWriteArrayList<>();
+
+    // one directory per decorated sink, without a log the dead letters are only logged
+    @Override
+    public CustomersSink decorate(CustomersSink sink) {
+      var index = String.valueOf(sinks.size());
+      var sync = durability == Durability.FSYNC;
+      var result = new WriteBehindCustomersSink(
+        sink,
+        transaction,
+        batchSize,
+        maxPending,
+        flushInterval,
+        durability == Durability.NONE
+          ? null
+          : new WriteBehindLog(logDirectory.resolve(index), sync),
+        durability == Durability.NONE
+          ? null
+          : new WriteBehindLog(logDirectory.resolve("dead-letters").resolve(index), sync)
+      );
+      sinks.add(result);
+      return result;
+    }
+
+    // flushes the buffer on shutdown
+    @Override
+    public void destroy() {
+      sinks.forEach(WriteBehindCustomersSink::close);
+    }
+
+    private double sum(ToDoubleFunction<WriteBehindCustomersSink> value) {
+      return sinks.stream().mapToDouble(value).sum();
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+      Gauge
+        .builder("customers.write-behind.pending", this, d -> d.sum(WriteBehindCustomersSink::getPendingCount))
+        .description("The count of buffered writes that are not yet flushed")
+        .register(registry);
+      TimeGauge
+        .builder(
+          "customers.write-behind.lag",
+          this,
+          TimeUnit.SECONDS,
+          d -> d.sinks.stream().mapToDouble(s -> s.getLag().toNanos() / 1e9).max().orElse(0)
+        )
+        .description("The age of the oldest buffered write that is not yet flushed")
+        .register(registry);
+      FunctionCounter
+        .builder("customers.write-behind.flushed", this, d -> d.sum(WriteBehindCustomersSink::getFlushedWrites))
+        .description("The count of flushed writes")
+        .register(registry);
+      FunctionCounter
+        .builder("customers.write-behind.failures", this, d -> d.sum(WriteBehindCustomersSink::getFailedFlushes))
+        .description("The count of failed flushes")
+        .register(registry);
+      FunctionCounter
+        .builder("customers.write-behind.dead-letters", this, d -> d.sum(WriteBehindCustomersSink::getDeadLetters))
+        .description("The count of writes that were rejected by the database")
+        .register(registry);
+    }
+
+  }
+
+  // innermost, so that the other decorators see the acknowledged writes
+  @Bean
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  WriteBehindCustomersSinkDecorator writeBehindCustomersSinkDecorator(
+    ObjectProvider<PlatformTransactionManager> transactionManager,
+    @Value("${application.persistence.write-behind.batch-size:500}")
+    int batchSize,
+    @Value("${application.persistence.write-behind.max-pending:10000}")
+    int maxPending,
+    @Value("${application.persistence.write-behind.flush-interval:1s}")
+    Duration flushInterval,
+    @Value("${application.persistence.write-behind.durability:log}")
+    Durability durability,
+    @Value("${application.persistence.write-behind.log-directory:./.local-db/write-behind}")
+    Path logDirectory
+  ) {
+    return new WriteBehindCustomersSinkDecorator(
+      transactionManager
+        .stream()
+        .findFirst()
+        .<TransactionOperations>map(TransactionTemplate::new)
+        .orElse(TransactionOperations.withoutTransaction()),
+      batchSize,
+      maxPending,
+      flushInterval,
+      durability,
+      logDirectory
+    );
+  }
+
+}
@@ -0,0 +1,241 @@
+package de.schulung.spring.customers.persistence.writebehind;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only log of the buffered writes, split into segments.
+ * A segment is rolled when the buffer is flushed and deleted when
+ * the flush was committed, so only unflushed writes are kept.
+ *
+ * Each record is written as length, CRC32 and payload, so that a torn
+ * record at the end of a segment (crash while writing) is detected
+ * and ignored on recovery.
+ */
+@Slf4j
+class WriteBehindLog
+  implements AutoCloseable {
+
+  private static final String SUFFIX = ".log";
+  private static final byte CREATE = 'C';
+  private static final byte DELETE = 'D';
+
+  private final Path directory;
+  private final boolean sync;
+  private FileChannel channel;
+  private Path segment;
+  private long sequence;
+
+  WriteBehindLog(Path directory, boolean sync) {
+    this.directory = directory;
+    this.sync = sync;
+    try {
+      Files.createDirectories(directory);
+      this.sequence = segments()
+        .stream()
+        .mapToLong(WriteBehindLog::sequenceOf)
+        .max()
+        .orElse(0L);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static long sequenceOf(Path segment) {
+    var name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+  }
+
+  // sorted by sequence
+  List<Path> segments() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files
+        .filter(file -> file.getFileName().toString().matches("\\d+\\" + SUFFIX))
+        .sorted((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)))
+        .toList();
+    }
+  }
+
+  // reads all writes of all segments, in the order they were appended
+  List<Write> recover() {
+    var result = new ArrayList<Write>();
+    try {
+      for (var file : segments()) {
+        if (!file.equals(segment)) {
+          read(file, result);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result;
+  }
+
+  private static void read(Path file, List<Write> result) throws IOException {
+    try (var in = new DataInputStream(Files.newInputStream(file))) {
+      while (true) {
+        final byte[] payload;
+        final long checksum;
+        try {
+          var length = in.readInt();
+          checksum = in.readInt() & 0xFFFFFFFFL;
+          payload = in.readNBytes(length);
+          if (payload.length < length) {
+            throw new EOFException();
+          }
+        } catch (EOFException e) {
+          return;
+        }
+        var crc = new CRC32();
+        crc.update(payload);
+        if (crc.getValue() != checksum) {
+          log.warn("Ignoring torn record at the end of {}", file);
+          return;
+        }
+        result.add(decode(payload));
+      }
+    }
+  }
+
+  void append(Write write) {
+    try {
+      if (null == channel) {
+        open();
+      }
+      var payload = encode(write);
+      var crc = new CRC32();
+      crc.update(payload);
+      var record = ByteBuffer
+        .allocate(8 + payload.length)
+        .putInt(payload.length)
+        .putInt((int) crc.getValue())
+        .put(payload)
+        .flip();
+      while (record.hasRemaining()) {
+        channel.write(record);
+      }
+      if (sync) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void open() throws IOException {
+    segment = directory.resolve(String.format("%020d%s", ++sequence, SUFFIX));
+    channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  // closes the current segment, the next append opens a new one
+  Path roll() {
+    var result = segment;
+    closeChannel();
+    segment = null;
+    return result;
+  }
+
+  void delete(Collection<Path> segments) {
+    try {
+      for (var file : segments) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // all segments, after they were recovered
+  void deleteAll() {
+    try {
+      delete(segments());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void closeChannel() {
+    if (null != channel) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        channel = null;
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    closeChannel();
+  }
+
+  private static byte[] encode(Write write) throws IOException {
+    var bytes = new ByteArrayOutputStream(64);
+    var out = new DataOutputStream(bytes);
+    switch (write) {
+      case Write.Create create -> {
+        var customer = create.customer();
+        out.writeByte(CREATE);
+        writeUuid(out, customer.getUuid());
+        out.writeUTF(customer.getName());
+        out.writeLong(null == customer.getBirthdate() ? Long.MIN_VALUE : customer.getBirthdate().toEpochDay());
+        out.writeByte(null == customer.getState() ? -1 : customer.getState().ordinal());
+      }
+      case Write.Delete delete -> {
+        out.writeByte(DELETE);
+        writeUuid(out, delete.uuid());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Write decode(byte[] payload) throws IOException {
+    var in = new DataInputStream(new ByteArrayInputStream(payload));
+    var type = in.readByte();
+    var uuid = new UUID(in.readLong(), in.readLong());
+    if (type == DELETE) {
+      return new Write.Delete(uuid, null, null);
+    }
+    var name = in.readUTF();
+    var epochDay = in.readLong();
+    var state = in.readByte();
+    return new Write.Create(
+      Customer
+        .builder()
+        .uuid(uuid)
+        .name(name)
+        .birthdate(epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay))
+        .state(state < 0 ? null : CustomerState.values()[state])
+        .version(0L)
+        .build()
+    );
+  }
+
+  private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+    out.writeLong(uuid.getMostSignificantBits());
+    out.writeLong(uuid.getLeastSignificantBits());
+  }
+
+}
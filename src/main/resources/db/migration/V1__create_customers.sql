@@ -0,0 +1,10 @@
+-- same table as created by Hibernate for the CustomerEntity before,
+-- idempotent, because the reactive profile runs the scripts on each start
+CREATE TABLE IF NOT EXISTS CUSTOMERS
+(
+    UUID       UUID         NOT NULL PRIMARY KEY,
+    NAME       VARCHAR(255),
+    BIRTH_DATE DATE,
+    STATE      VARCHAR(255),
+    VERSION    BIGINT
+);
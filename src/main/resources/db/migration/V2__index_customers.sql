@@ -0,0 +1,5 @@
+-- filtering by state (e.g. GET /customers?state=...) and keyset pagination within a state,
+-- a separate index on STATE would be redundant, because it is the leading column
+CREATE INDEX IF NOT EXISTS IDX_CUSTOMERS_STATE_UUID ON CUSTOMERS (STATE, UUID);
+-- birthdate ranges
+CREATE INDEX IF NOT EXISTS IDX_CUSTOMERS_BIRTH_DATE ON CUSTOMERS (BIRTH_DATE);
@@ -0,0 +1,5 @@
+-- case-insensitive name search (e.g. GET /customers?name=...),
+-- H2 has no functional indexes, so the lower case name is a generated column
+ALTER TABLE CUSTOMERS ADD COLUMN IF NOT EXISTS NAME_LOWER VARCHAR(255) GENERATED ALWAYS AS (LOWER(NAME));
+-- prefix searches are index range scans
+CREATE INDEX IF NOT EXISTS IDX_CUSTOMERS_NAME_LOWER ON CUSTOMERS (NAME_LOWER);
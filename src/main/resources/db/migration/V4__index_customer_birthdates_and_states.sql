@@ -0,0 +1,4 @@
+-- counts per birthdate and state (age statistics) are grouped in the order of the index,
+-- birthdate ranges still use it by its leading column, so the index on BIRTH_DATE is redundant
+CREATE INDEX IF NOT EXISTS IDX_CUSTOMERS_BIRTH_DATE_STATE ON CUSTOMERS (BIRTH_DATE, STATE);
+DROP INDEX IF EXISTS IDX_CUSTOMERS_BIRTH_DATE;
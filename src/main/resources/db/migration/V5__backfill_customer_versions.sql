@@ -0,0 +1,4 @@
+-- rows created before the version was maintained (e.g. in baselined databases) have no version,
+-- idempotent, because the reactive profile runs the scripts on each start
+UPDATE CUSTOMERS SET VERSION = 0 WHERE VERSION IS NULL;
+ALTER TABLE CUSTOMERS ALTER COLUMN VERSION SET NOT NULL;
@@ -0,0 +1,4 @@
+-- V2__index_customers.sql without the index on BIRTH_DATE, that V4 replaces,
+-- so that it is not created and dropped again on each start
+-- (the migrations must not be changed, because Flyway validates their checksums)
+CREATE INDEX IF NOT EXISTS IDX_CUSTOMERS_STATE_UUID ON CUSTOMERS (STATE, UUID);
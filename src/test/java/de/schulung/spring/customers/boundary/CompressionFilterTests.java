@@ -0,0 +1,229 @@
+package de.schulung.spring.customers.boundary;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressionFilterTests {
+
+  private static final int MIN_RESPONSE_SIZE = 1024;
+
+  SimpleMeterRegistry registry;
+  CompressionFilter filter;
+  MockHttpServletRequest request;
+  MockHttpServletResponse response;
+
+  @BeforeEach
+  void setup() {
+    registry = new SimpleMeterRegistry();
+    filter = new CompressionFilter(
+      registry,
+      MIN_RESPONSE_SIZE,
+      6,
+      List.of(MediaType.APPLICATION_JSON, MediaType.parseMediaType("text/*"))
+    );
+    request = new MockHttpServletRequest("GET", "/customers");
+    request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/customers");
+    response = new MockHttpServletResponse();
+  }
+
+  private static FilterChain writing(String contentType, byte[] body) {
+    return (req, res) -> {
+      res.setContentType(contentType);
+      res.setContentLength(body.length);
+      // in small chunks with flushes, like a streamed response
+      var out = res.getOutputStream();
+      for (var offset = 0; offset < body.length; offset += 100) {
+        out.write(body, offset, Math.min(100, body.length - offset));
+        out.flush();
+      }
+    };
+  }
+
+  private static byte[] json(int size) {
+    var body = new StringBuilder("[");
+    while (body.length() < size - 1) {
+      body.append("{\"name\":\"Tom\"},");
+    }
+    return body
+      .substring(0, size - 1)
+      .concat("]")
+      .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] gunzip(byte[] body) throws IOException {
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+      return in.readAllBytes();
+    }
+  }
+
+  @Test
+  void shouldCompressLargeResponses() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+    var body = json(10_000);
+
+    filter.doFilter(request, response, writing(MediaType.APPLICATION_JSON_VALUE, body));
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+    assertThat(response.getHeader(HttpHeaders.CONTENT_LENGTH)).isNull();
+    assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(body);
+    var raw = registry
+      .get("http.server.response.size")
+      .tags("uri", "/customers", "encoding", "gzip")
+      .summary();
+    var compressed = registry
+      .get("http.server.response.compressed.size")
+      .tags("uri", "/customers")
+      .summary();
+    assertThat(raw.totalAmount()).isEqualTo(body.length);
+    assertThat(compressed.totalAmount())
+      .isEqualTo(response.getContentAsByteArray().length)
+      .isLessThan(body.length);
+    assertThat(registry.get("http.server.response.compression").timer().count()).isOne();
+  }
+
+  // the CPU time of virtual threads is not available
+  @Test
+  void shouldMeasureCompressionOnVirtualThreads() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    var body = json(10_000);
+
+    var thread = Thread.ofVirtual().start(() -> {
+      try {
+        filter.doFilter(request, response, writing(MediaType.APPLICATION_JSON_VALUE, body));
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    thread.join();
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(registry.get("http.server.response.compression").timer().totalTime(TimeUnit.NANOSECONDS))
+      .isPositive();
+  }
+
+  @Test
+  void shouldNotCompressSmallResponses() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    var body = json(MIN_RESPONSE_SIZE - 1);
+
+    filter.doFilter(request, response, writing(MediaType.APPLICATION_JSON_VALUE, body));
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(response.getContentLength()).isEqualTo(body.length);
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    assertThat(
+      registry
+        .get("http.server.response.size")
+        .tags("encoding", "identity")
+        .summary()
+        .totalAmount()
+    ).isEqualTo(body.length);
+    assertThat(registry.find("http.server.response.compressed.size").summary()).isNull();
+  }
+
+  @Test
+  void shouldNotCompressIfNotAccepted() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0");
+    var body = json(10_000);
+
+    filter.doFilter(request, response, writing(MediaType.APPLICATION_JSON_VALUE, body));
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(response.getContentLength()).isEqualTo(body.length);
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+  }
+
+  @Test
+  void shouldNotCompressOtherContentTypes() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    var body = json(10_000);
+
+    filter.doFilter(request, response, writing(MediaType.IMAGE_PNG_VALUE, body));
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+  }
+
+  @Test
+  void shouldNotCompressEncodedResponses() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    var body = json(10_000);
+
+    filter.doFilter(request, response, (req, res) -> {
+      ((HttpServletResponse) res).setHeader(HttpHeaders.CONTENT_ENCODING, "br");
+      writing(MediaType.APPLICATION_JSON_VALUE, body).doFilter(req, res);
+    });
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("br");
+    assertThat(response.getContentAsByteArray()).isEqualTo(body);
+    assertThat(
+      registry
+        .get("http.server.response.size")
+        .tags("encoding", "br")
+        .summary()
+        .count()
+    ).isOne();
+  }
+
+  @Test
+  void shouldCompressWrittenCharacters() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "*");
+    var body = "Hällo ".repeat(1000);
+
+    filter.doFilter(request, response, (req, res) -> {
+      res.setContentType("text/plain;charset=UTF-8");
+      res.getWriter().write(body);
+    });
+
+    assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(new String(gunzip(response.getContentAsByteArray()), StandardCharsets.UTF_8)).isEqualTo(body);
+  }
+
+  @Test
+  void shouldDiscardBufferedBytesOnReset() throws Exception {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    var body = json(10_000);
+
+    filter.doFilter(request, response, (req, res) -> {
+      res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      res.getOutputStream().write(json(100));
+      res.reset();
+      writing(MediaType.APPLICATION_JSON_VALUE, body).doFilter(req, res);
+    });
+
+    assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(body);
+  }
+
+  @Test
+  void shouldPassExceptionsWithoutWriting() {
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+    assertThatThrownBy(() -> filter.doFilter(request, response, (req, res) -> {
+      res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      res.getOutputStream().write(json(100));
+      throw new IllegalStateException("failed");
+    })).isInstanceOf(IllegalStateException.class);
+    assertThat(response.getContentAsByteArray()).isEmpty();
+    assertThat(response.isCommitted()).isFalse();
+  }
+
+}
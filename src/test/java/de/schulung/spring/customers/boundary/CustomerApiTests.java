@@ -11,13 +11,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -78,6 +92,23 @@ class CustomerApiTests {
 
   }
 
+  // GET /customers -> 200 (binary formats)
+  @ParameterizedTest
+  @ValueSource(strings = {
+    MediaType.APPLICATION_CBOR_VALUE,
+    "application/x-jackson-smile",
+    "application/x-protobuf"
+  })
+  void shouldGetCustomersInBinaryFormat(String mediaType) throws Exception {
+    mvc
+      .perform(
+        get("/customers")
+          .accept(mediaType)
+      )
+      .andExpect(status().isOk())
+      .andExpect(content().contentTypeCompatibleWith(mediaType));
+  }
+
   // GET /customers -> 406
   @Test
   void shouldNotGetCustomersAsXml() throws Exception {
@@ -182,6 +213,392 @@ class CustomerApiTests {
 
   }
 
+  @Test
+  void shouldGetCustomersPageByPage() throws Exception {
+    var createdUuids = new HashSet<String>();
+    for (int i = 0; i < 5; i++) {
+      var newCustomerBody = mvc.perform(
+          post("/customers")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("""
+                {
+                  "name": "Tom Mayer",
+                  "birthdate": "2005-05-12",
+                  "state": "locked"
+                }
+              """)
+            .accept(MediaType.APPLICATION_JSON)
+        )
+        .andExpect(status().isCreated())
+        .andReturn()
+        .getResponse()
+        .getContentAsString();
+      createdUuids.add(
+        new ObjectMapper()
+          .readTree(newCustomerBody)
+          .path("uuid")
+          .asText()
+      );
+    }
+
+    var readUuids = new ArrayList<String>();
+    String next = "/customers?state=locked&limit=2";
+    while (null != next) {
+      var response = mvc
+        .perform(
+          get(next)
+            .accept(MediaType.APPLICATION_JSON)
+        )
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(lessThanOrEqualTo(2)))
+        .andReturn()
+        .getResponse();
+      new ObjectMapper()
+        .readTree(response.getContentAsString())
+        .forEach(customer -> readUuids.add(customer.path("uuid").asText()));
+      var link = response.getHeader(HttpHeaders.LINK);
+      next = null == link ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+    }
+
+    assertThat(readUuids)
+      .doesNotHaveDuplicates()
+      .containsAll(createdUuids);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"limit=0", "limit=1001", "cursor=gelbekatze"})
+  void shouldNotGetCustomersWithInvalidPagingParameter(String parameter) throws Exception {
+    mvc
+      .perform(
+        get("/customers?" + parameter)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldSearchCustomersByName() throws Exception {
+    // unique names, the database is shared with other tests
+    var token = "x" + UUID.randomUUID().toString().substring(0, 8);
+    for (var name : new String[]{"Julia " + token + "son", "Tom " + token, token + "-Mayer", token}) {
+      mvc.perform(
+          post("/customers")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("""
+                {
+                  "name": "%s",
+                  "birthdate": "2005-05-12",
+                  "state": "active"
+                }
+              """.formatted(name))
+        )
+        .andExpect(status().isCreated());
+    }
+
+    mvc
+      .perform(
+        get("/customers")
+          .queryParam("name", token.toUpperCase())
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().exists(HttpHeaders.ETAG))
+      .andExpect(jsonPath("$.length()").value(4))
+      .andExpect(jsonPath("$[0].name").value(token))
+      .andExpect(jsonPath("$[1].name").value(token + "-Mayer"))
+      .andExpect(jsonPath("$[2].name").value("Julia " + token + "son"))
+      .andExpect(jsonPath("$[3].name").value("Tom " + token));
+    mvc
+      .perform(
+        get("/customers")
+          .queryParam("name", token.substring(1))
+          .queryParam("state", "active")
+          .queryParam("limit", "2")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().doesNotExist(HttpHeaders.LINK))
+      .andExpect(jsonPath("$.length()").value(2));
+    mvc
+      .perform(
+        get("/customers")
+          .queryParam("name", token)
+          .queryParam("state", "locked")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(0));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"name=", "name=tom&limit=0", "name=tom&cursor=AAAAAAAAAAAAAAAAAAAAAA"})
+  void shouldNotSearchCustomersWithInvalidParameter(String parameter) throws Exception {
+    mvc
+      .perform(
+        get("/customers?" + parameter)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldGetCustomersByBirthdateAndCountAges() throws Exception {
+    // a birthdate that no other test uses
+    var birthdate = LocalDate.of(1777, Month.JULY, 7);
+    for (var state : new String[]{"active", "locked"}) {
+      mvc.perform(
+          post("/customers")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("""
+                {
+                  "name": "Tom Mayer",
+                  "birthdate": "%s",
+                  "state": "%s"
+                }
+              """.formatted(birthdate, state))
+        )
+        .andExpect(status().isCreated());
+    }
+
+    mvc
+      .perform(
+        get("/customers")
+          .queryParam("birthdateFrom", "1777-01-01")
+          .queryParam("birthdateTo", "1777-12-31")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(2))
+      .andExpect(jsonPath("$[0].birthdate").value("1777-07-07"));
+    mvc
+      .perform(
+        get("/customers")
+          .queryParam("birthdateTo", "1777-07-07")
+          .queryParam("state", "locked")
+          .accept(MediaType.APPLICATION_NDJSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(content().string(containsString("\"state\":\"locked\"")))
+      .andExpect(content().string(not(containsString("\"state\":\"active\""))));
+
+    var age = Period.between(birthdate, LocalDate.now()).getYears();
+    mvc
+      .perform(
+        get("/customers/stats/ages")
+          .queryParam("bucketSize", "1")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.bucketSize").value(1))
+      .andExpect(jsonPath("$.buckets[?(@.minAge == %d)].count".formatted(age)).value(hasItem(2)))
+      .andExpect(jsonPath("$.buckets[?(@.minAge == %d)].countsByState.locked".formatted(age)).value(hasItem(1)));
+    mvc
+      .perform(
+        get("/customers/stats/ages")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.bucketSize").value(10))
+      .andExpect(jsonPath("$.buckets[0].minAge").isNumber());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "birthdateFrom=1990-13-01",
+    "birthdateFrom=2000-01-01&birthdateTo=1990-01-01",
+    "birthdateFrom=1990-01-01&limit=10",
+    "birthdateTo=1990-01-01&name=tom"
+  })
+  void shouldNotGetCustomersWithInvalidBirthdateParameter(String parameter) throws Exception {
+    mvc
+      .perform(
+        get("/customers?" + parameter)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"0", "151", "ten"})
+  void shouldNotCountAgesWithInvalidBucketSize(String bucketSize) throws Exception {
+    mvc
+      .perform(
+        get("/customers/stats/ages")
+          .queryParam("bucketSize", bucketSize)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldAggregateCustomers() throws Exception {
+    // a birth year that no other test uses
+    mvc.perform(
+        post("/customers")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+              {
+                "name": "Tom Mayer",
+                "birthdate": "1666-06-06",
+                "state": "locked"
+              }
+            """)
+      )
+      .andExpect(status().isCreated());
+
+    mvc
+      .perform(
+        get("/customers/stats/groups")
+          .queryParam("by", "birth-year")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.groupBy").value("birth-year"))
+      .andExpect(jsonPath("$.groups[?(@.key == '1666')].count").value(hasItem(1)))
+      .andExpect(jsonPath("$.groups[?(@.key == '1666')].minBirthdate").value(hasItem("1666-06-06")));
+    mvc
+      .perform(
+        get("/customers/stats/groups")
+          .queryParam("by", "state")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.groups[?(@.key == 'locked')].minBirthdate").value(hasItem("1666-06-06")));
+    mvc
+      .perform(
+        get("/customers/stats/groups")
+          .queryParam("by", "name-initial")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.groups[?(@.key == 't')].count").isNotEmpty());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "?by=age", "?by=STATE"})
+  void shouldNotAggregateWithInvalidDimension(String query) throws Exception {
+    mvc
+      .perform(
+        get("/customers/stats/groups" + query)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldGetStatistics() throws Exception {
+    mvc
+      .perform(
+        get("/customers/stats")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+      .andExpect(jsonPath("$.count").isNumber())
+      .andExpect(jsonPath("$.countsByState.active").isNumber())
+      .andExpect(jsonPath("$.countsByState.locked").isNumber())
+      .andExpect(jsonPath("$.countsByState.disabled").isNumber());
+  }
+
+  @Test
+  void shouldAnswerNotModifiedForUnchangedCustomer() throws Exception {
+    var location = mvc.perform(
+        post("/customers")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+              {
+                "name": "Tom Mayer",
+                "birthdate": "2005-05-12",
+                "state": "active"
+              }
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isCreated())
+      .andReturn()
+      .getResponse()
+      .getHeader("Location");
+
+    var eTag = mvc
+      .perform(
+        get(location)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().exists(HttpHeaders.ETAG))
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+
+    mvc
+      .perform(
+        get(location)
+          .header(HttpHeaders.IF_NONE_MATCH, eTag)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isNotModified())
+      .andExpect(content().string(""));
+  }
+
+  // the database does not maintain the checksum, so it is only calculated for conditional requests
+  @Test
+  void shouldAnswerNotModifiedForUnchangedCustomers() throws Exception {
+    mvc
+      .perform(
+        get("/customers")
+          .param("state", "disabled")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    var response = mvc
+      .perform(
+        get("/customers")
+          .param("state", "disabled")
+          .header(HttpHeaders.IF_NONE_MATCH, "W/\"unknown\"")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andReturn()
+      .getResponse();
+    assertThat(response.getHeaders(HttpHeaders.ETAG))
+      .hasSize(1);
+    var eTag = response.getHeader(HttpHeaders.ETAG);
+
+    mvc
+      .perform(
+        get("/customers")
+          .param("state", "disabled")
+          .header(HttpHeaders.IF_NONE_MATCH, eTag)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isNotModified());
+
+    mvc.perform(
+        post("/customers")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+              {
+                "name": "Tom Mayer",
+                "birthdate": "2005-05-12",
+                "state": "disabled"
+              }
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isCreated());
+
+    mvc
+      .perform(
+        get("/customers")
+          .param("state", "disabled")
+          .header(HttpHeaders.IF_NONE_MATCH, eTag)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+  }
+
   /*
    * POST /customers
    * Content-Type: application/json
@@ -372,4 +789,189 @@ class CustomerApiTests {
       .andExpect(jsonPath("$.state").value("active"));
   }
 
+  private String createCustomer() throws Exception {
+    return mvc.perform(
+        post("/customers")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+              {
+                "name": "Tom Mayer",
+                "birthdate": "2005-05-12",
+                "state": "active"
+              }
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isCreated())
+      .andReturn()
+      .getResponse()
+      .getHeader("Location");
+  }
+
+  @Test
+  void shouldReplaceCustomerWithOptimisticLocking() throws Exception {
+    var location = createCustomer();
+    var eTag = mvc
+      .perform(get(location).accept(MediaType.APPLICATION_JSON))
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+    var replacement = """
+        {
+          "name": "Julia Mayer",
+          "birthdate": "2005-05-13",
+          "state": "locked"
+        }
+      """;
+
+    var newETag = mvc
+      .perform(
+        put(location)
+          .header(HttpHeaders.IF_MATCH, eTag)
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(replacement)
+      )
+      .andExpect(status().isNoContent())
+      .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+
+    mvc
+      .perform(get(location).accept(MediaType.APPLICATION_JSON))
+      .andExpect(status().isOk())
+      .andExpect(header().string(HttpHeaders.ETAG, newETag))
+      .andExpect(jsonPath("$.name").value("Julia Mayer"))
+      .andExpect(jsonPath("$.birthdate").value("2005-05-13"))
+      .andExpect(jsonPath("$.state").value("locked"));
+    // lost update
+    mvc
+      .perform(
+        put(location)
+          .header(HttpHeaders.IF_MATCH, eTag)
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(replacement)
+      )
+      .andExpect(status().isPreconditionFailed());
+    // without a version, the customer only has to exist
+    mvc
+      .perform(
+        put(location)
+          .header(HttpHeaders.IF_MATCH, "*")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(replacement)
+      )
+      .andExpect(status().isNoContent())
+      // unchanged
+      .andExpect(header().string(HttpHeaders.ETAG, newETag));
+  }
+
+  @Test
+  void shouldPatchCustomerState() throws Exception {
+    var location = createCustomer();
+
+    var eTag = mvc
+      .perform(
+        patch(location)
+          .contentType("application/merge-patch+json")
+          .content("""
+              { "state": "disabled" }
+            """)
+      )
+      .andExpect(status().isNoContent())
+      .andExpect(header().exists(HttpHeaders.ETAG))
+      .andReturn()
+      .getResponse()
+      .getHeader(HttpHeaders.ETAG);
+
+    mvc
+      .perform(get(location).accept(MediaType.APPLICATION_JSON))
+      .andExpect(header().string(HttpHeaders.ETAG, eTag))
+      .andExpect(jsonPath("$.name").value("Tom Mayer"))
+      .andExpect(jsonPath("$.state").value("disabled"));
+    mvc
+      .perform(
+        patch(location)
+          .header(HttpHeaders.IF_MATCH, eTag)
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+              { "state": "active" }
+            """)
+      )
+      .andExpect(status().isNoContent())
+      .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+    mvc
+      .perform(
+        patch(location)
+          .header(HttpHeaders.IF_MATCH, eTag)
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+              { "state": "locked" }
+            """)
+      )
+      .andExpect(status().isPreconditionFailed());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "{}",
+    "{ \"state\": \"gelöscht\" }"
+  })
+  void shouldNotPatchInvalidState(String body) throws Exception {
+    var location = createCustomer();
+    mvc
+      .perform(
+        patch(location)
+          .contentType("application/merge-patch+json")
+          .content(body)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "W/\"0\"",
+    "\"zero\"",
+    "0"
+  })
+  void shouldNotUpdateWithInvalidIfMatch(String ifMatch) throws Exception {
+    var location = createCustomer();
+    mvc
+      .perform(
+        patch(location)
+          .header(HttpHeaders.IF_MATCH, ifMatch)
+          .contentType("application/merge-patch+json")
+          .content("""
+              { "state": "locked" }
+            """)
+      )
+      .andExpect(status().isPreconditionFailed());
+  }
+
+  @Test
+  void shouldNotUpdateUnknownCustomer() throws Exception {
+    var location = "/customers/" + UUID.randomUUID();
+    mvc
+      .perform(
+        put(location)
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+              {
+                "name": "Tom Mayer",
+                "birthdate": "2005-05-12"
+              }
+            """)
+      )
+      .andExpect(status().isNotFound());
+    mvc
+      .perform(
+        patch(location)
+          .contentType("application/merge-patch+json")
+          .content("""
+              { "state": "locked" }
+            """)
+      )
+      .andExpect(status().isNotFound());
+  }
+
 }
@@ -64,5 +64,26 @@ public class CustomerApiWithMockedServiceTests {
 
   }
 
+  // the name would be rejected by the database after the write was acknowledged
+  @Test
+  void shouldNotCreateCustomerWithTooLongName() throws Exception {
+    mvc.perform(
+        post("/customers")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+             {
+               "name": "%s",
+               "birthdate": "2005-05-12",
+               "state": "active"
+            }
+            """.formatted("x".repeat(256)))
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+
+    verify(customersService, never()).create(any());
+
+  }
+
 
 }
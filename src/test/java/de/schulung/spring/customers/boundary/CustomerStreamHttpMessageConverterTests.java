@@ -0,0 +1,181 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the output must not differ from Jackson's output of the DTOs (or at least the structure for binary formats)
+@JsonTest
+class CustomerStreamHttpMessageConverterTests {
+
+  @Autowired
+  ObjectMapper objectMapper;
+  CustomerDtoMapper mapper = Mappers.getMapper(CustomerDtoMapper.class);
+
+  private static Customer customer(String name, LocalDate birthdate, CustomerState state) {
+    return Customer
+      .builder()
+      .uuid(UUID.randomUUID())
+      .name(name)
+      .birthdate(birthdate)
+      .state(state)
+      .version(3L)
+      .build();
+  }
+
+  private static List<Customer> customers() {
+    var customers = new ArrayList<>(List.of(
+      customer("Tom Mayer", LocalDate.of(2005, 5, 12), CustomerState.ACTIVE),
+      customer("Jörg Müller 🙂", LocalDate.of(1, 1, 1), CustomerState.LOCKED),
+      customer("\"Quoted\" \\ <tag> \n\t\u0001", LocalDate.of(9999, 12, 31), CustomerState.DISABLED),
+      customer("Far Future", LocalDate.of(10000, 1, 1), CustomerState.ACTIVE),
+      customer("Far Past", LocalDate.of(-44, 3, 15), null),
+      customer(null, null, CustomerState.ACTIVE)
+    ));
+    customers.getLast().setUuid(null);
+    var random = new Random(4711);
+    for (var i = 0; i < 1000; i++) {
+      var customer = customer("Customer " + i, LocalDate.ofEpochDay(random.nextInt(50_000)), CustomerState.LOCKED);
+      customer.setUuid(new UUID(random.nextLong(), random.nextLong()));
+      customers.add(customer);
+    }
+    return customers;
+  }
+
+  private byte[] write(Stream<Customer> customers, MediaType mediaType) throws IOException {
+    var message = new MockHttpOutputMessage();
+    new CustomerStreamHttpMessageConverter(objectMapper, mapper::mapState)
+      .write(new CustomerStream(customers), mediaType, message);
+    return message.getBodyAsBytes();
+  }
+
+  @Test
+  void shouldWriteJsonLikeJackson() throws IOException {
+    var customers = customers();
+    var expected = objectMapper.writeValueAsBytes(
+      customers.stream().map(mapper::map).toList()
+    );
+
+    assertThat(write(customers.stream(), MediaType.APPLICATION_JSON))
+      .isEqualTo(expected);
+  }
+
+  @Test
+  void shouldWriteNdjsonLikeJackson() throws IOException {
+    var customers = customers();
+    var expected = new MockHttpOutputMessage();
+    new NdjsonHttpMessageConverter(objectMapper)
+      .write(customers.stream().map(mapper::map), MediaType.APPLICATION_NDJSON, expected);
+
+    assertThat(write(customers.stream(), MediaType.APPLICATION_NDJSON))
+      .isEqualTo(expected.getBodyAsBytes());
+  }
+
+  @Test
+  void shouldWriteCborWithSameStructure() throws IOException {
+    var customers = customers();
+    var cbor = write(customers.stream(), MediaType.APPLICATION_CBOR);
+
+    assertThat(new ObjectMapper(new CBORFactory()).readTree(cbor))
+      .isEqualTo(objectMapper.valueToTree(customers.stream().map(mapper::map).toList()));
+  }
+
+  @Test
+  void shouldWriteSmileWithSameStructure() throws IOException {
+    var customers = customers();
+    var smile = write(customers.stream(), CustomerStreamHttpMessageConverter.APPLICATION_SMILE);
+
+    assertThat(new ObjectMapper(new SmileFactory()).readTree(smile))
+      .isEqualTo(objectMapper.valueToTree(customers.stream().map(mapper::map).toList()));
+  }
+
+  // decodes the messages of customers.proto like Protobuf would do
+  @Test
+  void shouldWriteDelimitedProtobufMessages() throws IOException {
+    var customers = customers();
+    var protobuf = write(customers.stream(), CustomerStreamHttpMessageConverter.APPLICATION_PROTOBUF);
+    var input = ByteBuffer.wrap(protobuf).order(ByteOrder.LITTLE_ENDIAN);
+
+    for (var expected : customers) {
+      var end = readVarint(input) + input.position();
+      var actual = Customer.builder().state(null).build();
+      long msb = 0;
+      while (input.position() < end) {
+        var tag = readVarint(input);
+        switch (tag >>> 3) {
+          case 1 -> msb = input.getLong();
+          case 2 -> actual.setUuid(new UUID(msb, input.getLong()));
+          case 3 -> {
+            var name = new byte[readVarint(input)];
+            input.get(name);
+            actual.setName(new String(name, StandardCharsets.UTF_8));
+          }
+          case 4 -> {
+            var zigZag = readVarint(input);
+            actual.setBirthdate(LocalDate.ofEpochDay((zigZag >>> 1) ^ -(zigZag & 1)));
+          }
+          case 5 -> actual.setState(CustomerState.values()[readVarint(input) - 1]);
+          default -> throw new IllegalStateException("Unknown tag " + tag);
+        }
+      }
+      assertThat(actual)
+        .usingRecursiveComparison()
+        .ignoringFields("version")
+        .isEqualTo(expected);
+    }
+    assertThat(input.hasRemaining()).isFalse();
+    // the birthdate and the uuid are the largest gains
+    assertThat(protobuf.length * 2)
+      .isLessThan(write(customers.stream(), MediaType.APPLICATION_JSON).length);
+  }
+
+  private static int readVarint(ByteBuffer input) {
+    var value = 0;
+    for (var shift = 0; ; shift += 7) {
+      var b = input.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  @Test
+  void shouldWriteEmptyArray() throws IOException {
+    assertThat(write(Stream.empty(), MediaType.APPLICATION_JSON))
+      .asString()
+      .isEqualTo("[]");
+  }
+
+  @Test
+  void shouldCloseStream() throws IOException {
+    var closed = new AtomicBoolean();
+
+    write(customers().stream().onClose(() -> closed.set(true)), MediaType.APPLICATION_JSON);
+
+    assertThat(closed).isTrue();
+  }
+
+}
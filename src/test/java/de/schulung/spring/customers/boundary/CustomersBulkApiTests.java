@@ -0,0 +1,322 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(
+  properties = "application.import.batch-size=2"
+)
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class CustomersBulkApiTests {
+
+  @Autowired
+  MockMvc mvc;
+
+  @Test
+  void shouldImportCustomersFromJsonArray() throws Exception {
+    var results = mvc
+      .perform(
+        post("/customers/bulk")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+            [
+              { "name": "Tom Mayer", "birthdate": "2005-05-12", "state": "active" },
+              { "name": "Julia Smith", "birthdate": "gelbekatze" },
+              { "birthdate": "2005-05-12" },
+              { "name": "Tim Taylor", "birthdate": "2001-01-01", "state": "locked" },
+              { "name": "Jane Doe", "birthdate": "1999-12-31" }
+            ]
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+      .andExpect(jsonPath("$", hasSize(5)))
+      .andExpect(jsonPath("$[0].index").value(0))
+      .andExpect(jsonPath("$[0].status").value(201))
+      .andExpect(jsonPath("$[0].uuid").value(notNullValue()))
+      .andExpect(jsonPath("$[1].index").value(1))
+      .andExpect(jsonPath("$[1].status").value(400))
+      .andExpect(jsonPath("$[1].errors").isNotEmpty())
+      .andExpect(jsonPath("$[2].status").value(400))
+      .andExpect(jsonPath("$[2].errors[0]").value("name must not be null"))
+      .andExpect(jsonPath("$[3].status").value(201))
+      .andExpect(jsonPath("$[4].index").value(4))
+      .andExpect(jsonPath("$[4].status").value(201))
+      .andReturn()
+      .getResponse()
+      .getContentAsString();
+    var uuid = new ObjectMapper()
+      .readTree(results)
+      .path(3)
+      .path("uuid")
+      .asText();
+
+    mvc
+      .perform(
+        get("/customers/{uuid}", uuid)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.name").value("Tim Taylor"))
+      .andExpect(jsonPath("$.state").value("locked"));
+  }
+
+  @Test
+  void shouldImportCustomersFromNdjson() throws Exception {
+    mvc
+      .perform(
+        post("/customers/bulk")
+          .contentType(MediaType.APPLICATION_NDJSON)
+          .content("""
+            { "name": "Tom Mayer", "birthdate": "2005-05-12" }
+            { "name": "Julia Smith", "birthdate": "2005-05-12" }
+            { "name": "Tim Taylor", "birthdate": "2005-05-12" }
+            """)
+          .accept(MediaType.APPLICATION_NDJSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+      .andExpect(content().string(
+        matchesPattern("(\\{\"index\":\\d,\"status\":201,\"uuid\":\"[0-9a-f-]{36}\"}\\n){3}")
+      ));
+  }
+
+  @Test
+  void shouldStopImportOnMalformedInput() throws Exception {
+    mvc
+      .perform(
+        post("/customers/bulk")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+            [
+              { "name": "Tom Mayer", "birthdate": "2005-05-12" },
+              { "name": "Julia Smith" "birthdate": "2005-05-12" },
+              { "name": "Tim Taylor", "birthdate": "2005-05-12" }
+            ]
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$", hasSize(2)))
+      .andExpect(jsonPath("$[0].status").value(201))
+      .andExpect(jsonPath("$[1].status").value(400));
+  }
+
+  @Test
+  void shouldDeleteCustomersByUuids() throws Exception {
+    var results = mvc
+      .perform(
+        post("/customers/bulk")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+            [
+              { "name": "Tom Mayer", "birthdate": "2005-05-12" },
+              { "name": "Julia Smith", "birthdate": "2005-05-12" }
+            ]
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andReturn()
+      .getResponse()
+      .getContentAsString();
+    var uuids = new ObjectMapper().readTree(results).findValuesAsText("uuid");
+
+    mvc
+      .perform(
+        post("/customers/bulk/delete")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(String.format(
+            "[\"%s\", \"%s\", \"%s\"]",
+            uuids.get(0),
+            uuids.get(1),
+            UUID.randomUUID()
+          ))
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.count").value(2));
+
+    for (var uuid : uuids) {
+      mvc
+        .perform(
+          get("/customers/{uuid}", uuid)
+            .accept(MediaType.APPLICATION_JSON)
+        )
+        .andExpect(status().isNotFound());
+    }
+  }
+
+  @Test
+  void shouldDeleteCustomersByState() throws Exception {
+    mvc
+      .perform(
+        post("/customers/bulk")
+          .contentType(MediaType.APPLICATION_NDJSON)
+          .content("""
+            { "name": "Tom Mayer", "birthdate": "2005-05-12", "state": "disabled" }
+            { "name": "Julia Smith", "birthdate": "2005-05-12", "state": "disabled" }
+            """)
+          .accept(MediaType.APPLICATION_NDJSON)
+      )
+      .andExpect(status().isOk());
+
+    mvc
+      .perform(
+        delete("/customers")
+          .param("state", "disabled")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.count").value(greaterThanOrEqualTo(2)));
+
+    mvc
+      .perform(
+        get("/customers")
+          .param("state", "disabled")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$", hasSize(0)));
+  }
+
+  @Test
+  void shouldNotDeleteAllCustomersWithoutState() throws Exception {
+    mvc
+      .perform(
+        delete("/customers")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void shouldChangeStateByUuids() throws Exception {
+    var results = mvc
+      .perform(
+        post("/customers/bulk")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+            [
+              { "name": "Tom Mayer", "birthdate": "2005-05-12" },
+              { "name": "Julia Smith", "birthdate": "2005-05-12", "state": "locked" }
+            ]
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andReturn()
+      .getResponse()
+      .getContentAsString();
+    var uuids = new ObjectMapper().readTree(results).findValuesAsText("uuid");
+
+    // the locked customer is not changed
+    mvc
+      .perform(
+        post("/customers/bulk/state")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(String.format(
+            "{ \"state\": \"locked\", \"uuids\": [\"%s\", \"%s\", \"%s\"] }",
+            uuids.get(0),
+            uuids.get(1),
+            UUID.randomUUID()
+          ))
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.count").value(1));
+
+    for (var uuid : uuids) {
+      mvc
+        .perform(
+          get("/customers/{uuid}", uuid)
+            .accept(MediaType.APPLICATION_JSON)
+        )
+        .andExpect(jsonPath("$.state").value("locked"));
+    }
+  }
+
+  @Test
+  void shouldChangeStateByFilter() throws Exception {
+    mvc
+      .perform(
+        post("/customers/bulk")
+          .contentType(MediaType.APPLICATION_NDJSON)
+          .content("""
+            { "name": "Tom Mayer", "birthdate": "1875-05-12", "state": "locked" }
+            { "name": "Julia Smith", "birthdate": "1875-05-13", "state": "locked" }
+            { "name": "Tim Taylor", "birthdate": "1985-05-13", "state": "locked" }
+            """)
+          .accept(MediaType.APPLICATION_NDJSON)
+      )
+      .andExpect(status().isOk());
+
+    mvc
+      .perform(
+        post("/customers/bulk/state")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("""
+            {
+              "state": "disabled",
+              "currentState": "locked",
+              "birthdateFrom": "1875-01-01",
+              "birthdateTo": "1875-12-31"
+            }
+            """)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.count").value(2));
+
+    mvc
+      .perform(
+        get("/customers")
+          .param("state", "disabled")
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(jsonPath("$[?(@.birthdate == '1875-05-12')]", hasSize(1)))
+      .andExpect(jsonPath("$[?(@.birthdate == '1875-05-13')]", hasSize(1)))
+      .andExpect(jsonPath("$[?(@.birthdate == '1985-05-13')]", hasSize(0)));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "{ \"state\": \"locked\" }",
+    "{ \"state\": \"locked\", \"uuids\": [], \"currentState\": \"active\" }",
+    "{ \"state\": \"gelöscht\", \"currentState\": \"active\" }",
+    "{ \"currentState\": \"active\" }"
+  })
+  void shouldNotChangeStateWithoutSelection(String body) throws Exception {
+    mvc
+      .perform(
+        post("/customers/bulk/state")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(body)
+          .accept(MediaType.APPLICATION_JSON)
+      )
+      .andExpect(status().isBadRequest());
+  }
+}
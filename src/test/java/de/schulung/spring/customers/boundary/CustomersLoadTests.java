@@ -0,0 +1,183 @@
+package de.schulung.spring.customers.boundary;
+
+import de.schulung.spring.customers.CustomerApiProviderApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Compares the platform-thread and the virtual-thread mode under the same
+ * load. Only runs with the load-tests profile (see pom.xml), because it
+ * starts its own application contexts. The numbers depend on the machine,
+ * so the virtual threads only must not fall far behind.
+ */
+class CustomersLoadTests {
+
+  private static final int CUSTOMERS_COUNT = 200;
+  private static final int CLIENTS = 200;
+  private static final int REQUESTS_PER_CLIENT = 20;
+  private static final Pattern UUID_PATTERN = Pattern.compile("\"uuid\":\"([^\"]+)\"");
+
+  @RestController
+  static class ThreadProbe {
+
+    @GetMapping("/thread-probe")
+    boolean isVirtual() {
+      return Thread.currentThread().isVirtual();
+    }
+
+  }
+
+  private record Result(
+    int requests,
+    int failures,
+    Duration elapsed,
+    long p50Nanos,
+    long p99Nanos
+  ) {
+
+    double throughput() {
+      return requests * 1_000_000_000d / elapsed.toNanos();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "%,.0f req/s, p50 %,d us, p99 %,d us, %d failures",
+        throughput(),
+        p50Nanos / 1_000,
+        p99Nanos / 1_000,
+        failures
+      );
+    }
+  }
+
+  private static ConfigurableApplicationContext start(boolean virtualThreads) {
+    return new SpringApplicationBuilder(CustomerApiProviderApplication.class, ThreadProbe.class)
+      // arguments, because default properties would not override application.yml
+      .run(
+        "--server.port=0",
+        "--spring.datasource.url=jdbc:h2:mem:load-tests-" + virtualThreads,
+        "--spring.datasource.username=sa",
+        "--spring.datasource.password=",
+        "--spring.threads.virtual.enabled=" + virtualThreads,
+        "--logging.level.root=WARN"
+      );
+  }
+
+  private static Result run(
+    HttpClient client,
+    URI baseUri,
+    List<String> uuids,
+    int requestsPerClient
+  ) throws Exception {
+    var latencies = new long[CLIENTS * requestsPerClient];
+    var failures = new int[CLIENTS];
+    var tasks = new ArrayList<Callable<Void>>(CLIENTS);
+    for (int c = 0; c < CLIENTS; c++) {
+      final var clientIndex = c;
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        for (int r = 0; r < requestsPerClient; r++) {
+          // mostly single reads, some pages
+          var path = random.nextInt(10) == 0
+            ? "/customers?limit=20"
+            : "/customers/" + uuids.get(random.nextInt(uuids.size()));
+          var request = HttpRequest
+            .newBuilder(baseUri.resolve(path))
+            .header("Accept", "application/json")
+            .timeout(Duration.ofSeconds(30))
+            .GET()
+            .build();
+          var start = System.nanoTime();
+          var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+          latencies[clientIndex * requestsPerClient + r] = System.nanoTime() - start;
+          if (response.statusCode() != 200) {
+            failures[clientIndex]++;
+          }
+        }
+        return null;
+      });
+    }
+    var start = System.nanoTime();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+    var elapsed = Duration.ofNanos(System.nanoTime() - start);
+    Arrays.sort(latencies);
+    return new Result(
+      latencies.length,
+      Arrays.stream(failures).sum(),
+      elapsed,
+      latencies[latencies.length / 2],
+      latencies[(int) (latencies.length * 0.99)]
+    );
+  }
+
+  private static Result load(boolean virtualThreads) throws Exception {
+    try (
+      var context = start(virtualThreads);
+      var client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()
+    ) {
+      var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+      var baseUri = URI.create("http://localhost:" + port);
+      var uuids = new ArrayList<String>(CUSTOMERS_COUNT);
+      for (int i = 0; i < CUSTOMERS_COUNT; i++) {
+        var response = client.send(
+          HttpRequest
+            .newBuilder(baseUri.resolve("/customers"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(
+              "{\"name\":\"Tom Mayer " + i + "\",\"birthdate\":\"2005-05-12\",\"state\":\"active\"}"
+            ))
+            .build(),
+          HttpResponse.BodyHandlers.ofString()
+        );
+        var matcher = UUID_PATTERN.matcher(response.body());
+        assertThat(matcher.find()).isTrue();
+        uuids.add(matcher.group(1));
+      }
+      var probe = client.send(
+        HttpRequest.newBuilder(baseUri.resolve("/thread-probe")).GET().build(),
+        HttpResponse.BodyHandlers.ofString()
+      );
+      assertThat(probe.body()).isEqualTo(String.valueOf(virtualThreads));
+      // warmup
+      run(client, baseUri, uuids, 5);
+      return run(client, baseUri, uuids, REQUESTS_PER_CLIENT);
+    }
+  }
+
+  @Test
+  void shouldHandleLoadInBothThreadModes() throws Exception {
+    var platform = load(false);
+    var virtual = load(true);
+
+    assertThat(platform.failures()).as("platform threads: %s", platform).isZero();
+    assertThat(virtual.failures()).as("virtual threads: %s", virtual).isZero();
+    assertThat(virtual.throughput())
+      .as("virtual threads: %s, platform threads: %s", virtual, platform)
+      .isGreaterThan(platform.throughput() / 2);
+  }
+
+}
@@ -0,0 +1,115 @@
+package de.schulung.spring.customers.boundary;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Runs in a separate JVM with a small max heap (see pom.xml),
+ * so the customers must not be collected anywhere on the way.
+ */
+@SpringBootTest(
+  webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+  properties = {
+    // file-based to not hold the table within the heap
+    "spring.datasource.url=jdbc:h2:file:./target/streaming-tests/customers;CACHE_SIZE=8192",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+  }
+)
+class CustomersStreamingTests {
+
+  private static final int CUSTOMERS_COUNT = 300_000;
+  private static final int BATCH_SIZE = 10_000;
+
+  @LocalServerPort
+  int port;
+  @Autowired
+  ObjectMapper objectMapper;
+
+  @BeforeAll
+  static void insertCustomers(@Autowired JdbcTemplate jdbc) {
+    // the schema is migrated by Flyway, but the file survives the previous runs
+    jdbc.execute("TRUNCATE TABLE CUSTOMERS");
+    var birthdate = Date.valueOf(LocalDate.of(2005, 5, 12));
+    for (int i = 0; i < CUSTOMERS_COUNT; i += BATCH_SIZE) {
+      var batch = new ArrayList<Object[]>(BATCH_SIZE);
+      for (int j = 0; j < BATCH_SIZE; j++) {
+        batch.add(new Object[]{UUID.randomUUID(), "Tom Mayer " + (i + j), birthdate, "a", 0L});
+      }
+      jdbc.batchUpdate(
+        "INSERT INTO CUSTOMERS (uuid, name, BIRTH_DATE, state, version) VALUES (?, ?, ?, ?, ?)",
+        batch
+      );
+    }
+  }
+
+  private HttpRequest request(MediaType mediaType) {
+    return HttpRequest
+      .newBuilder(URI.create("http://localhost:" + port + "/customers"))
+      .header("Accept", mediaType.toString())
+      .timeout(Duration.ofMinutes(1))
+      .GET()
+      .build();
+  }
+
+  @Test
+  void shouldStreamCustomersAsJsonArray() throws Exception {
+    try (var client = HttpClient.newHttpClient()) {
+      var response = client.send(
+        request(MediaType.APPLICATION_JSON),
+        HttpResponse.BodyHandlers.ofInputStream()
+      );
+      assertThat(response.statusCode()).isEqualTo(200);
+      assertThat(response.headers().firstValue("Transfer-Encoding")).hasValue("chunked");
+      long count = 0;
+      try (var parser = objectMapper.createParser(response.body())) {
+        assertThat(parser.nextToken()).isEqualTo(JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          parser.skipChildren();
+          count++;
+        }
+      }
+      assertThat(count).isEqualTo(CUSTOMERS_COUNT);
+    }
+  }
+
+  @Test
+  void shouldStreamCustomersAsNdjson() throws Exception {
+    try (var client = HttpClient.newHttpClient()) {
+      var response = client.send(
+        request(MediaType.APPLICATION_NDJSON),
+        HttpResponse.BodyHandlers.ofLines()
+      );
+      assertThat(response.statusCode()).isEqualTo(200);
+      assertThat(response.headers().firstValue("Content-Type"))
+        .hasValueSatisfying(contentType -> assertThat(contentType).startsWith(MediaType.APPLICATION_NDJSON_VALUE));
+      try (var lines = response.body()) {
+        assertThat(
+          lines
+            .filter(line -> line.startsWith("{") && line.endsWith("}"))
+            .count()
+        ).isEqualTo(CUSTOMERS_COUNT);
+      }
+    }
+  }
+
+}
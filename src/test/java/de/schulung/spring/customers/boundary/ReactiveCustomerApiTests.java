@@ -0,0 +1,423 @@
+package de.schulung.spring.customers.boundary;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Period;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+  properties = "spring.r2dbc.url=r2dbc:h2:mem:///reactive-customers-tests"
+)
+@ActiveProfiles("reactive")
+@AutoConfigureWebTestClient
+class ReactiveCustomerApiTests {
+
+  @Autowired
+  WebTestClient client;
+
+  // CustomerDto cannot be used, because the uuid is read-only
+  record CustomerJson(UUID uuid, String name, LocalDate birthdate, String state) {
+  }
+
+  private URI createCustomer(String name, String state) {
+    return client
+      .post()
+      .uri("/customers")
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue("""
+        {
+          "name": "%s",
+          "birthdate": "2005-05-12",
+          "state": "%s"
+        }
+        """.formatted(name, state))
+      .exchange()
+      .expectStatus().isCreated()
+      .expectHeader().exists(HttpHeaders.LOCATION)
+      .expectBody()
+      .jsonPath("$.uuid").isNotEmpty()
+      .jsonPath("$.name").isEqualTo(name)
+      .returnResult()
+      .getResponseHeaders()
+      .getLocation();
+  }
+
+  @Test
+  void shouldCreateAndFindCustomer() {
+    var location = createCustomer("Tom Mayer", "active");
+
+    client
+      .get()
+      .uri(location)
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+      .expectBody()
+      .jsonPath("$.name").isEqualTo("Tom Mayer")
+      .jsonPath("$.state").isEqualTo("active");
+  }
+
+  @Test
+  void shouldNotCreateInvalidCustomer() {
+    client
+      .post()
+      .uri("/customers")
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue("""
+        {
+          "birthdate": "2005-05-12",
+          "state": "active"
+        }
+        """)
+      .exchange()
+      .expectStatus().isBadRequest();
+  }
+
+  @Test
+  void shouldDeleteCustomer() {
+    var location = createCustomer("Tom Mayer", "active");
+
+    client
+      .delete()
+      .uri(location)
+      .exchange()
+      .expectStatus().isNoContent();
+    client
+      .get()
+      .uri(location)
+      .exchange()
+      .expectStatus().isNotFound();
+    client
+      .delete()
+      .uri(location)
+      .exchange()
+      .expectStatus().isNotFound();
+  }
+
+  @Test
+  void shouldReplaceAndPatchCustomerWithOptimisticLocking() {
+    var location = createCustomer("Tom Mayer", "active");
+    var replacement = """
+      {
+        "name": "Julia Mayer",
+        "birthdate": "2005-05-13",
+        "state": "locked"
+      }
+      """;
+
+    client
+      .put()
+      .uri(location)
+      .header(HttpHeaders.IF_MATCH, "\"0\"")
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue(replacement)
+      .exchange()
+      .expectStatus().isNoContent()
+      .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+    // unchanged, so the version stays the same
+    client
+      .put()
+      .uri(location)
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue(replacement)
+      .exchange()
+      .expectStatus().isNoContent()
+      .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+    client
+      .patch()
+      .uri(location)
+      .header(HttpHeaders.IF_MATCH, "\"1\"")
+      .contentType(MediaType.valueOf("application/merge-patch+json"))
+      .bodyValue("""
+        { "state": "disabled" }
+        """)
+      .exchange()
+      .expectStatus().isNoContent()
+      .expectHeader().valueEquals(HttpHeaders.ETAG, "\"2\"");
+    // lost update
+    client
+      .patch()
+      .uri(location)
+      .header(HttpHeaders.IF_MATCH, "\"1\"")
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue("""
+        { "state": "active" }
+        """)
+      .exchange()
+      .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+    client
+      .get()
+      .uri(location)
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().valueEquals(HttpHeaders.ETAG, "\"2\"")
+      .expectBody()
+      .jsonPath("$.name").isEqualTo("Julia Mayer")
+      .jsonPath("$.birthdate").isEqualTo("2005-05-13")
+      .jsonPath("$.state").isEqualTo("disabled");
+    client
+      .patch()
+      .uri("/customers/{uuid}", UUID.randomUUID())
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue("""
+        { "state": "active" }
+        """)
+      .exchange()
+      .expectStatus().isNotFound();
+  }
+
+  @Test
+  void shouldStreamCustomersAsNdjson() {
+    createCustomer("Tom Mayer", "locked");
+
+    var customers = client
+      .get()
+      .uri("/customers?state=locked")
+      .accept(MediaType.APPLICATION_NDJSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+      .returnResult(CustomerJson.class)
+      .getResponseBody()
+      .collectList()
+      .block();
+
+    assertThat(customers)
+      .isNotEmpty()
+      .allSatisfy(customer -> assertThat(customer.state()).isEqualTo("locked"));
+  }
+
+  // like with JPA, the checksum is only calculated for conditional requests
+  @Test
+  void shouldAnswerNotModifiedForSameETag() {
+    createCustomer("Tom Mayer", "active");
+    client
+      .get()
+      .uri("/customers")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().doesNotExist(HttpHeaders.ETAG);
+    var eTag = client
+      .get()
+      .uri("/customers")
+      .accept(MediaType.APPLICATION_JSON)
+      .ifNoneMatch("W/\"unknown\"")
+      .exchange()
+      .expectStatus().isOk()
+      .expectBodyList(CustomerJson.class)
+      .returnResult()
+      .getResponseHeaders()
+      .getETag();
+
+    client
+      .get()
+      .uri("/customers")
+      .accept(MediaType.APPLICATION_JSON)
+      .ifNoneMatch(Objects.requireNonNull(eTag))
+      .exchange()
+      .expectStatus().isNotModified();
+  }
+
+  @Test
+  void shouldPageCustomers() {
+    for (int i = 0; i < 3; i++) {
+      createCustomer("Tom Mayer " + i, "disabled");
+    }
+
+    var firstPage = client
+      .get()
+      .uri("/customers?state=disabled&limit=2")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().exists(HttpHeaders.LINK)
+      .expectBodyList(CustomerJson.class)
+      .hasSize(2)
+      .returnResult();
+    var link = Objects.requireNonNull(firstPage.getResponseHeaders().getFirst(HttpHeaders.LINK));
+    var next = link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+
+    List<CustomerJson> secondPage = client
+      .get()
+      .uri(URI.create(next))
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBodyList(CustomerJson.class)
+      .returnResult()
+      .getResponseBody();
+
+    assertThat(secondPage)
+      .isNotEmpty()
+      .extracting(CustomerJson::uuid)
+      .doesNotContainAnyElementsOf(
+        firstPage.getResponseBody().stream().map(CustomerJson::uuid).toList()
+      );
+  }
+
+  @Test
+  void shouldSearchCustomersByName() {
+    createCustomer("Julia Searchable", "active");
+    createCustomer("Searchable", "active");
+    createCustomer("Searchable Tom", "locked");
+
+    client
+      .get()
+      .uri("/customers?name=SEARCHABLE&limit=2")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().exists(HttpHeaders.ETAG)
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(2)
+      .jsonPath("$[0].name").isEqualTo("Searchable")
+      .jsonPath("$[1].name").isEqualTo("Searchable Tom");
+    client
+      .get()
+      .uri("/customers?name=searchable&state=active")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(2)
+      .jsonPath("$[1].name").isEqualTo("Julia Searchable");
+  }
+
+  @Test
+  void shouldGetCustomersByBirthdateAndCountAges() {
+    for (var state : List.of("active", "locked")) {
+      client
+        .post()
+        .uri("/customers")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("""
+          {
+            "name": "Tom Mayer",
+            "birthdate": "1777-07-07",
+            "state": "%s"
+          }
+          """.formatted(state))
+        .exchange()
+        .expectStatus().isCreated();
+    }
+
+    client
+      .get()
+      .uri("/customers?birthdateFrom=1777-01-01&birthdateTo=1777-12-31&state=locked")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(1)
+      .jsonPath("$[0].state").isEqualTo("locked");
+    var age = Period.between(LocalDate.of(1777, Month.JULY, 7), LocalDate.now()).getYears();
+    client
+      .get()
+      .uri("/customers/stats/ages?bucketSize=1")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.bucketSize").isEqualTo(1)
+      .jsonPath("$.buckets[?(@.minAge == %d)].count".formatted(age)).isEqualTo(List.of(2));
+  }
+
+  @Test
+  void shouldAggregateCustomers() {
+    client
+      .post()
+      .uri("/customers")
+      .contentType(MediaType.APPLICATION_JSON)
+      .bodyValue("""
+        {
+          "name": "Tom Mayer",
+          "birthdate": "1555-05-05",
+          "state": "active"
+        }
+        """)
+      .exchange()
+      .expectStatus().isCreated();
+
+    client
+      .get()
+      .uri("/customers/stats/groups?by=birth-year")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.groupBy").isEqualTo("birth-year")
+      .jsonPath("$.groups[?(@.key == '1555')].count").isEqualTo(List.of(1))
+      .jsonPath("$.groups[?(@.key == '1555')].maxBirthdate").isEqualTo(List.of("1555-05-05"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "/customers?state=gelöscht",
+    "/customers?limit=0",
+    "/customers?cursor=invalid!",
+    "/customers?name=",
+    "/customers?birthdateFrom=2000-01-01&birthdateTo=1990-01-01",
+    "/customers?birthdateFrom=1990-01-01&limit=10",
+    "/customers/stats/ages?bucketSize=0",
+    "/customers/stats/groups?by=age",
+    "/customers?name=tom&cursor=AAAAAAAAAAAAAAAAAAAAAA"
+  })
+  void shouldNotGetCustomersWithInvalidParameters(String uri) {
+    client
+      .get()
+      .uri(uri)
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isBadRequest();
+  }
+
+  @Test
+  void shouldGetStatisticsAndDeleteByState() {
+    createCustomer("Tom Mayer", "locked");
+
+    client
+      .get()
+      .uri("/customers/stats")
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.count").isNumber()
+      .jsonPath("$.countsByState.locked").isNumber();
+    client
+      .delete()
+      .uri("/customers?state=locked")
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.count").isNumber();
+    client
+      .get()
+      .uri("/customers/stats")
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.countsByState.locked").isEqualTo(0);
+  }
+
+}
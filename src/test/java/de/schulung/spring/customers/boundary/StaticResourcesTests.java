@@ -5,11 +5,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -35,4 +37,16 @@ class StaticResourcesTests {
       .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_YAML));
   }
 
+  @Test
+  void shouldHavePrecompressedOpenApi() throws Exception {
+    mvc
+      .perform(
+        get("/openapi.yml")
+          .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+      )
+      .andExpect(status().isOk())
+      .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+      .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_YAML));
+  }
+
 }
@@ -0,0 +1,66 @@
+package de.schulung.spring.customers.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class CustomersAgeStatisticsTests {
+
+  private static final LocalDate TODAY = LocalDate.of(2025, Month.MAY, 12);
+
+  private static Customer customer(LocalDate birthdate, CustomerState state) {
+    return Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(birthdate)
+      .state(state)
+      .build();
+  }
+
+  @Test
+  void shouldCountByAgeBucketAndState() {
+    var counts = Stream
+      .of(
+        // 9 years old, one day before the 10th birthday
+        customer(LocalDate.of(2015, Month.MAY, 13), CustomerState.ACTIVE),
+        // 10 years old, on the birthday
+        customer(LocalDate.of(2015, Month.MAY, 12), CustomerState.ACTIVE),
+        customer(LocalDate.of(2015, Month.MAY, 12), CustomerState.LOCKED),
+        customer(LocalDate.of(1960, Month.JANUARY, 1), CustomerState.DISABLED),
+        // in the future
+        customer(LocalDate.of(2030, Month.JANUARY, 1), CustomerState.ACTIVE),
+        // not counted
+        customer(null, CustomerState.ACTIVE),
+        customer(LocalDate.of(1990, Month.JANUARY, 1), null)
+      )
+      .collect(CustomersAgeStatistics.countingByBirthdateAndState());
+
+    var statistics = CustomersAgeStatistics.of(counts, TODAY, 10);
+
+    assertThat(statistics.bucketSize()).isEqualTo(10);
+    assertThat(statistics.buckets())
+      .containsExactly(
+        new CustomersAgeStatistics.Bucket(0, 9, 2, Map.of(CustomerState.ACTIVE, 2L)),
+        new CustomersAgeStatistics.Bucket(10, 19, 2, Map.of(CustomerState.ACTIVE, 1L, CustomerState.LOCKED, 1L)),
+        new CustomersAgeStatistics.Bucket(60, 69, 1, Map.of(CustomerState.DISABLED, 1L))
+      );
+  }
+
+  @Test
+  void shouldCountSingleYears() {
+    var counts = Stream
+      .of(customer(LocalDate.of(2000, Month.MAY, 12), CustomerState.ACTIVE))
+      .collect(CustomersAgeStatistics.countingByBirthdateAndState());
+
+    assertThat(CustomersAgeStatistics.of(counts, TODAY, 1).buckets())
+      .extracting(CustomersAgeStatistics.Bucket::minAge, CustomersAgeStatistics.Bucket::maxAge)
+      .containsExactly(tuple(25, 25));
+  }
+
+}
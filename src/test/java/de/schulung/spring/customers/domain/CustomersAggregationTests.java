@@ -0,0 +1,113 @@
+package de.schulung.spring.customers.domain;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomersAggregationTests {
+
+  private static Customer customer(String name, LocalDate birthdate, CustomerState state) {
+    return Customer
+      .builder()
+      .name(name)
+      .birthdate(birthdate)
+      .state(state)
+      .build();
+  }
+
+  @Test
+  void shouldAggregateByState() {
+    var aggregation = Stream
+      .of(
+        customer("Tom Mayer", LocalDate.of(1995, Month.AUGUST, 8), CustomerState.ACTIVE),
+        customer("Julia Smith", LocalDate.of(1980, Month.JANUARY, 1), CustomerState.ACTIVE),
+        customer("Anna Meier", LocalDate.of(2000, Month.MAY, 12), CustomerState.DISABLED),
+        customer("Tim Mayer", null, CustomerState.DISABLED),
+        customer("Tina Mayer", LocalDate.of(1990, Month.JUNE, 6), null)
+      )
+      .collect(CustomersAggregation.aggregating(CustomersGroupBy.STATE));
+
+    assertThat(aggregation.groupBy()).isEqualTo(CustomersGroupBy.STATE);
+    assertThat(aggregation.groups())
+      .containsExactly(
+        new CustomersAggregation.Group(CustomerState.ACTIVE, 2, LocalDate.of(1980, Month.JANUARY, 1), LocalDate.of(1995, Month.AUGUST, 8)),
+        new CustomersAggregation.Group(CustomerState.DISABLED, 2, LocalDate.of(2000, Month.MAY, 12), LocalDate.of(2000, Month.MAY, 12)),
+        new CustomersAggregation.Group(null, 1, LocalDate.of(1990, Month.JUNE, 6), LocalDate.of(1990, Month.JUNE, 6))
+      );
+  }
+
+  @Test
+  void shouldAggregateByBirthYearAndNameInitial() {
+    var customers = List.of(
+      customer("Tom Mayer", LocalDate.of(1995, Month.AUGUST, 8), CustomerState.ACTIVE),
+      customer("tina Mayer", LocalDate.of(1995, Month.JANUARY, 1), CustomerState.LOCKED),
+      customer("Anna Meier", null, CustomerState.ACTIVE),
+      customer("", LocalDate.of(1970, Month.MAY, 12), CustomerState.ACTIVE)
+    );
+
+    assertThat(customers.stream().collect(CustomersAggregation.aggregating(CustomersGroupBy.BIRTH_YEAR)).groups())
+      .containsExactly(
+        new CustomersAggregation.Group(1970, 1, LocalDate.of(1970, Month.MAY, 12), LocalDate.of(1970, Month.MAY, 12)),
+        new CustomersAggregation.Group(1995, 2, LocalDate.of(1995, Month.JANUARY, 1), LocalDate.of(1995, Month.AUGUST, 8)),
+        new CustomersAggregation.Group(null, 1, null, null)
+      );
+    assertThat(customers.stream().collect(CustomersAggregation.aggregating(CustomersGroupBy.NAME_INITIAL)).groups())
+      .containsExactly(
+        new CustomersAggregation.Group("a", 1, null, null),
+        new CustomersAggregation.Group("t", 2, LocalDate.of(1995, Month.JANUARY, 1), LocalDate.of(1995, Month.AUGUST, 8)),
+        new CustomersAggregation.Group(null, 1, LocalDate.of(1970, Month.MAY, 12), LocalDate.of(1970, Month.MAY, 12))
+      );
+  }
+
+  // many groups (birth years) to resize the accumulators, many splits to combine them
+  @ParameterizedTest
+  @EnumSource(CustomersGroupBy.class)
+  void shouldAggregateInParallelLikeSequentially(CustomersGroupBy groupBy) {
+    var random = new Random(42);
+    var states = CustomerState.values();
+    var customers = IntStream
+      .range(0, 50_000)
+      .mapToObj(i -> customer(
+        (char) ('A' + random.nextInt(26)) + "name",
+        random.nextInt(20) == 0 ? null : LocalDate.ofEpochDay(random.nextInt(-20_000, 20_000)),
+        random.nextInt(20) == 0 ? null : states[random.nextInt(states.length)]
+      ))
+      .toList();
+
+    var sequential = customers.stream().collect(CustomersAggregation.aggregating(groupBy));
+    var parallel = customers.parallelStream().collect(CustomersAggregation.aggregating(groupBy));
+
+    assertThat(parallel).isEqualTo(sequential);
+    assertThat(sequential.groups().stream().mapToLong(CustomersAggregation.Group::count).sum())
+      .isEqualTo(customers.size());
+  }
+
+  @Test
+  void shouldCombineAggregations() {
+    var first = Stream
+      .of(customer("Tom Mayer", LocalDate.of(1995, Month.AUGUST, 8), CustomerState.ACTIVE))
+      .collect(CustomersAggregation.aggregating(CustomersGroupBy.STATE));
+    var second = Stream
+      .of(
+        customer("Julia Smith", LocalDate.of(1980, Month.JANUARY, 1), CustomerState.ACTIVE),
+        customer("Anna Meier", null, CustomerState.LOCKED)
+      )
+      .collect(CustomersAggregation.aggregating(CustomersGroupBy.STATE));
+
+    assertThat(first.combine(second).groups())
+      .containsExactly(
+        new CustomersAggregation.Group(CustomerState.ACTIVE, 2, LocalDate.of(1980, Month.JANUARY, 1), LocalDate.of(1995, Month.AUGUST, 8)),
+        new CustomersAggregation.Group(CustomerState.LOCKED, 1, null, null)
+      );
+  }
+
+}
@@ -0,0 +1,129 @@
+package de.schulung.spring.customers.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomersQueryPlannerTests {
+
+  private static final Customer TOM = Customer
+    .builder()
+    .uuid(UUID.randomUUID())
+    .name("Tom Mayer")
+    .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+    .state(CustomerState.ACTIVE)
+    .build();
+  private static final Customer JULIA = Customer
+    .builder()
+    .uuid(UUID.randomUUID())
+    .name("Julia Smith")
+    .birthdate(LocalDate.of(2001, Month.MARCH, 1))
+    .state(CustomerState.LOCKED)
+    .build();
+
+  private static CustomersSink sink(Set<CustomersSinkCapability> capabilities) {
+    var sink = mock(CustomersSink.class);
+    when(sink.getCapabilities()).thenReturn(capabilities);
+    when(sink.findAll()).thenAnswer(invocation -> Stream.of(TOM, JULIA));
+    when(sink.findAllByState(CustomerState.ACTIVE)).thenAnswer(invocation -> Stream.of(TOM));
+    return sink;
+  }
+
+  @Test
+  void shouldReportFullScans() {
+    var planner = new CustomersQueryPlanner(
+      sink(EnumSet.of(CustomersSinkCapability.ID, CustomersSinkCapability.STATE)),
+      false
+    );
+
+    assertThat(planner.getFullScans())
+      .containsExactlyInAnyOrder(
+        CustomersSinkCapability.NAME_PREFIX,
+        CustomersSinkCapability.NAME_SEARCH,
+        CustomersSinkCapability.BIRTHDATE_RANGE,
+        CustomersSinkCapability.PAGE,
+        CustomersSinkCapability.COUNT
+      );
+  }
+
+  @Test
+  void shouldFailOnFullScansInStrictMode() {
+    var sink = sink(EnumSet.of(CustomersSinkCapability.ID));
+    assertThatThrownBy(() -> new CustomersQueryPlanner(sink, true))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageContaining("STATE");
+  }
+
+  @Test
+  void shouldUseNativeQueryAndFilterRemainingCriteria() {
+    var sink = sink(EnumSet.of(CustomersSinkCapability.STATE));
+    var planner = new CustomersQueryPlanner(sink, false);
+
+    var result = planner.findAll(
+      CustomersFilter
+        .builder()
+        .state(CustomerState.ACTIVE)
+        .namePrefix("tom")
+        .build()
+    );
+
+    assertThat(result)
+      .containsExactly(TOM);
+    verify(sink).findAllByState(CustomerState.ACTIVE);
+    verify(sink, never()).findAll();
+    verify(sink, never()).findAllByNamePrefix("tom");
+  }
+
+  @Test
+  void shouldScanIfNoNativeQueryAvailable() {
+    var sink = sink(EnumSet.noneOf(CustomersSinkCapability.class));
+    var planner = new CustomersQueryPlanner(sink, false);
+
+    var result = planner.findAll(
+      CustomersFilter
+        .builder()
+        .birthdateFrom(LocalDate.of(2000, Month.JANUARY, 1))
+        .build()
+    );
+
+    assertThat(result)
+      .containsExactly(JULIA);
+    verify(sink).findAll();
+  }
+
+  @Test
+  void shouldNotMatchUnknownBirthdateInRange() {
+    var unknown = Customer
+      .builder()
+      .uuid(UUID.randomUUID())
+      .name("Tom Smith")
+      .state(CustomerState.ACTIVE)
+      .build();
+    var sink = sink(EnumSet.noneOf(CustomersSinkCapability.class));
+    when(sink.findAll()).thenAnswer(invocation -> Stream.of(TOM, unknown, JULIA));
+    var planner = new CustomersQueryPlanner(sink, false);
+
+    var result = planner.findAll(
+      CustomersFilter
+        .builder()
+        .birthdateTo(LocalDate.of(2010, Month.JANUARY, 1))
+        .build()
+    );
+
+    assertThat(result)
+      .containsExactly(TOM, JULIA);
+  }
+
+}
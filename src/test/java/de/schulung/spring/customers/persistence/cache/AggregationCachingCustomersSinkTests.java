@@ -0,0 +1,51 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AggregationCachingCustomersSinkTests {
+
+  CustomersSink delegate;
+  AggregationCachingCustomersSink sink;
+
+  @BeforeEach
+  void setUp() {
+    delegate = mock(CustomersSink.class);
+    sink = new AggregationCachingCustomersSink(
+      delegate,
+      Caffeine
+        .newBuilder()
+        .expireAfterWrite(Duration.ofHours(1))
+        .build()
+    );
+  }
+
+  @Test
+  void shouldAggregateOnlyOncePerDimension() {
+    var byState = new CustomersAggregation(CustomersGroupBy.STATE, List.of());
+    var byYear = new CustomersAggregation(CustomersGroupBy.BIRTH_YEAR, List.of());
+    when(delegate.aggregate(CustomersGroupBy.STATE)).thenReturn(byState);
+    when(delegate.aggregate(CustomersGroupBy.BIRTH_YEAR)).thenReturn(byYear);
+
+    assertThat(sink.aggregate(CustomersGroupBy.STATE)).isSameAs(byState);
+    assertThat(sink.aggregate(CustomersGroupBy.STATE)).isSameAs(byState);
+    assertThat(sink.aggregate(CustomersGroupBy.BIRTH_YEAR)).isSameAs(byYear);
+
+    verify(delegate, times(1)).aggregate(CustomersGroupBy.STATE);
+    verify(delegate, times(1)).aggregate(CustomersGroupBy.BIRTH_YEAR);
+  }
+
+}
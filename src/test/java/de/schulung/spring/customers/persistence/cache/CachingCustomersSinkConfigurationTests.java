@@ -0,0 +1,47 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import de.schulung.spring.customers.domain.CustomersSink;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+  properties = "application.persistence.cache.enabled=true"
+)
+@AutoConfigureTestDatabase
+class CachingCustomersSinkConfigurationTests {
+
+  @Autowired
+  CustomersSink sink;
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Test
+  void shouldDecorateSinkWithCache() {
+    assertThat(sink)
+      .isInstanceOf(CachingCustomersSink.class);
+  }
+
+  @Test
+  void shouldExportCacheMetrics() {
+    var uuid = UUID.randomUUID();
+    sink.findById(uuid);
+    sink.findById(uuid);
+
+    assertThat(
+      meterRegistry
+        .get("cache.gets")
+        .tag("cache", "customers")
+        .tag("result", "hit")
+        .functionCounter()
+        .count()
+    ).isGreaterThanOrEqualTo(1);
+  }
+
+}
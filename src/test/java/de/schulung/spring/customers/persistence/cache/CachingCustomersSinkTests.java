@@ -0,0 +1,121 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingCustomersSinkTests {
+
+  CustomersSink delegate;
+  CachingCustomersSink sink;
+
+  @BeforeEach
+  void setUp() {
+    delegate = mock(CustomersSink.class);
+    sink = new CachingCustomersSink(
+      delegate,
+      Caffeine
+        .newBuilder()
+        .maximumSize(100)
+        .build()
+    );
+  }
+
+  private static Customer customer(UUID uuid) {
+    return Customer
+      .builder()
+      .uuid(uuid)
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(CustomerState.ACTIVE)
+      .build();
+  }
+
+  @Test
+  void shouldReadThroughOnlyOnce() {
+    var uuid = UUID.randomUUID();
+    var customer = customer(uuid);
+    when(delegate.findById(uuid)).thenReturn(Optional.of(customer));
+
+    assertThat(sink.findById(uuid)).containsSame(customer);
+    assertThat(sink.findById(uuid)).containsSame(customer);
+
+    verify(delegate, times(1)).findById(uuid);
+  }
+
+  @Test
+  void shouldCacheMisses() {
+    var uuid = UUID.randomUUID();
+    when(delegate.findById(uuid)).thenReturn(Optional.empty());
+
+    assertThat(sink.findById(uuid)).isEmpty();
+    assertThat(sink.findById(uuid)).isEmpty();
+
+    verify(delegate, times(1)).findById(uuid);
+  }
+
+  @Test
+  void shouldInvalidateOnDelete() {
+    var uuid = UUID.randomUUID();
+    when(delegate.findById(uuid)).thenReturn(Optional.of(customer(uuid)));
+    when(delegate.delete(uuid)).thenReturn(Optional.of(customer(uuid)));
+    sink.findById(uuid);
+
+    assertThat(sink.delete(uuid)).isPresent();
+    when(delegate.findById(uuid)).thenReturn(Optional.empty());
+
+    assertThat(sink.findById(uuid)).isEmpty();
+    verify(delegate, times(2)).findById(uuid);
+  }
+
+  @Test
+  void shouldInvalidateOnDeleteByState() {
+    var uuid = UUID.randomUUID();
+    when(delegate.findById(uuid)).thenReturn(Optional.of(customer(uuid)));
+    sink.findById(uuid);
+
+    sink.deleteAllByState(CustomerState.ACTIVE);
+    sink.findById(uuid);
+
+    verify(delegate).deleteAllByState(CustomerState.ACTIVE);
+    verify(delegate, times(2)).findById(uuid);
+  }
+
+  @Test
+  void shouldDelegateNativeQueries() {
+    sink.findAllByState(CustomerState.LOCKED);
+    sink.countByState(CustomerState.LOCKED);
+
+    verify(delegate).findAllByState(CustomerState.LOCKED);
+    verify(delegate).countByState(CustomerState.LOCKED);
+  }
+
+  @Test
+  void shouldInvalidateOnUpdate() {
+    var uuid = UUID.randomUUID();
+    when(delegate.findById(uuid)).thenReturn(Optional.of(customer(uuid)));
+    var update = new CustomerStateUpdate(CustomerState.ACTIVE, 1L);
+    when(delegate.updateState(uuid, CustomerState.LOCKED, null)).thenReturn(Optional.of(update));
+    sink.findById(uuid);
+
+    assertThat(sink.updateState(uuid, CustomerState.LOCKED, null)).contains(update);
+    sink.findById(uuid);
+
+    verify(delegate, times(2)).findById(uuid);
+  }
+}
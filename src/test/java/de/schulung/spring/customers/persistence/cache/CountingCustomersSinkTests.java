@@ -0,0 +1,106 @@
+package de.schulung.spring.customers.persistence.cache;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.inmemory.InMemoryCustomersSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class CountingCustomersSinkTests {
+
+  CustomersSink delegate;
+  CountingCustomersSink sink;
+
+  @BeforeEach
+  void setUp() {
+    delegate = spy(new InMemoryCustomersSink());
+    sink = new CountingCustomersSink(delegate);
+  }
+
+  private static Customer customer(CustomerState state) {
+    return Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(state)
+      .build();
+  }
+
+  @Test
+  void shouldMaintainCountsWithoutQueryingDelegate() {
+    delegate.create(customer(CustomerState.ACTIVE));
+
+    assertThat(sink.count()).isOne();
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isOne();
+
+    sink.create(customer(CustomerState.LOCKED));
+    sink.createAll(List.of(customer(CustomerState.LOCKED), customer(CustomerState.DISABLED)));
+    sink.deleteAllByState(CustomerState.DISABLED);
+
+    assertThat(sink.count()).isEqualTo(3);
+    assertThat(sink.countByState(CustomerState.LOCKED)).isEqualTo(2);
+    assertThat(sink.countByState(CustomerState.DISABLED)).isZero();
+    verify(delegate, times(1)).count();
+    verify(delegate, times(1)).countByState(CustomerState.LOCKED);
+  }
+
+  @Test
+  void shouldDecrementCountByStateOnDelete() {
+    var customer = customer(CustomerState.LOCKED);
+    sink.create(customer);
+    sink.create(customer(CustomerState.ACTIVE));
+    assertThat(sink.countByState(CustomerState.LOCKED)).isOne();
+
+    assertThat(sink.delete(customer.getUuid())).isPresent();
+    assertThat(sink.delete(customer.getUuid())).isEmpty();
+
+    assertThat(sink.count()).isOne();
+    assertThat(sink.countByState(CustomerState.LOCKED)).isZero();
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isOne();
+    verify(delegate, times(1)).countByState(CustomerState.LOCKED);
+    // the deleted state is returned by the delete
+    verify(delegate, never()).findById(any());
+  }
+
+  @Test
+  void shouldMoveCountByStateOnUpdate() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isOne();
+
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.LOCKED, null)).isPresent();
+    customer.setState(CustomerState.DISABLED);
+    assertThat(sink.update(customer, null)).isPresent();
+
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isZero();
+    assertThat(sink.countByState(CustomerState.LOCKED)).isZero();
+    assertThat(sink.countByState(CustomerState.DISABLED)).isOne();
+    verify(delegate, times(1)).countByState(CustomerState.DISABLED);
+    verify(delegate, never()).findById(any());
+  }
+
+  @Test
+  void shouldReconcileWithDelegate() {
+    assertThat(sink.count()).isZero();
+    // bypassing the counting sink, e.g. by another instance
+    delegate.create(customer(CustomerState.ACTIVE));
+
+    sink.reconcile();
+
+    assertThat(sink.count()).isOne();
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isOne();
+  }
+
+}
@@ -0,0 +1,73 @@
+package de.schulung.spring.customers.persistence.database;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConcurrencyLimitingCustomersSinkTests {
+
+  CustomersSink delegate;
+  ConcurrencyLimitingCustomersSink sink;
+
+  @BeforeEach
+  void setUp() {
+    delegate = mock(CustomersSink.class);
+    sink = new ConcurrencyLimitingCustomersSink(delegate, 2, Duration.ofMillis(10));
+  }
+
+  @Test
+  void shouldReleasePermitAfterCall() {
+    var uuid = UUID.randomUUID();
+    when(delegate.delete(uuid)).thenReturn(Optional.of(Customer.builder().uuid(uuid).build()));
+
+    assertThat(sink.delete(uuid)).isPresent();
+    assertThat(sink.getAvailablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldReleasePermitOnException() {
+    when(delegate.count()).thenThrow(new IllegalStateException());
+
+    assertThatThrownBy(sink::count).isInstanceOf(IllegalStateException.class);
+    assertThat(sink.getAvailablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldHoldPermitUntilStreamIsClosed() {
+    when(delegate.findAllByState(CustomerState.ACTIVE)).thenReturn(Stream.<Customer>empty());
+
+    var customers = sink.findAllByState(CustomerState.ACTIVE);
+    assertThat(sink.getAvailablePermits()).isEqualTo(1);
+
+    customers.close();
+    assertThat(sink.getAvailablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldFailIfNoPermitIsAvailable() {
+    when(delegate.findAll()).thenAnswer(invocation -> Stream.<Customer>empty());
+
+    try (
+      var first = sink.findAll();
+      var second = sink.findAll()
+    ) {
+      assertThatThrownBy(sink::count)
+        .isInstanceOf(TransientDataAccessResourceException.class);
+    }
+    assertThat(sink.getAvailablePermits()).isEqualTo(2);
+  }
+
+}
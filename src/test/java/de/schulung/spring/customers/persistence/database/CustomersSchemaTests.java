@@ -0,0 +1,152 @@
+package de.schulung.spring.customers.persistence.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Asserts with H2's EXPLAIN that the hot queries (see JpaCustomersSink
+ * and CustomerEntityRepository) use the indexes of the migrations.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+class CustomersSchemaTests {
+
+  private static final String SELECT = "SELECT " + CustomerRowMapper.COLUMNS + " FROM CUSTOMERS";
+  private static final String UUID = "'7f8d3a6e-1f0a-4c55-9d0c-0b2b7d1a4e11'";
+
+  @Autowired
+  JdbcClient jdbc;
+
+  private String explain(String sql) {
+    return jdbc
+      .sql("EXPLAIN " + sql)
+      .query(String.class)
+      .single();
+  }
+
+  @Test
+  void shouldBeMigratedByFlyway() {
+    assertThat(
+      jdbc
+        .sql("SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"success\" AND \"version\" IS NOT NULL ORDER BY \"installed_rank\"")
+        .query(String.class)
+        .list()
+    ).containsExactly("1", "2", "3", "4", "5");
+  }
+
+  // the ETag and the versioned updates rely on a version for each customer
+  @Test
+  void shouldRequireVersion() {
+    assertThat(
+      jdbc
+        .sql("SELECT IS_NULLABLE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = 'CUSTOMERS' AND COLUMN_NAME = 'VERSION'")
+        .query(String.class)
+        .single()
+    ).isEqualTo("NO");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    SELECT + " WHERE STATE = 'l'",
+    "SELECT COUNT(*) FROM CUSTOMERS WHERE STATE = 'l'",
+    "SELECT UUID, VERSION FROM CUSTOMERS WHERE STATE = 'l'",
+    "DELETE FROM CUSTOMERS WHERE STATE = 'l'",
+    "UPDATE CUSTOMERS SET STATE = 'd', VERSION = VERSION + 1 WHERE STATE = 'l'"
+  })
+  void shouldUseStateIndex(String sql) {
+    assertThat(explain(sql))
+      .contains("IDX_CUSTOMERS_STATE_UUID")
+      .doesNotContain("tableScan");
+  }
+
+  // the index delivers the rows in the order of the uuids, there is no sort
+  @ParameterizedTest
+  @ValueSource(strings = {
+    SELECT + " WHERE STATE = 'l' ORDER BY STATE, UUID FETCH FIRST 100 ROWS ONLY",
+    SELECT + " WHERE STATE = 'l' AND UUID > " + UUID + " ORDER BY STATE, UUID FETCH FIRST 100 ROWS ONLY"
+  })
+  void shouldUseStateIndexForKeysetPagination(String sql) {
+    assertThat(explain(sql))
+      .contains("IDX_CUSTOMERS_STATE_UUID")
+      .contains("index sorted")
+      .doesNotContain("tableScan");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    SELECT + " ORDER BY UUID FETCH FIRST 100 ROWS ONLY",
+    SELECT + " WHERE UUID > " + UUID + " ORDER BY UUID FETCH FIRST 100 ROWS ONLY"
+  })
+  void shouldUsePrimaryKeyForKeysetPagination(String sql) {
+    assertThat(explain(sql))
+      .contains("PRIMARY_KEY")
+      .contains("index sorted")
+      .doesNotContain("tableScan");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    SELECT + " WHERE BIRTH_DATE BETWEEN DATE '1990-01-01' AND DATE '1999-12-31'",
+    SELECT + " WHERE BIRTH_DATE >= DATE '1990-01-01'",
+    SELECT + " WHERE BIRTH_DATE <= DATE '1999-12-31'",
+    "UPDATE CUSTOMERS SET STATE = 'd', VERSION = VERSION + 1 WHERE (STATE IS NULL OR STATE <> 'd') AND BIRTH_DATE <= DATE '1999-12-31'"
+  })
+  void shouldUseBirthdateIndex(String sql) {
+    assertThat(explain(sql))
+      .contains("IDX_CUSTOMERS_BIRTH_DATE_STATE")
+      .doesNotContain("tableScan");
+  }
+
+  // see JpaCustomersSink#countByBirthdateAndState
+  @Test
+  void shouldGroupByBirthdateAndStateInIndexOrder() {
+    assertThat(
+      explain(
+        "SELECT BIRTH_DATE, STATE, COUNT(*) FROM CUSTOMERS"
+          + " WHERE BIRTH_DATE IS NOT NULL AND STATE IS NOT NULL"
+          + " GROUP BY BIRTH_DATE, STATE"
+      )
+    )
+      .contains("IDX_CUSTOMERS_BIRTH_DATE_STATE")
+      .contains("group sorted");
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    SELECT + " WHERE NAME_LOWER LIKE 'tom%' ESCAPE '\\'",
+    SELECT + " USE INDEX (IDX_CUSTOMERS_NAME_LOWER) WHERE NAME_LOWER LIKE 'tom%' ESCAPE '\\' AND STATE = 'a' ORDER BY NAME_LOWER FETCH FIRST 100 ROWS ONLY",
+    "UPDATE CUSTOMERS SET STATE = 'd', VERSION = VERSION + 1 WHERE (STATE IS NULL OR STATE <> 'd') AND NAME_LOWER LIKE 'tom%' ESCAPE '\\'"
+  })
+  void shouldUseNameIndexForPrefixes(String sql) {
+    assertThat(explain(sql))
+      .contains("IDX_CUSTOMERS_NAME_LOWER")
+      .doesNotContain("tableScan");
+  }
+
+  // word prefixes and substrings cannot use the index as a range, but it delivers the rows sorted
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "'% tom%'",
+    "'%tom%'"
+  })
+  void shouldReadNameIndexInOrderForInfixes(String pattern) {
+    assertThat(explain(SELECT + " USE INDEX (IDX_CUSTOMERS_NAME_LOWER) WHERE NAME_LOWER LIKE " + pattern + " ESCAPE '\\' ORDER BY NAME_LOWER FETCH FIRST 100 ROWS ONLY"))
+      .contains("IDX_CUSTOMERS_NAME_LOWER")
+      .contains("index sorted");
+  }
+
+  @Test
+  void shouldUsePrimaryKeyForSingleCustomers() {
+    assertThat(explain(SELECT + " WHERE UUID = " + UUID))
+      .contains("PRIMARY_KEY")
+      .doesNotContain("tableScan");
+  }
+
+}
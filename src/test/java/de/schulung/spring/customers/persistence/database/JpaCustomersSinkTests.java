@@ -0,0 +1,348 @@
+package de.schulung.spring.customers.persistence.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// with the connection pool, instead of a replaced embedded database
+@SpringBootTest(
+  properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.datasource.url=jdbc:h2:mem:jpa-customers-sink-tests",
+    "spring.datasource.username=sa",
+    "spring.datasource.password="
+  }
+)
+class JpaCustomersSinkTests {
+
+  @Autowired
+  CustomersSink sink;
+  @Autowired
+  EntityManagerFactory entityManagerFactory;
+  @Autowired
+  DataSource dataSource;
+
+  Statistics statistics;
+  final List<Customer> customers = new ArrayList<>();
+
+  private Customer create(String name, CustomerState state) {
+    var customer = Customer
+      .builder()
+      .name(name)
+      .birthdate(LocalDate.of(1990, Month.MAY, 1))
+      .state(state)
+      .build();
+    sink.create(customer);
+    customers.add(customer);
+    return customer;
+  }
+
+  @BeforeEach
+  void setup() {
+    create("50%_off Tom", CustomerState.ACTIVE);
+    create("50 Julia", CustomerState.LOCKED);
+    create("Ann", CustomerState.DISABLED);
+    statistics = entityManagerFactory
+      .unwrap(SessionFactory.class)
+      .getStatistics();
+    statistics.clear();
+  }
+
+  @AfterEach
+  void tearDown() {
+    sink.deleteAll(customers.stream().map(Customer::getUuid).toList());
+  }
+
+  // the persistence context is not involved at all
+  @Test
+  void shouldReadWithoutLoadingEntities() {
+    try (var all = sink.findAll()) {
+      assertThat(all.map(Customer::getUuid))
+        .containsAll(customers.stream().map(Customer::getUuid).toList());
+    }
+    try (var locked = sink.findAllByState(CustomerState.LOCKED)) {
+      assertThat(locked.map(Customer::getName)).containsExactly("50 Julia");
+    }
+    assertThat(sink.findPage(null, null, 10)).hasSize(3);
+    var customer = customers.getFirst();
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> {
+        assertThat(c.getName()).isEqualTo(customer.getName());
+        assertThat(c.getBirthdate()).isEqualTo(customer.getBirthdate());
+        assertThat(c.getState()).isEqualTo(CustomerState.ACTIVE);
+        assertThat(c.getVersion()).isEqualTo(customer.getVersion());
+      });
+
+    assertThat(statistics.getEntityLoadCount()).isZero();
+    assertThat(statistics.getEntityFetchCount()).isZero();
+  }
+
+  private int activeConnections() {
+    return ((HikariDataSource) dataSource)
+      .getHikariPoolMXBean()
+      .getActiveConnections();
+  }
+
+  @Test
+  void shouldReturnConnectionWhenStreamIsClosedEarly() {
+    try (var all = sink.findAll()) {
+      assertThat(all.findFirst()).isPresent();
+      assertThat(activeConnections()).isOne();
+    }
+
+    assertThat(activeConnections()).isZero();
+    assertThat(TransactionSynchronizationManager.isActualTransactionActive()).isFalse();
+  }
+
+  @Test
+  void shouldReturnConnectionWhenConsumingStreamFails() {
+    assertThatThrownBy(() -> {
+      try (var all = sink.findAll()) {
+        all.forEach(customer -> {
+          throw new IllegalStateException("Client disconnected");
+        });
+      }
+    }).isInstanceOf(IllegalStateException.class);
+
+    assertThat(activeConnections()).isZero();
+    assertThat(TransactionSynchronizationManager.isActualTransactionActive()).isFalse();
+  }
+
+  @Test
+  void shouldEscapeWildcardsInNamePrefix() {
+    try (var result = sink.findAllByNamePrefix("50%_")) {
+      assertThat(result.map(Customer::getName)).containsExactly("50%_off Tom");
+    }
+    try (var result = sink.findAllByNamePrefix("50")) {
+      assertThat(result).hasSize(2);
+    }
+  }
+
+  @Test
+  void shouldSearchByNameRanked() {
+    assertThat(sink.searchByName("50%_", null, 10))
+      .extracting(Customer::getName)
+      .containsExactly("50%_off Tom");
+    // the database might contain other customers
+    assertThat(sink.searchByName("ANN", CustomerState.DISABLED, 10))
+      .extracting(Customer::getName)
+      .first()
+      .isEqualTo("Ann");
+    assertThat(sink.searchByName("julia", CustomerState.LOCKED, 100))
+      .extracting(Customer::getName)
+      .contains("50 Julia");
+    // prefix matches in the order of the index
+    assertThat(sink.searchByName("50", null, 2))
+      .extracting(Customer::getName)
+      .containsExactly("50 Julia", "50%_off Tom");
+    assertThat(statistics.getEntityLoadCount()).isZero();
+  }
+
+  // the database might contain other customers
+  @Test
+  void shouldCountByBirthdateAndStateWithoutLoadingEntities() {
+    var birthdate = LocalDate.of(1990, Month.MAY, 1);
+    var before = sink.countByBirthdateAndState().getOrDefault(birthdate, Map.of());
+    create("Julia Mayer", CustomerState.LOCKED);
+
+    assertThat(sink.countByBirthdateAndState())
+      .hasEntrySatisfying(birthdate, counts -> {
+        assertThat(counts.get(CustomerState.LOCKED)).isEqualTo(before.getOrDefault(CustomerState.LOCKED, 0L) + 1);
+        assertThat(counts.get(CustomerState.ACTIVE)).isEqualTo(before.getOrDefault(CustomerState.ACTIVE, 0L));
+      });
+    try (var customers = sink.findAllByBirthdateBetween(birthdate, birthdate)) {
+      assertThat(customers.map(Customer::getUuid))
+        .containsAll(this.customers.stream().map(Customer::getUuid).toList());
+    }
+    try (var customers = sink.findAllByBirthdateBetween(birthdate.plusDays(1), null)) {
+      assertThat(customers.map(Customer::getUuid))
+        .doesNotContainAnyElementsOf(this.customers.stream().map(Customer::getUuid).toList());
+    }
+    assertThat(statistics.getEntityLoadCount()).isZero();
+  }
+
+  // the database might contain other customers
+  @Test
+  void shouldAggregateWithoutLoadingEntities() {
+    var before = sink.aggregate(CustomersGroupBy.NAME_INITIAL);
+    create("Zoe Zimmermann", CustomerState.LOCKED);
+
+    var after = sink.aggregate(CustomersGroupBy.NAME_INITIAL);
+    assertThat(after.groups())
+      .filteredOn(group -> "z".equals(group.key()))
+      .singleElement()
+      .satisfies(group -> assertThat(group.count()).isEqualTo(count(before, "z") + 1));
+    // "50%_off Tom" and "50 Julia"
+    assertThat(count(after, "5")).isGreaterThanOrEqualTo(2);
+    assertThat(sink.aggregate(CustomersGroupBy.BIRTH_YEAR).groups())
+      .filteredOn(group -> Integer.valueOf(1990).equals(group.key()))
+      .singleElement()
+      .satisfies(group -> assertThat(group.count()).isGreaterThanOrEqualTo(4));
+    assertThat(sink.aggregate(CustomersGroupBy.STATE).groups())
+      .extracting(CustomersAggregation.Group::key)
+      .contains(CustomerState.ACTIVE, CustomerState.LOCKED, CustomerState.DISABLED);
+    assertThat(statistics.getEntityLoadCount()).isZero();
+  }
+
+  private static long count(CustomersAggregation aggregation, Object key) {
+    return aggregation
+      .groups()
+      .stream()
+      .filter(group -> key.equals(group.key()))
+      .mapToLong(CustomersAggregation.Group::count)
+      .sum();
+  }
+
+  // the database compares the bytes unsigned, unlike UUID.compareTo
+  @Test
+  void shouldFindPagesOrderedByUuid() {
+    var sorted = customers
+      .stream()
+      .map(Customer::getUuid)
+      .sorted(
+        Comparator
+          .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+          .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned)
+      )
+      .toList();
+
+    var first = sink.findPage(null, null, 2);
+    var second = sink.findPage(null, first.getLast().getUuid(), 2);
+
+    assertThat(first).extracting(Customer::getUuid).containsExactlyElementsOf(sorted.subList(0, 2));
+    assertThat(second).extracting(Customer::getUuid).containsExactly(sorted.get(2));
+    assertThat(sink.findPage(CustomerState.DISABLED, null, 10))
+      .extracting(Customer::getName)
+      .containsExactly("Ann");
+    assertThat(sink.findPage(null, sorted.getLast(), 10)).isEmpty();
+  }
+
+  @Test
+  void shouldNotFindUnknownCustomer() {
+    assertThat(sink.findById(UUID.randomUUID())).isEmpty();
+  }
+
+  @Test
+  void shouldDecodeStatesLikeConverter() {
+    var converter = new CustomerStateConverter();
+    for (var state : CustomerState.values()) {
+      assertThat(CustomerRowMapper.decodeState(converter.convertToDatabaseColumn(state)))
+        .isEqualTo(state);
+    }
+    assertThat(CustomerRowMapper.decodeState(null)).isNull();
+    assertThatThrownBy(() -> CustomerRowMapper.decodeState("x"))
+      .isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(() -> CustomerRowMapper.decodeState("ab"))
+      .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void shouldUpdateStateWithSingleStatement() {
+    var customer = customers.getFirst();
+
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.LOCKED, customer.getVersion()))
+      .contains(new CustomerStateUpdate(CustomerState.ACTIVE, customer.getVersion() + 1));
+    assertThat(sink.updateState(customers.get(1).getUuid(), CustomerState.DISABLED, null))
+      .contains(new CustomerStateUpdate(CustomerState.LOCKED, customers.get(1).getVersion() + 1));
+
+    // the previous states and versions are returned by the updates (JDBC), not read with Hibernate
+    assertThat(statistics.getPrepareStatementCount()).isZero();
+    assertThat(statistics.getEntityLoadCount()).isZero();
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getState()).isEqualTo(CustomerState.LOCKED));
+    assertThatThrownBy(() -> sink.updateState(customer.getUuid(), CustomerState.DISABLED, customer.getVersion()))
+      .isInstanceOf(OptimisticLockingFailureException.class);
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.LOCKED, null))
+      .as("unchanged")
+      .contains(new CustomerStateUpdate(CustomerState.LOCKED, customer.getVersion() + 1));
+    assertThat(sink.updateState(UUID.randomUUID(), CustomerState.LOCKED, null))
+      .isEmpty();
+  }
+
+  @Test
+  void shouldUpdateChangedColumnsWithOptimisticLocking() {
+    var customer = customers.get(1);
+    var version = customer.getVersion();
+    var update = Customer
+      .builder()
+      .uuid(customer.getUuid())
+      .name("Julia Mayer")
+      .birthdate(customer.getBirthdate())
+      .state(customer.getState())
+      .build();
+
+    assertThat(sink.update(update, version))
+      .hasValueSatisfying(previous -> assertThat(previous.getName()).isEqualTo("50 Julia"));
+    assertThat(update.getVersion()).isEqualTo(version + 1);
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> {
+        assertThat(c.getName()).isEqualTo("Julia Mayer");
+        assertThat(c.getVersion()).isEqualTo(version + 1);
+      });
+    assertThatThrownBy(() -> sink.update(update, version))
+      .isInstanceOf(OptimisticLockingFailureException.class);
+    // unchanged, nothing to flush
+    assertThat(sink.update(update, null)).isPresent();
+    assertThat(update.getVersion()).isEqualTo(version + 1);
+    update.setUuid(UUID.randomUUID());
+    assertThat(sink.update(update, null)).isEmpty();
+  }
+
+  @Test
+  void shouldUpdateAllStatesWithSingleStatement() {
+    var filter = CustomersFilter
+      .builder()
+      .namePrefix("50")
+      .birthdateFrom(LocalDate.of(1990, Month.JANUARY, 1))
+      .build();
+
+    // Tom (active) and Julia (locked), the database might contain other customers
+    assertThat(sink.updateAllStates(filter, CustomerState.DISABLED)).isGreaterThanOrEqualTo(2);
+    assertThat(sink.updateAllStates(filter, CustomerState.DISABLED)).isZero();
+    assertThat(statistics.getEntityLoadCount()).isZero();
+    assertThat(sink.findById(customers.getFirst().getUuid()))
+      .hasValueSatisfying(c -> {
+        assertThat(c.getState()).isEqualTo(CustomerState.DISABLED);
+        assertThat(c.getVersion()).isEqualTo(customers.getFirst().getVersion() + 1);
+      });
+
+    var uuids = customers.stream().map(Customer::getUuid).toList();
+    assertThat(sink.updateAllStates(uuids, CustomerState.ACTIVE)).isEqualTo(3);
+    assertThat(
+      sink.updateAllStates(
+        CustomersFilter.builder().state(CustomerState.ACTIVE).build(),
+        CustomerState.ACTIVE
+      )
+    ).isZero();
+    try (var active = sink.findAllByState(CustomerState.ACTIVE)) {
+      assertThat(active.map(Customer::getUuid)).containsAll(uuids);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package de.schulung.spring.customers.persistence.file;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomersSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("file")
+class FileCustomersSinkConfigurationTests {
+
+  @TempDir
+  static Path directory;
+
+  @DynamicPropertySource
+  static void configureDirectory(DynamicPropertyRegistry registry) {
+    registry.add("application.persistence.file.directory", directory::toString);
+  }
+
+  @Autowired
+  CustomersSink sink;
+  @Autowired
+  ApplicationContext context;
+
+  @Test
+  void shouldUseFileSinkWithoutDatabase() {
+    assertThat(sink)
+      .isInstanceOf(FileCustomersSink.class);
+    assertThat(context.getBeanNamesForType(DataSource.class))
+      .isEmpty();
+  }
+
+  @Test
+  void shouldPersistIntoDirectory() {
+    var customer = Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(2005, 5, 12))
+      .build();
+    sink.create(customer);
+
+    assertThat(directory).isNotEmptyDirectory();
+    assertThat(sink.findById(customer.getUuid())).isPresent();
+  }
+
+}
@@ -0,0 +1,235 @@
+package de.schulung.spring.customers.persistence.file;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.persistence.inmemory.InMemoryCustomersSink;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileCustomersSinkTests {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir
+  Path directory;
+  FileCustomersSink sink;
+
+  @BeforeEach
+  void setUp() {
+    sink = new FileCustomersSink(directory, SEGMENT_SIZE, false);
+  }
+
+  @AfterEach
+  void tearDown() {
+    sink.close();
+  }
+
+  private void reopen() {
+    sink.close();
+    sink = new FileCustomersSink(directory, SEGMENT_SIZE, false);
+  }
+
+  private static Customer customer(CustomerState state) {
+    return Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(state)
+      .build();
+  }
+
+  @Test
+  void shouldStoreAndDecodeCustomer() {
+    var customer = customer(CustomerState.LOCKED);
+    customer.setName("Jörg Müller");
+    sink.create(customer);
+
+    assertThat(customer.getUuid()).isNotNull();
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c)
+        .usingRecursiveComparison()
+        .isEqualTo(customer)
+      );
+    assertThat(sink.findById(UUID.randomUUID()))
+      .isEmpty();
+  }
+
+  @Test
+  void shouldMaintainStateIndexes() {
+    var active = customer(CustomerState.ACTIVE);
+    var locked = customer(CustomerState.LOCKED);
+    sink.create(active);
+    sink.create(locked);
+
+    assertThat(sink.findAllByState(CustomerState.ACTIVE))
+      .extracting(Customer::getUuid)
+      .containsExactly(active.getUuid());
+    assertThat(sink.countByState(CustomerState.LOCKED))
+      .isOne();
+
+    assertThat(sink.delete(locked.getUuid()))
+      .isPresent();
+    assertThat(sink.delete(locked.getUuid()))
+      .isEmpty();
+
+    assertThat(sink.findAllByState(CustomerState.LOCKED))
+      .isEmpty();
+    assertThat(sink.countByState(CustomerState.LOCKED))
+      .isZero();
+    assertThat(sink.count())
+      .isOne();
+  }
+
+  // same checksum as computed from the decoded customers
+  @Test
+  void shouldCalculateChecksumFromVersions() {
+    var reference = new InMemoryCustomersSink();
+    IntStream.range(0, 10).forEach(i -> {
+      var customer = customer(CustomerState.ACTIVE);
+      sink.create(customer);
+      reference.create(customer);
+    });
+
+    assertThat(sink.checksum(null))
+      .isEqualTo(reference.checksum(null));
+  }
+
+  @Test
+  void shouldRebuildIndexOnStartup() {
+    var kept = customer(CustomerState.ACTIVE);
+    var deleted = customer(CustomerState.LOCKED);
+    sink.create(kept);
+    sink.create(deleted);
+    sink.delete(deleted.getUuid());
+
+    reopen();
+
+    assertThat(sink.findById(kept.getUuid())).isPresent();
+    assertThat(sink.findById(deleted.getUuid())).isEmpty();
+    assertThat(sink.count()).isOne();
+    assertThat(sink.countByState(CustomerState.LOCKED)).isZero();
+  }
+
+  @Test
+  void shouldIgnoreTornRecordOnStartup() throws IOException {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    sink.close();
+    // a record without a valid body after the customer, as left by a crash while writing
+    try (
+      var segments = Files.list(directory);
+      var channel = FileChannel.open(segments.findFirst().orElseThrow(), StandardOpenOption.WRITE)
+    ) {
+      var tornRecord = ByteBuffer.allocate(12).putInt(40).putInt(4711).putInt(-1).flip();
+      channel.write(tornRecord, CustomerRecord.sizeOfCreate(CustomerRecord.encodeName(customer)));
+    }
+    sink = new FileCustomersSink(directory, SEGMENT_SIZE, false);
+
+    assertThat(sink.count()).isOne();
+    var created = customer(CustomerState.ACTIVE);
+    sink.create(created);
+    reopen();
+    assertThat(sink.findById(customer.getUuid())).isPresent();
+    assertThat(sink.findById(created.getUuid())).isPresent();
+  }
+
+  // the second customer does not fit into the rest of the first segment
+  @ParameterizedTest
+  @ValueSource(ints = {1, 2, 3})
+  void shouldRecoverSegmentFilledToNearlyItsEnd(int unusedBytes) {
+    var first = customer(CustomerState.ACTIVE);
+    var second = customer(CustomerState.LOCKED);
+    var segmentSize = CustomerRecord.sizeOfCreate(CustomerRecord.encodeName(first)) + unusedBytes;
+    var segments = directory.resolve("segments");
+    sink.close();
+    sink = new FileCustomersSink(segments, segmentSize, false);
+    sink.create(first);
+    sink.create(second);
+    sink.close();
+
+    sink = new FileCustomersSink(segments, segmentSize, false);
+
+    assertThat(sink.findById(first.getUuid())).isPresent();
+    assertThat(sink.findById(second.getUuid())).isPresent();
+    assertThat(sink.count()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldCompactDeletedCustomers() {
+    var customers = IntStream
+      .range(0, 200)
+      .mapToObj(i -> customer(i % 2 == 0 ? CustomerState.ACTIVE : CustomerState.DISABLED))
+      .toList();
+    sink.createAll(customers);
+    var segments = sink.getSegmentCount();
+    sink.deleteAllByState(CustomerState.DISABLED);
+
+    assertThat(sink.compactIfNeeded()).isTrue();
+
+    assertThat(sink.getSegmentCount()).isLessThan(segments);
+    assertThat(sink.getTotalBytes()).isEqualTo(sink.getLiveBytes());
+    assertThat(sink.count()).isEqualTo(100);
+    assertThat(sink.findAllByState(CustomerState.ACTIVE)).hasSize(100);
+    assertThat(sink.findById(customers.getFirst().getUuid())).isPresent();
+    reopen();
+    assertThat(sink.count()).isEqualTo(100);
+    assertThat(sink.countByState(CustomerState.DISABLED)).isZero();
+  }
+
+  @Test
+  void shouldNotCompactLiveCustomers() {
+    IntStream.range(0, 200).forEach(i -> sink.create(customer(CustomerState.ACTIVE)));
+
+    assertThat(sink.compactIfNeeded()).isFalse();
+  }
+
+  @Test
+  void shouldAppendUpdatesAndReplayThem() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    var update = customer(CustomerState.LOCKED);
+    update.setUuid(customer.getUuid());
+    update.setName("Julia Mayer");
+
+    assertThat(sink.update(update, 0L)).isPresent();
+    assertThat(update.getVersion()).isOne();
+    assertThatThrownBy(() -> sink.update(update, 0L))
+      .isInstanceOf(OptimisticLockingFailureException.class);
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.DISABLED, 1L))
+      .contains(new CustomerStateUpdate(CustomerState.LOCKED, 2L));
+    assertThat(sink.updateState(UUID.randomUUID(), CustomerState.DISABLED, null))
+      .isEmpty();
+
+    reopen();
+
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> {
+        assertThat(c.getName()).isEqualTo("Julia Mayer");
+        assertThat(c.getState()).isEqualTo(CustomerState.DISABLED);
+        assertThat(c.getVersion()).isEqualTo(2L);
+      });
+    assertThat(sink.count()).isOne();
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isZero();
+    assertThat(sink.countByState(CustomerState.DISABLED)).isOne();
+  }
+}
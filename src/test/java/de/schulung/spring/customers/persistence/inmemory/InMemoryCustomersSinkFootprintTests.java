@@ -0,0 +1,60 @@
+package de.schulung.spring.customers.persistence.inmemory;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersSink;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.time.LocalDate;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Compares the retained heap of both in-memory sinks, measured
+ * as the difference of the used heap after full GCs. Only runs
+ * with the footprint-tests profile (see pom.xml).
+ */
+class InMemoryCustomersSinkFootprintTests {
+
+  private static final int CUSTOMERS = 200_000;
+
+  private static long usedHeap() {
+    var memory = ManagementFactory.getMemoryMXBean();
+    for (var i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  private static long bytesPerCustomer(Supplier<CustomersSink> factory) {
+    var before = usedHeap();
+    var sink = factory.get();
+    for (var i = 0; i < CUSTOMERS; i++) {
+      sink.create(
+        Customer
+          .builder()
+          .name("Customer " + i)
+          .birthdate(LocalDate.ofEpochDay(i % 20_000))
+          .state(CustomerState.values()[i % 3])
+          .build()
+      );
+    }
+    var after = usedHeap();
+    Reference.reachabilityFence(sink);
+    return (after - before) / CUSTOMERS;
+  }
+
+  @Test
+  void shouldPackCustomersIntoLessMemory() {
+    var objects = bytesPerCustomer(InMemoryCustomersSink::new);
+    var packed = bytesPerCustomer(PackedInMemoryCustomersSink::new);
+
+    assertThat(packed * 2)
+      .as("heap per customer: %d bytes (objects), %d bytes (packed)", objects, packed)
+      .isLessThan(objects);
+  }
+
+}
@@ -0,0 +1,338 @@
+package de.schulung.spring.customers.persistence.inmemory;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerNameSearch;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersChecksum;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryCustomersSinkTests {
+
+  InMemoryCustomersSink sink = new InMemoryCustomersSink();
+
+  private static Customer customer(CustomerState state) {
+    return Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(state)
+      .build();
+  }
+
+  @Test
+  void shouldFindCustomerById() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+
+    assertThat(sink.findById(customer.getUuid()))
+      .containsSame(customer);
+    assertThat(sink.findById(UUID.randomUUID()))
+      .isEmpty();
+  }
+
+  @Test
+  void shouldMaintainStateIndexes() {
+    var active = customer(CustomerState.ACTIVE);
+    var locked = customer(CustomerState.LOCKED);
+    sink.create(active);
+    sink.create(locked);
+
+    assertThat(sink.findAllByState(CustomerState.ACTIVE))
+      .containsExactly(active);
+    assertThat(sink.countByState(CustomerState.LOCKED))
+      .isOne();
+
+    assertThat(sink.delete(locked.getUuid()))
+      .isPresent();
+    assertThat(sink.delete(locked.getUuid()))
+      .isEmpty();
+
+    assertThat(sink.findAllByState(CustomerState.LOCKED))
+      .isEmpty();
+    assertThat(sink.countByState(CustomerState.LOCKED))
+      .isZero();
+    assertThat(sink.findPage(CustomerState.LOCKED, null, 10))
+      .isEmpty();
+  }
+
+  @Test
+  void shouldFindPagesOrderedByUuid() {
+    for (int i = 0; i < 10; i++) {
+      sink.create(customer(i % 2 == 0 ? CustomerState.ACTIVE : CustomerState.DISABLED));
+    }
+
+    var uuids = new ArrayList<UUID>();
+    UUID after = null;
+    do {
+      var page = sink.findPage(CustomerState.ACTIVE, after, 2);
+      page.forEach(c -> uuids.add(c.getUuid()));
+      after = page.isEmpty() ? null : page.getLast().getUuid();
+    } while (null != after);
+
+    assertThat(uuids)
+      .hasSize(5)
+      .isSorted();
+  }
+
+  @Test
+  void shouldKeepIndexesConsistentOnConcurrentModification() {
+    IntStream
+      .range(0, 10_000)
+      .parallel()
+      .forEach(i -> {
+        var customer = customer(CustomerState.values()[i % CustomerState.values().length]);
+        sink.create(customer);
+        if (i % 2 == 0) {
+          sink.delete(customer.getUuid());
+        }
+      });
+
+    assertThat(sink.count())
+      .isEqualTo(5_000);
+    for (var state : CustomerState.values()) {
+      assertThat(sink.countByState(state))
+        .isEqualTo(sink.findAllByState(state).count());
+    }
+    assertThat(sink.findPage(null, null, 10_000))
+      .hasSize(5_000);
+  }
+
+  @Test
+  void shouldUpdateWithOptimisticLocking() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    var update = customer(CustomerState.LOCKED);
+    update.setUuid(customer.getUuid());
+    update.setName("Julia Mayer");
+
+    assertThat(sink.update(update, 0L)).isPresent();
+    assertThat(update.getVersion()).isOne();
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Julia Mayer"));
+    // readers keep their instance
+    assertThat(customer.getName()).isEqualTo("Tom Mayer");
+    assertThat(sink.findAllByState(CustomerState.LOCKED))
+      .extracting(Customer::getUuid)
+      .containsExactly(customer.getUuid());
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isZero();
+    assertThatThrownBy(() -> sink.update(update, 0L))
+      .isInstanceOf(OptimisticLockingFailureException.class);
+
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.LOCKED, 1L))
+      .as("unchanged")
+      .contains(new CustomerStateUpdate(CustomerState.LOCKED, 1L));
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.DISABLED, null))
+      .contains(new CustomerStateUpdate(CustomerState.LOCKED, 2L));
+    assertThat(sink.findPage(CustomerState.DISABLED, null, 10))
+      .extracting(Customer::getUuid)
+      .containsExactly(customer.getUuid());
+    assertThat(sink.updateState(UUID.randomUUID(), CustomerState.DISABLED, null))
+      .isEmpty();
+    update.setUuid(UUID.randomUUID());
+    assertThat(sink.update(update, null)).isEmpty();
+  }
+
+  @Test
+  void shouldUpdateAllStatesInParallel() {
+    var customers = IntStream
+      .range(0, 10_000)
+      .mapToObj(i -> customer(i % 2 == 0 ? CustomerState.ACTIVE : CustomerState.LOCKED))
+      .toList();
+    customers.forEach(sink::create);
+
+    assertThat(
+      sink.updateAllStates(
+        CustomersFilter.builder().state(CustomerState.ACTIVE).build(),
+        CustomerState.DISABLED
+      )
+    ).isEqualTo(5_000);
+    assertThat(sink.countByState(CustomerState.ACTIVE)).isZero();
+    assertThat(sink.countByState(CustomerState.DISABLED)).isEqualTo(5_000);
+    assertThat(sink.findAllByState(CustomerState.DISABLED))
+      .allSatisfy(c -> assertThat(c.getVersion()).isOne());
+
+    var uuids = customers.stream().limit(10).map(Customer::getUuid).toList();
+    // the disabled ones (even indexes) only
+    assertThat(sink.updateAllStates(uuids, CustomerState.LOCKED)).isEqualTo(5);
+    assertThat(sink.countByState(CustomerState.LOCKED)).isEqualTo(5_005);
+  }
+
+  private Customer create(String name, CustomerState state) {
+    var customer = customer(state);
+    customer.setName(name);
+    sink.create(customer);
+    return customer;
+  }
+
+  @Test
+  void shouldSearchByNameRanked() {
+    var contains = create("Anna Atomic", CustomerState.ACTIVE);
+    var wordPrefix = create("Julia Tom-Mayer", CustomerState.ACTIVE);
+    var prefix = create("Tomas Berg", CustomerState.ACTIVE);
+    var exact = create("tom", CustomerState.ACTIVE);
+    var locked = create("Tom Locked", CustomerState.LOCKED);
+    create("Ann Smith", CustomerState.ACTIVE);
+
+    assertThat(sink.searchByName("TOM", null, 10))
+      .containsExactly(exact, locked, prefix, wordPrefix, contains);
+    assertThat(sink.searchByName("tom", CustomerState.ACTIVE, 3))
+      .containsExactly(exact, prefix, wordPrefix);
+    assertThat(sink.searchByName("tom", null, 1))
+      .containsExactly(exact);
+    // shorter than a trigram
+    assertThat(sink.searchByName("to", null, 10))
+      .containsExactly(exact, locked, prefix, wordPrefix, contains);
+    assertThat(sink.searchByName("xyz", null, 10))
+      .isEmpty();
+    try (var result = sink.findAllByNamePrefix("TOM ")) {
+      assertThat(result).containsExactly(locked);
+    }
+  }
+
+  @Test
+  void shouldMaintainChecksumsLikeScan() {
+    var active = customer(CustomerState.ACTIVE);
+    var locked = customer(CustomerState.LOCKED);
+    sink.create(active);
+    sink.create(locked);
+    sink.updateState(active.getUuid(), CustomerState.LOCKED, null);
+    sink.delete(locked.getUuid());
+    sink.create(customer(CustomerState.DISABLED));
+
+    assertThat(sink.isChecksumMaintained()).isTrue();
+    assertThat(sink.checksum(null))
+      .isEqualTo(sink.findAll().mapToLong(CustomersChecksum::of).sum());
+    for (var state : CustomerState.values()) {
+      assertThat(sink.checksum(state))
+        .isEqualTo(sink.findAllByState(state).mapToLong(CustomersChecksum::of).sum());
+    }
+  }
+
+  @Test
+  void shouldMaintainNameIndexes() {
+    var customer = create("Tom Mayer", CustomerState.ACTIVE);
+    var update = Customer
+      .builder()
+      .uuid(customer.getUuid())
+      .name("Julia Berg")
+      .birthdate(customer.getBirthdate())
+      .state(CustomerState.ACTIVE)
+      .build();
+
+    assertThat(sink.update(update, null)).isPresent();
+    assertThat(sink.searchByName("mayer", null, 10)).isEmpty();
+    assertThat(sink.searchByName("berg", null, 10))
+      .extracting(Customer::getUuid)
+      .containsExactly(customer.getUuid());
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.LOCKED, null)).isPresent();
+    assertThat(sink.searchByName("berg", CustomerState.LOCKED, 10))
+      .extracting(Customer::getState)
+      .containsExactly(CustomerState.LOCKED);
+
+    assertThat(sink.delete(customer.getUuid())).isPresent();
+    assertThat(sink.searchByName("berg", null, 10)).isEmpty();
+    assertThat(sink.searchByName("ju", null, 10)).isEmpty();
+  }
+
+  // same result as the default implementation, which ranks all customers
+  @Test
+  void shouldSearchByNameLikeFullScan() {
+    var names = List.of("Tom", "Tommy Lee", "Anna Tomczak", "Atom Smith", "Mayer, Tom", "Thomas", "Tim Tom");
+    IntStream
+      .range(0, 1_000)
+      .forEach(i -> create(names.get(i % names.size()) + " " + i, CustomerState.values()[i % 3]));
+
+    for (var term : List.of("tom", "to", "TOM 1", "om s", "m", "tommy lee 999")) {
+      for (var state : new CustomerState[]{null, CustomerState.LOCKED}) {
+        try (var all = null == state ? sink.findAll() : sink.findAllByState(state)) {
+          assertThat(sink.searchByName(term, state, 50))
+            .as("%s (%s)", term, state)
+            .containsExactlyElementsOf(CustomerNameSearch.top(all, CustomerNameSearch.normalize(term), 50));
+        }
+      }
+    }
+  }
+
+  // more customers than the threshold for the parallel aggregation
+  @Test
+  void shouldAggregateInParallel() {
+    var states = CustomerState.values();
+    IntStream
+      .range(0, 20_000)
+      .forEach(i -> {
+        var customer = customer(states[i % states.length]);
+        customer.setBirthdate(LocalDate.of(1950 + i % 50, Month.JANUARY, 1).plusDays(i % 365));
+        sink.create(customer);
+      });
+
+    for (var groupBy : CustomersGroupBy.values()) {
+      try (var customers = sink.findAll()) {
+        assertThat(sink.aggregate(groupBy))
+          .isEqualTo(customers.collect(CustomersAggregation.aggregating(groupBy)));
+      }
+    }
+    assertThat(sink.aggregate(CustomersGroupBy.BIRTH_YEAR).groups())
+      .hasSize(50)
+      .allSatisfy(group -> assertThat(group.count()).isEqualTo(400));
+  }
+
+  @Test
+  void shouldFindByBirthdateRange() {
+    var customers = IntStream
+      .range(0, 10)
+      .mapToObj(i -> {
+        var customer = customer(CustomerState.ACTIVE);
+        customer.setBirthdate(LocalDate.of(1990 + i, Month.JANUARY, 1));
+        sink.create(customer);
+        return customer;
+      })
+      .toList();
+
+    try (var result = sink.findAllByBirthdateBetween(LocalDate.of(1992, Month.JANUARY, 1), LocalDate.of(1994, Month.JANUARY, 1))) {
+      assertThat(result).containsExactlyElementsOf(customers.subList(2, 5));
+    }
+    try (var result = sink.findAllByBirthdateBetween(null, LocalDate.of(1990, Month.DECEMBER, 31))) {
+      assertThat(result).containsExactly(customers.getFirst());
+    }
+    try (var result = sink.findAllByBirthdateBetween(LocalDate.of(1999, Month.JANUARY, 1), LocalDate.MAX)) {
+      assertThat(result).containsExactly(customers.getLast());
+    }
+
+    // moved out of the range by an update, removed by a delete
+    var update = Customer
+      .builder()
+      .uuid(customers.get(2).getUuid())
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(2005, Month.MAY, 12))
+      .state(CustomerState.ACTIVE)
+      .build();
+    assertThat(sink.update(update, null)).isPresent();
+    assertThat(sink.delete(customers.get(3).getUuid())).isPresent();
+    try (var result = sink.findAllByBirthdateBetween(LocalDate.of(1992, Month.JANUARY, 1), LocalDate.of(1994, Month.JANUARY, 1))) {
+      assertThat(result).containsExactly(customers.get(4));
+    }
+    assertThat(
+      sink.updateAllStates(
+        CustomersFilter.builder().birthdateFrom(LocalDate.of(2000, Month.JANUARY, 1)).build(),
+        CustomerState.LOCKED
+      )
+    ).isOne();
+    assertThat(sink.findById(update.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getState()).isEqualTo(CustomerState.LOCKED));
+  }
+}
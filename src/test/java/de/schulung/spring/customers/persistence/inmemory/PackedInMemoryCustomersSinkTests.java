@@ -0,0 +1,276 @@
+package de.schulung.spring.customers.persistence.inmemory;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PackedInMemoryCustomersSinkTests {
+
+  PackedInMemoryCustomersSink sink = new PackedInMemoryCustomersSink();
+
+  private static Customer customer(CustomerState state) {
+    return Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(state)
+      .build();
+  }
+
+  @Test
+  void shouldMaterializeCustomer() {
+    var customer = customer(CustomerState.LOCKED);
+    customer.setName("Jörg Müller");
+    sink.create(customer);
+
+    assertThat(customer.getUuid()).isNotNull();
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c)
+        .usingRecursiveComparison()
+        .isEqualTo(customer)
+      );
+    assertThat(sink.findById(UUID.randomUUID()))
+      .isEmpty();
+  }
+
+  @Test
+  void shouldFilterOnColumns() {
+    var active = customer(CustomerState.ACTIVE);
+    var locked = customer(CustomerState.LOCKED);
+    locked.setBirthdate(LocalDate.of(2005, Month.MAY, 12));
+    sink.createAll(List.of(active, locked));
+
+    assertThat(sink.findAllByState(CustomerState.LOCKED))
+      .extracting(Customer::getUuid)
+      .containsExactly(locked.getUuid());
+    assertThat(sink.findAllByBirthdateBetween(LocalDate.of(2000, Month.JANUARY, 1), null))
+      .extracting(Customer::getUuid)
+      .containsExactly(locked.getUuid());
+    assertThat(sink.countByState(CustomerState.ACTIVE))
+      .isOne();
+
+    assertThat(sink.deleteAllByState(CustomerState.LOCKED))
+      .isOne();
+    assertThat(sink.findAllByState(CustomerState.LOCKED))
+      .isEmpty();
+    assertThat(sink.count())
+      .isOne();
+  }
+
+  // many slots, a grown hash table and reused slots
+  @Test
+  void shouldBehaveLikeInMemorySink() {
+    var reference = new InMemoryCustomersSink();
+    var random = new Random(4711);
+    var uuids = new ArrayList<UUID>();
+    for (var i = 0; i < 20_000; i++) {
+      if (!uuids.isEmpty() && random.nextInt(3) == 0) {
+        var uuid = uuids.remove(random.nextInt(uuids.size()));
+        assertThat(sink.delete(uuid)).isPresent();
+        reference.delete(uuid);
+      } else {
+        var customer = customer(CustomerState.values()[random.nextInt(3)]);
+        customer.setName("Customer " + i);
+        customer.setBirthdate(LocalDate.of(1950, Month.JANUARY, 1).plusDays(random.nextInt(20_000)));
+        sink.create(customer);
+        reference.create(customer);
+        uuids.add(customer.getUuid());
+      }
+    }
+
+    assertThat(sink.count()).isEqualTo(reference.count());
+    for (var state : CustomerState.values()) {
+      assertThat(sink.countByState(state)).isEqualTo(reference.countByState(state));
+    }
+    assertThat(sink.checksum(null)).isEqualTo(reference.checksum(null));
+    assertThat(uuids).allSatisfy(uuid -> assertThat(sink.findById(uuid))
+      .map(Customer::getName)
+      .isEqualTo(reference.findById(uuid).map(Customer::getName))
+    );
+    assertThat(sink.findPage(CustomerState.ACTIVE, null, 50))
+      .extracting(Customer::getUuid)
+      .isEqualTo(reference.findPage(CustomerState.ACTIVE, null, 50).stream().map(Customer::getUuid).toList());
+    try (var customers = sink.findAll()) {
+      assertThat(customers).hasSize(uuids.size());
+    }
+    assertThat(sink.countByBirthdateAndState()).isEqualTo(reference.countByBirthdateAndState());
+    var from = LocalDate.of(1970, Month.JANUARY, 1);
+    var to = LocalDate.of(1979, Month.DECEMBER, 31);
+    try (
+      var customers = sink.findAllByBirthdateBetween(from, to);
+      var expected = reference.findAllByBirthdateBetween(from, to)
+    ) {
+      assertThat(customers.map(Customer::getUuid))
+        .containsExactlyInAnyOrderElementsOf(expected.map(Customer::getUuid).toList());
+    }
+  }
+
+  // the uuids are compared signed, like UUID#compareTo, and both signs occur
+  @Test
+  void shouldPageLikeInMemorySink() {
+    var reference = new InMemoryCustomersSink();
+    var random = new Random(42);
+    for (var i = 0; i < 1_000; i++) {
+      var customer = customer(CustomerState.values()[random.nextInt(3)]);
+      customer.setUuid(new UUID(random.nextLong(), random.nextLong()));
+      sink.create(customer);
+      reference.create(customer);
+    }
+
+    for (var state : new CustomerState[]{null, CustomerState.LOCKED}) {
+      for (var limit : new int[]{1, 7, 100, 2_000}) {
+        UUID after = null;
+        var pages = 0;
+        while (true) {
+          var page = sink.findPage(state, after, limit).stream().map(Customer::getUuid).toList();
+          assertThat(page)
+            .as("state %s, limit %d, after %s", state, limit, after)
+            .isEqualTo(reference.findPage(state, after, limit).stream().map(Customer::getUuid).toList());
+          if (page.size() < limit) {
+            break;
+          }
+          after = page.getLast();
+          pages++;
+        }
+        assertThat(pages).isLessThanOrEqualTo(1_000 / limit);
+      }
+    }
+    assertThat(sink.findPage(null, new UUID(Long.MAX_VALUE, Long.MAX_VALUE), 10)).isEmpty();
+  }
+
+  // the sorted slots move with the state and are dropped with the customer
+  @Test
+  void shouldPageAfterModifications() {
+    var reference = new InMemoryCustomersSink();
+    var random = new Random(42);
+    var uuids = new ArrayList<UUID>();
+    for (var i = 0; i < 300; i++) {
+      var customer = customer(i % 50 == 0 ? null : CustomerState.values()[random.nextInt(3)]);
+      customer.setUuid(new UUID(random.nextLong(), random.nextLong()));
+      sink.create(customer);
+      reference.create(customer);
+      uuids.add(customer.getUuid());
+    }
+    for (var target : List.of(sink, reference)) {
+      target.updateState(uuids.get(1), CustomerState.DISABLED, null);
+      var update = customer(CustomerState.LOCKED);
+      update.setUuid(uuids.get(2));
+      target.update(update, null);
+      var replacement = customer(CustomerState.ACTIVE);
+      replacement.setUuid(uuids.get(3));
+      target.create(replacement);
+      target.delete(uuids.get(4));
+      target.deleteAll(uuids.subList(5, 10));
+      target.updateAllStates(uuids.subList(10, 20), CustomerState.ACTIVE);
+      target.updateAllStates(CustomersFilter.builder().state(CustomerState.LOCKED).build(), CustomerState.DISABLED);
+      target.deleteAllByState(CustomerState.ACTIVE);
+      // reuses the free slots
+      for (var i = 0; i < 20; i++) {
+        var customer = customer(CustomerState.LOCKED);
+        customer.setUuid(new UUID(i - 10, i));
+        target.create(customer);
+      }
+    }
+
+    for (var state : new CustomerState[]{null, CustomerState.DISABLED, CustomerState.LOCKED, CustomerState.ACTIVE}) {
+      assertThat(sink.findPage(state, null, 1_000))
+        .as("state %s", state)
+        .extracting(Customer::getUuid)
+        .isEqualTo(reference.findPage(state, null, 1_000).stream().map(Customer::getUuid).toList());
+    }
+  }
+
+  @Test
+  void shouldStreamWhileWriting() {
+    IntStream.range(0, 5000).forEach(i -> sink.create(customer(CustomerState.ACTIVE)));
+
+    try (var customers = sink.findAll()) {
+      // would deadlock if the stream held the read lock
+      assertThat(customers.peek(c -> sink.delete(c.getUuid()))).hasSize(5000);
+    }
+    assertThat(sink.count()).isZero();
+  }
+
+  @Test
+  void shouldUpdateColumns() {
+    var customer = customer(CustomerState.ACTIVE);
+    var other = customer(CustomerState.ACTIVE);
+    sink.createAll(List.of(customer, other));
+    var update = customer(CustomerState.LOCKED);
+    update.setUuid(customer.getUuid());
+    update.setBirthdate(LocalDate.of(2005, Month.MAY, 12));
+
+    assertThat(sink.update(update, 0L)).isPresent();
+    assertThat(update.getVersion()).isOne();
+    assertThat(sink.countByState(CustomerState.LOCKED)).isOne();
+    assertThat(sink.findAllByBirthdateBetween(LocalDate.of(2000, Month.JANUARY, 1), null))
+      .extracting(Customer::getUuid)
+      .containsExactly(customer.getUuid());
+    assertThatThrownBy(() -> sink.updateState(customer.getUuid(), CustomerState.DISABLED, 0L))
+      .isInstanceOf(OptimisticLockingFailureException.class);
+
+    // many renames, so that the arena is compacted
+    for (var i = 0; i < 10_000; i++) {
+      update.setName("Customer " + i);
+      sink.update(update, null);
+    }
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> {
+        assertThat(c.getName()).isEqualTo("Customer 9999");
+        assertThat(c.getState()).isEqualTo(CustomerState.LOCKED);
+        assertThat(c.getVersion()).isEqualTo(10_001L);
+      });
+    assertThat(sink.findById(other.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Tom Mayer"));
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.LOCKED, null))
+      .as("unchanged")
+      .contains(new CustomerStateUpdate(CustomerState.LOCKED, 10_001L));
+    assertThat(sink.updateState(UUID.randomUUID(), CustomerState.LOCKED, null))
+      .isEmpty();
+  }
+
+  @Test
+  void shouldUpdateAllStatesOnColumns() {
+    var old = customer(CustomerState.ACTIVE);
+    old.setBirthdate(LocalDate.of(1950, Month.JANUARY, 1));
+    var young = customer(CustomerState.ACTIVE);
+    var locked = customer(CustomerState.LOCKED);
+    locked.setName("Julia Mayer");
+    sink.createAll(List.of(old, young, locked));
+
+    assertThat(
+      sink.updateAllStates(
+        CustomersFilter.builder().birthdateTo(LocalDate.of(1960, Month.JANUARY, 1)).build(),
+        CustomerState.DISABLED
+      )
+    ).isOne();
+    assertThat(
+      sink.updateAllStates(
+        CustomersFilter.builder().namePrefix("tom").build(),
+        CustomerState.LOCKED
+      )
+    ).as("the old one and the young one").isEqualTo(2);
+    assertThat(sink.updateAllStates(List.of(old.getUuid(), locked.getUuid(), UUID.randomUUID()), CustomerState.LOCKED))
+      .as("all locked already")
+      .isZero();
+    assertThat(sink.countByState(CustomerState.LOCKED)).isEqualTo(3);
+    assertThat(sink.findById(old.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getVersion()).isEqualTo(2L));
+    assertThat(sink.findById(locked.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getVersion()).isZero());
+  }
+}
@@ -0,0 +1,75 @@
+package de.schulung.spring.customers.persistence.reactive;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.persistence.inmemory.InMemoryCustomersSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReactiveCustomersSinkAdapterTests {
+
+  InMemoryCustomersSink delegate;
+  ReactiveCustomersSinkAdapter sink;
+
+  @BeforeEach
+  void setUp() {
+    delegate = new InMemoryCustomersSink();
+    sink = new ReactiveCustomersSinkAdapter(delegate, Schedulers.immediate());
+  }
+
+  private Customer createCustomer(CustomerState state) {
+    var customer = Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(state)
+      .build();
+    sink.create(customer).block();
+    return customer;
+  }
+
+  @Test
+  void shouldCreateAndFindCustomer() {
+    var customer = createCustomer(CustomerState.ACTIVE);
+
+    assertThat(customer.getUuid()).isNotNull();
+    assertThat(sink.findById(customer.getUuid()).block()).isSameAs(customer);
+    assertThat(sink.countByState(CustomerState.ACTIVE).block()).isEqualTo(1L);
+  }
+
+  @Test
+  void shouldNotFindUnknownCustomer() {
+    createCustomer(CustomerState.ACTIVE);
+
+    assertThat(sink.findById(UUID.randomUUID()).blockOptional()).isEmpty();
+  }
+
+  @Test
+  void shouldCloseStreamOnCancel() {
+    var closed = new AtomicBoolean();
+    var adapter = new ReactiveCustomersSinkAdapter(
+      new InMemoryCustomersSink() {
+        @Override
+        public Stream<Customer> findAll() {
+          return super.findAll().onClose(() -> closed.set(true));
+        }
+      },
+      Schedulers.immediate()
+    );
+    adapter.create(Customer.builder().name("Tom Mayer").birthdate(LocalDate.now()).build()).block();
+    adapter.create(Customer.builder().name("Tom Mayer").birthdate(LocalDate.now()).build()).block();
+
+    assertThat(adapter.findAll().take(1).collectList().block()).hasSize(1);
+    assertThat(closed).isTrue();
+  }
+
+}
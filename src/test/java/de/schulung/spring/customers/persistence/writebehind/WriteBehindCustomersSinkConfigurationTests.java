@@ -0,0 +1,59 @@
+package de.schulung.spring.customers.persistence.writebehind;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomersSink;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.Month;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+  properties = {
+    "application.persistence.write-behind.enabled=true",
+    "application.persistence.write-behind.durability=none",
+    "application.persistence.write-behind.flush-interval=1h"
+  }
+)
+@AutoConfigureTestDatabase
+class WriteBehindCustomersSinkConfigurationTests {
+
+  @Autowired
+  CustomersSink sink;
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Test
+  void shouldDecorateSinkWithWriteBehind() {
+    assertThat(sink)
+      .isInstanceOf(WriteBehindCustomersSink.class);
+  }
+
+  // the uuid is assigned before the customer is persisted
+  @Test
+  void shouldFlushIntoDatabaseAndExportMetrics() {
+    var customer = Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(CustomerState.ACTIVE)
+      .build();
+    sink.create(customer);
+
+    assertThat(meterRegistry.get("customers.write-behind.pending").gauge().value()).isOne();
+
+    ((WriteBehindCustomersSink) sink).flush();
+
+    assertThat(meterRegistry.get("customers.write-behind.pending").gauge().value()).isZero();
+    assertThat(meterRegistry.get("customers.write-behind.flushed").functionCounter().count()).isOne();
+    assertThat(sink.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getVersion()).isNotNull());
+  }
+
+}
@@ -0,0 +1,325 @@
+package de.schulung.spring.customers.persistence.writebehind;
+
+import de.schulung.spring.customers.domain.Customer;
+import de.schulung.spring.customers.domain.CustomerState;
+import de.schulung.spring.customers.domain.CustomerStateUpdate;
+import de.schulung.spring.customers.domain.CustomersAggregation;
+import de.schulung.spring.customers.domain.CustomersGroupBy;
+import de.schulung.spring.customers.domain.CustomersSink;
+import de.schulung.spring.customers.persistence.inmemory.InMemoryCustomersSink;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class WriteBehindCustomersSinkTests {
+
+  @TempDir
+  Path logDirectory;
+  CustomersSink delegate;
+  WriteBehindCustomersSink sink;
+
+  @BeforeEach
+  void setUp() {
+    delegate = spy(new InMemoryCustomersSink());
+    sink = createSink(10);
+  }
+
+  @AfterEach
+  void tearDown() {
+    sink.close();
+  }
+
+  // the flush interval is long enough to not flush during the test
+  private WriteBehindCustomersSink createSink(int batchSize) {
+    return new WriteBehindCustomersSink(
+      delegate,
+      TransactionOperations.withoutTransaction(),
+      batchSize,
+      100,
+      Duration.ofHours(1),
+      new WriteBehindLog(logDirectory, false),
+      new WriteBehindLog(logDirectory.resolve("dead-letters"), false)
+    );
+  }
+
+  private static Customer customer(CustomerState state) {
+    return Customer
+      .builder()
+      .name("Tom Mayer")
+      .birthdate(LocalDate.of(1995, Month.AUGUST, 8))
+      .state(state)
+      .build();
+  }
+
+  @Test
+  void shouldReadBufferedWrites() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+
+    assertThat(customer.getUuid()).isNotNull();
+    assertThat(sink.findById(customer.getUuid())).isPresent();
+    assertThat(sink.findAllByState(CustomerState.ACTIVE)).hasSize(1);
+    assertThat(sink.findAllByState(CustomerState.LOCKED)).isEmpty();
+    assertThat(sink.getPendingCount()).isOne();
+    verify(delegate, never()).create(any());
+    verify(delegate, never()).createAll(anyCollection());
+  }
+
+  @Test
+  void shouldCoalesceCreateAndDelete() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+
+    assertThat(sink.delete(customer.getUuid())).isPresent();
+    assertThat(sink.findById(customer.getUuid())).isEmpty();
+    assertThat(sink.getPendingCount()).isZero();
+
+    sink.flush();
+
+    verify(delegate, never()).createAll(anyCollection());
+    verify(delegate, never()).deleteAll(anyCollection());
+  }
+
+  // the full buffer is flushed by the deleting thread, after it found the customer buffered
+  @Test
+  void shouldDeleteCustomerFlushedWhileDeleting() {
+    sink.close();
+    sink = new WriteBehindCustomersSink(
+      delegate,
+      TransactionOperations.withoutTransaction(),
+      2,
+      2,
+      Duration.ofHours(1),
+      null,
+      null
+    );
+
+    for (int i = 0; i < 20; i++) {
+      sink.create(customer(CustomerState.ACTIVE));
+      var customer = customer(CustomerState.LOCKED);
+      sink.create(customer);
+
+      assertThat(sink.delete(customer.getUuid())).isPresent();
+      assertThat(sink.findById(customer.getUuid())).isEmpty();
+    }
+    sink.flush();
+    assertThat(delegate.countByState(CustomerState.LOCKED)).isZero();
+  }
+
+  @Test
+  void shouldFlushBufferedWritesAsBatch() {
+    var existing = customer(CustomerState.LOCKED);
+    delegate.create(existing);
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    sink.delete(existing.getUuid());
+
+    sink.flush();
+
+    assertThat(sink.getPendingCount()).isZero();
+    assertThat(sink.getFlushedWrites()).isEqualTo(2);
+    assertThat(delegate.findById(customer.getUuid())).isPresent();
+    assertThat(delegate.findById(existing.getUuid())).isEmpty();
+    verify(delegate).createAll(anyCollection());
+    verify(delegate).deleteAll(List.of(existing.getUuid()));
+  }
+
+  @Test
+  void shouldOverlayCountsAndChecksum() {
+    var existing = customer(CustomerState.LOCKED);
+    delegate.create(existing);
+    sink.create(customer(CustomerState.ACTIVE));
+    sink.create(customer(CustomerState.ACTIVE));
+    sink.delete(existing.getUuid());
+
+    var count = sink.count();
+    var active = sink.countByState(CustomerState.ACTIVE);
+    var locked = sink.countByState(CustomerState.LOCKED);
+    var checksum = sink.checksum(null);
+    sink.flush();
+
+    assertThat(count).isEqualTo(2).isEqualTo(delegate.count());
+    assertThat(active).isEqualTo(2);
+    assertThat(locked).isZero();
+    assertThat(checksum).isEqualTo(delegate.checksum(null));
+  }
+
+  @Test
+  void shouldOverlayAggregations() {
+    var existing = customer(CustomerState.LOCKED);
+    delegate.create(existing);
+    var created = customer(CustomerState.ACTIVE);
+    created.setBirthdate(LocalDate.of(1980, Month.JANUARY, 1));
+    sink.create(created);
+
+    assertThat(sink.aggregate(CustomersGroupBy.BIRTH_YEAR).groups())
+      .extracting(CustomersAggregation.Group::key, CustomersAggregation.Group::count)
+      .containsExactly(tuple(1980, 1L), tuple(1995, 1L));
+    assertThat(sink.aggregate(CustomersGroupBy.NAME_INITIAL).groups())
+      .singleElement()
+      .isEqualTo(new CustomersAggregation.Group("t", 2, created.getBirthdate(), existing.getBirthdate()));
+
+    sink.delete(existing.getUuid());
+    var aggregation = sink.aggregate(CustomersGroupBy.STATE);
+    sink.flush();
+
+    assertThat(aggregation)
+      .isEqualTo(delegate.aggregate(CustomersGroupBy.STATE));
+    assertThat(aggregation.groups())
+      .extracting(CustomersAggregation.Group::key)
+      .containsExactly(CustomerState.ACTIVE);
+  }
+
+  @Test
+  void shouldOverlayCountsByBirthdateAndState() {
+    var birthdate = LocalDate.of(1995, Month.AUGUST, 8);
+    var existing = customer(CustomerState.LOCKED);
+    delegate.create(existing);
+    sink.create(customer(CustomerState.ACTIVE));
+
+    assertThat(sink.countByBirthdateAndState().get(birthdate))
+      .containsEntry(CustomerState.ACTIVE, 1L)
+      .containsEntry(CustomerState.LOCKED, 1L);
+
+    // a buffered delete has no birthdate to subtract
+    sink.delete(existing.getUuid());
+    var counts = sink.countByBirthdateAndState();
+    sink.flush();
+
+    assertThat(counts)
+      .isEqualTo(delegate.countByBirthdateAndState())
+      .containsOnlyKeys(birthdate);
+    assertThat(counts.get(birthdate))
+      .containsOnlyKeys(CustomerState.ACTIVE);
+  }
+
+  @Test
+  void shouldFlushWhenBatchIsFull() {
+    sink.close();
+    sink = createSink(2);
+
+    sink.create(customer(CustomerState.ACTIVE));
+    sink.create(customer(CustomerState.ACTIVE));
+
+    verify(delegate, timeout(5000)).createAll(anyCollection());
+  }
+
+  @Test
+  void shouldRecoverUnflushedWritesFromLog() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    // simulates a crash: no flush, the log is left behind
+    var crashed = delegate;
+    delegate = spy(new InMemoryCustomersSink());
+
+    var recovered = createSink(10);
+    try {
+      assertThat(delegate.findById(customer.getUuid()))
+        .hasValueSatisfying(c -> {
+          assertThat(c.getName()).isEqualTo(customer.getName());
+          assertThat(c.getBirthdate()).isEqualTo(customer.getBirthdate());
+          assertThat(c.getState()).isEqualTo(customer.getState());
+        });
+      assertThat(recovered.getPendingCount()).isZero();
+    } finally {
+      recovered.close();
+    }
+    assertThat(crashed.count()).isZero();
+  }
+
+  // like the database does for a name that is too long for the column
+  private void rejectCustomer(Customer rejected) {
+    doAnswer(invocation -> {
+      Collection<Customer> customers = invocation.getArgument(0);
+      if (customers.stream().anyMatch(c -> c.getUuid().equals(rejected.getUuid()))) {
+        throw new DataIntegrityViolationException("Value too long for column NAME");
+      }
+      return invocation.callRealMethod();
+    }).when(delegate).createAll(anyCollection());
+  }
+
+  @Test
+  void shouldMoveRejectedWriteToDeadLetters() {
+    var rejected = customer(CustomerState.ACTIVE);
+    rejected.setUuid(UUID.randomUUID());
+    rejectCustomer(rejected);
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    sink.create(rejected);
+    var other = customer(CustomerState.LOCKED);
+    sink.create(other);
+
+    sink.flush();
+
+    assertThat(sink.getPendingCount()).isZero();
+    assertThat(sink.getFailedFlushes()).isOne();
+    assertThat(sink.getDeadLetters()).isOne();
+    assertThat(sink.getFlushedWrites()).isEqualTo(2);
+    assertThat(delegate.findById(customer.getUuid())).isPresent();
+    assertThat(delegate.findById(other.getUuid())).isPresent();
+    assertThat(sink.findById(rejected.getUuid())).isEmpty();
+    assertThat(new WriteBehindLog(logDirectory.resolve("dead-letters"), false).recover())
+      .extracting(Write::uuid)
+      .containsExactly(rejected.getUuid());
+    // the buffer is not blocked by the rejected write
+    sink.create(customer(CustomerState.ACTIVE));
+    sink.flush();
+    assertThat(delegate.count()).isEqualTo(3);
+  }
+
+  @Test
+  void shouldMoveRejectedWriteToDeadLettersOnRecovery() {
+    var rejected = customer(CustomerState.ACTIVE);
+    rejected.setUuid(UUID.randomUUID());
+    sink.create(rejected);
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+    // simulates a crash: no flush, the log is left behind
+    delegate = spy(new InMemoryCustomersSink());
+    rejectCustomer(rejected);
+
+    var recovered = createSink(10);
+    try {
+      assertThat(recovered.getDeadLetters()).isOne();
+      assertThat(delegate.findById(customer.getUuid())).isPresent();
+      assertThat(delegate.findById(rejected.getUuid())).isEmpty();
+    } finally {
+      recovered.close();
+    }
+  }
+
+  // the delegate checks the version of the buffered customer
+  @Test
+  void shouldFlushBufferedCustomerBeforeUpdate() {
+    var customer = customer(CustomerState.ACTIVE);
+    sink.create(customer);
+
+    assertThat(sink.updateState(customer.getUuid(), CustomerState.LOCKED, 0L))
+      .contains(new CustomerStateUpdate(CustomerState.ACTIVE, 1L));
+
+    assertThat(sink.getPendingCount()).isZero();
+    assertThat(delegate.findById(customer.getUuid()))
+      .hasValueSatisfying(c -> assertThat(c.getState()).isEqualTo(CustomerState.LOCKED));
+  }
+}